@@ -5,8 +5,10 @@ if [[ "$1" != "issuer" ]];then
   if [[ "$1" != "user_agent" ]];then
      if [[ "$1" != "verifier" ]];then
         if [[ "$1" != "daemon" ]];then
-           echo "please input the correct parameters:issuer, user_agent, verifier, daemon"
-           exit 1
+           if [[ "$1" != "register_cpts" ]];then
+              echo "please input the correct parameters:issuer, user_agent, verifier, daemon, register_cpts"
+              exit 1
+           fi
         fi
     fi
   fi
@@ -36,6 +38,6 @@ if [[ "$1" == daemon ]];then
    
 else
     echo "--------- start $1 ----------"
-    java ${JAVA_OPTS} -cp dist/conf/:dist/lib/*:dist/app/* com.webank.weid.demo.command.DemoCommand $1
+    java ${JAVA_OPTS} -cp dist/conf/:dist/lib/*:dist/app/* com.webank.weid.demo.command.DemoCommand "$@"
 fi
 
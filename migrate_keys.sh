@@ -0,0 +1,3 @@
+#!/bin/bash
+# import the one-file-per-weId key directory into the mapped keystore, run it while the service is stopped.
+java -cp dist/conf/:dist/lib/*:dist/app/* com.webank.weid.demo.common.keystore.KeyDirMigration $1
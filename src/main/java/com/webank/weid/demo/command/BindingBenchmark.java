@@ -0,0 +1,149 @@
+/*
+ *       Copyright© (2019) WeBank Co., Ltd.
+ *
+ *       This file is part of weidentity-sample.
+ *
+ *       weidentity-sample is free software: you can redistribute it and/or modify
+ *       it under the terms of the GNU Lesser General Public License as published by
+ *       the Free Software Foundation, either version 3 of the License, or
+ *       (at your option) any later version.
+ *
+ *       weidentity-sample is distributed in the hope that it will be useful,
+ *       but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *       MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *       GNU Lesser General Public License for more details.
+ *
+ *       You should have received a copy of the GNU Lesser General Public License
+ *       along with weidentity-sample.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.webank.weid.demo.command;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.swagger.annotations.ApiModelProperty;
+import org.apache.commons.lang3.StringUtils;
+
+import com.webank.weid.demo.common.model.VerifyCredentialModel;
+import com.webank.weid.protocol.base.Credential;
+import com.webank.weid.util.DataToolUtils;
+
+/**
+ * offline benchmark of binding the verifyCredential request body, comparing the Map to
+ * JSON to Credential round trip with the typed binding of VerifyCredentialModel. the
+ * body is the sample of the model, the mapper is configured as the Spring one.
+ *
+ * <p>the allocation is read from ThreadMXBean.getThreadAllocatedBytes of the benchmark
+ * thread, run it with the class path of the service:
+ * java -cp dist/conf/:dist/lib/*:dist/app/* com.webank.weid.demo.command.BindingBenchmark
+ *
+ * @author agent
+ */
+public class BindingBenchmark {
+
+    private static final int DEFAULT_ITERATIONS = 200000;
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper()
+        .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+        .configure(MapperFeature.USE_GETTERS_AS_SETTERS, false);
+
+    /**
+     * the request model before the typed binding.
+     */
+    public static class MapModel {
+
+        private Map<String, Object> credential;
+
+        public Map<String, Object> getCredential() {
+            return credential;
+        }
+
+        public void setCredential(Map<String, Object> credential) {
+            this.credential = credential;
+        }
+    }
+
+    /**
+     * the main for the binding benchmark.
+     *
+     * @param args the number of iterations, 200000 by default
+     * @throws Exception if the sample body can not be built
+     */
+    public static void main(String[] args) throws Exception {
+
+        int iterations = DEFAULT_ITERATIONS;
+        if (null != args && args.length > 0 && StringUtils.isNotBlank(args[0])) {
+            iterations = Integer.parseInt(args[0].trim());
+        }
+        String body = sampleBody();
+
+        Supplier<Credential> roundTrip = () -> {
+            try {
+                MapModel model = OBJECT_MAPPER.readValue(body, MapModel.class);
+                return DataToolUtils.deserialize(
+                    DataToolUtils.mapToCompactJson(model.getCredential()), Credential.class);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        };
+        Supplier<Credential> typed = () -> {
+            try {
+                return OBJECT_MAPPER.readValue(body, VerifyCredentialModel.class).getCredential();
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        };
+
+        // warm up both paths before measuring, so the JIT and the Jackson caches settle.
+        measure(roundTrip, iterations / 4);
+        measure(typed, iterations / 4);
+        report("map round trip", measure(roundTrip, iterations), iterations);
+        report("typed binding", measure(typed, iterations), iterations);
+        System.exit(0);
+    }
+
+    /**
+     * build the request body from the sample credential of VerifyCredentialModel.
+     */
+    private static String sampleBody() throws Exception {
+        String example = VerifyCredentialModel.class
+            .getDeclaredField("credential")
+            .getAnnotation(ApiModelProperty.class)
+            .example();
+        ObjectNode body = OBJECT_MAPPER.createObjectNode();
+        body.set("credential", OBJECT_MAPPER.readTree(example));
+        return OBJECT_MAPPER.writeValueAsString(body);
+    }
+
+    /**
+     * run the binding and return the allocated bytes and the elapsed nanoseconds.
+     */
+    private static long[] measure(Supplier<Credential> binding, int iterations) {
+        com.sun.management.ThreadMXBean threadBean =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long sink = 0;
+        long allocated = threadBean.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            sink += binding.get().getCptId();
+        }
+        long elapsed = System.nanoTime() - start;
+        allocated = threadBean.getThreadAllocatedBytes(threadId) - allocated;
+        if (sink == 0) {
+            System.out.println("no credential bound");
+        }
+        return new long[]{allocated, elapsed};
+    }
+
+    private static void report(String name, long[] result, int iterations) {
+        System.out.println(String.format("%-15s %8.1f bytes/op %8.2f us/op",
+            name, (double) result[0] / iterations, result[1] / 1000.0 / iterations));
+    }
+}
@@ -1,54 +1,41 @@
 package com.webank.weid.demo.command;
 
-import java.util.HashMap;
-import java.util.Map;
-
 import com.webank.weid.demo.command.BaseBean;
+import com.webank.weid.demo.common.util.ChallengeStore;
+import com.webank.weid.demo.common.util.PolicyRepository;
 import com.webank.weid.protocol.base.Challenge;
 import com.webank.weid.protocol.base.PresentationPolicyE;
-import com.webank.weid.util.DataToolUtils;
 
 public class DbUtils {
     
-    private static final Map<String, PresentationPolicyE> policMap = 
-        new HashMap<String, PresentationPolicyE>();
-    
-    static {
-        //initialization policy
-        //you can do this : PresentationPolicyE.createByJson("");
-        PresentationPolicyE presentationPolicyE = PresentationPolicyE.create("policy123456.json");
-        policMap.put("123456", presentationPolicyE);
-    }
-    
     /**
-     * mock query the challenge form DB.
+     * take the challenge out of the challenge store, a challenge can be used only once.
      * @param nonce the nonce
-     * @return the challenge
+     * @return the challenge, null if it is unknown, expired or already used
      */
     public static Challenge queryChallenge(String nonce) {
-        String fileName = DataToolUtils.sha3(nonce);
-        String value = DemoUtil.queryDataFromFile(fileName);
-        Challenge challenge = DataToolUtils.deserialize(value, Challenge.class);
+        Challenge challenge = ChallengeStore.getInstance().consume(nonce);
         BaseBean.print("queryChallenge result:");
         BaseBean.print(challenge);
         return challenge;
     }
     
     /**
-     * mock save data into DB.
-     * @param key the key
-     * @param data the data for save
+     * save the challenge into the challenge store until it is used or expires.
+     * @param challenge the challenge for save
      */
-    public static void save(String key, Object data) {
-        String fileName = DataToolUtils.sha3(key);
-        DemoUtil.saveDataInFile(fileName, data);
+    public static void saveChallenge(Challenge challenge) {
+        ChallengeStore.getInstance().put(challenge);
     }
     
     /**
-     * mock get the policy from your DB.
+     * get the policy from the policy directory, reloaded when its file changes.
+     * the policy templates are shared by all requests and never modified,
+     * a request binds its own publisher through PolicyView.bind.
      * @param policyId the policyId
+     * @return the shared policy template, read only
      */
     public static PresentationPolicyE getPolicy(String policyId) {
-        return policMap.get(policyId);
+        return PolicyRepository.getInstance().get(policyId);
     } 
 }
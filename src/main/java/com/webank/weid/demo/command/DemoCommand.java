@@ -30,6 +30,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.webank.weid.constant.ErrorCode;
+import com.webank.weid.demo.common.util.AmopClient;
+import com.webank.weid.demo.common.util.PolicyRepository;
+import com.webank.weid.demo.common.util.PrivateKeyUtil;
 import com.webank.weid.demo.exception.BusinessException;
 import com.webank.weid.demo.service.impl.PolicyServiceImpl;
 import com.webank.weid.protocol.base.Challenge;
@@ -37,6 +40,7 @@ import com.webank.weid.protocol.base.CredentialPojo;
 import com.webank.weid.protocol.base.PolicyAndChallenge;
 import com.webank.weid.protocol.base.PresentationE;
 import com.webank.weid.protocol.base.PresentationPolicyE;
+import com.webank.weid.protocol.base.WeIdPrivateKey;
 import com.webank.weid.protocol.response.CreateWeIdDataResult;
 import com.webank.weid.util.DataToolUtils;
 import com.webank.weid.util.ScanCodeUtils;
@@ -60,7 +64,7 @@ public class DemoCommand extends DemoBase {
         logger.info("args = {}", Arrays.toString(args));
         
         // check the length.
-        if (null == args || args.length != 1) {
+        if (null == args || args.length == 0) {
             args = new String[1];
         }
 
@@ -86,6 +90,9 @@ public class DemoCommand extends DemoBase {
                 case "daemon":
                     daemon();
                     break;
+                case "register_cpts":
+                    registerCpts(args);
+                    break;
                 default:
                     issuer();
                     break;
@@ -100,11 +107,55 @@ public class DemoCommand extends DemoBase {
     }
 
     private static void daemon() {
+        // load the policy directory before serving, it is reloaded when a file changes.
+        PolicyRepository.getInstance();
         new PolicyServiceImpl();
         BaseBean.print("------------------------------");
         BaseBean.print("the amop server start success");
     }
     
+    /**
+     * register the CPTs of a schema directory or file in batch.
+     * the args are register_cpts, the path, and optionally the weId of the publisher whose
+     * private key is in the keystore, a new publisher weId is created when it is absent.
+     *
+     * @param args input parameters
+     */
+    private static void registerCpts(String[] args) {
+
+        if (args.length < 2) {
+            BaseBean.print("usage: register_cpts <schema directory or file> [publisher weId]");
+            throw new BusinessException("the schema path is required.");
+        }
+
+        CreateWeIdDataResult publisher;
+        if (args.length > 2) {
+            String privateKey = PrivateKeyUtil.getKeyStore().get(args[2]);
+            if (null == privateKey) {
+                throw new BusinessException("the private key of the publisher does not exist.");
+            }
+            publisher = new CreateWeIdDataResult();
+            publisher.setWeId(args[2]);
+            publisher.setUserWeIdPrivateKey(new WeIdPrivateKey());
+            publisher.getUserWeIdPrivateKey().setPrivateKey(privateKey);
+        } else {
+            BaseBean.print("begin to createWeId for the publisher...");
+            publisher = demoService.createWeId();
+            PrivateKeyUtil.getKeyStore().put(
+                publisher.getWeId(), publisher.getUserWeIdPrivateKey().getPrivateKey());
+        }
+        BaseBean.print("publisher: " + publisher.getWeId());
+        BaseBean.print("------------------------------");
+        BaseBean.print("begin to regist the Cpts of " + args[1] + "...");
+
+        int failed = demoService.registCpts(publisher, args[1]);
+        BaseBean.print("------------------------------");
+        BaseBean.print("registerCpts() finish, failed: " + failed);
+        if (failed > 0) {
+            throw new BusinessException(failed + " schemas failed to register.");
+        }
+    }
+
     /**
      * interface invocation process.
      * 1, create weId
@@ -225,6 +276,8 @@ public class DemoCommand extends DemoBase {
             DemoUtil.queryPolicyAndChallenge("organizationA", 123456, createWeId.getWeId());
         
         System.out.println(DataToolUtils.serialize(policyAndChallenge));
+        BaseBean.print("amop client metrics:");
+        BaseBean.print(AmopClient.getInstance().getMetrics());
         
         BaseBean.print("------------------------------");
         BaseBean.print("begin to createPresentation...");
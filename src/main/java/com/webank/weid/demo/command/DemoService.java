@@ -19,6 +19,8 @@
 
 package com.webank.weid.demo.command;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -27,6 +29,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.webank.weid.constant.ErrorCode;
+import com.webank.weid.demo.common.util.CptBatchRegistrar;
+import com.webank.weid.demo.common.util.FileUtil;
+import com.webank.weid.demo.common.util.WeIdDocumentCache;
 import com.webank.weid.demo.exception.BusinessException;
 import com.webank.weid.protocol.base.AuthorityIssuer;
 import com.webank.weid.protocol.base.Challenge;
@@ -83,6 +88,8 @@ public class DemoService {
     
     private CredentialPojoService credentialPojoService = new CredentialPojoServiceImpl();
 
+    private WeIdDocumentCache weIdDocumentCache = WeIdDocumentCache.getInstance();
+
     /**
      * Create a WeIdentity DID with null input param.
      *
@@ -136,6 +143,7 @@ public class DemoService {
             );
             throw new BusinessException(responseSetPub.getErrorMessage());
         }
+        weIdDocumentCache.onDocumentChanged(createResult.getWeId());
     }
 
     /**
@@ -174,6 +182,7 @@ public class DemoService {
             );
             throw new BusinessException(responseSetSer.getErrorMessage());
         }
+        weIdDocumentCache.onDocumentChanged(createResult.getWeId());
     }
 
     /**
@@ -207,6 +216,7 @@ public class DemoService {
             );
             throw new BusinessException(responseSetAuth.getErrorMessage());
         }
+        weIdDocumentCache.onDocumentChanged(createResult.getWeId());
     }
 
     /**
@@ -229,8 +239,8 @@ public class DemoService {
      */
     public WeIdDocument getWeIdDom(String weId) throws BusinessException {
 
-        // getting weIdDOM by weId on chain.
-        ResponseData<WeIdDocument> responseResult = weIdService.getWeIdDocument(weId);
+        // getting weIdDOM by weId on chain, or from the cache.
+        ResponseData<WeIdDocument> responseResult = weIdDocumentCache.getWeIdDocument(weId);
         BaseBean.print("getWeIdDocument result:");
         BaseBean.print(responseResult);
 
@@ -318,6 +328,47 @@ public class DemoService {
         return responseMap.getResult();
     }
 
+    /**
+     * register the CPTs of a schema directory, or of a file of JSON schemas, in batch.
+     * the schemas already recorded in the manifest are skipped, a directory keeps its
+     * manifest inside, a file uses weid.cptBatch.manifestFile.
+     *
+     * @param weIdResult weId information containing private keys
+     * @param path the schema directory or file
+     * @return the number of schemas failed to register
+     * @throws BusinessException throw a exception when the schemas can not be read
+     */
+    public int registCpts(CreateWeIdDataResult weIdResult, String path)
+        throws BusinessException {
+
+        logger.info("regist CPTs in batch, path={}", path);
+
+        CptBatchRegistrar registrar;
+        List<CptBatchRegistrar.SchemaDocument> documents;
+        File file = new File(path);
+        if (file.isDirectory()) {
+            registrar = CptBatchRegistrar.forDirectory(path);
+            documents = CptBatchRegistrar.readDirectory(path);
+        } else {
+            registrar = CptBatchRegistrar.getInstance();
+            try {
+                documents = CptBatchRegistrar.readStream(
+                    file.getName(), FileUtil.getDataByPath(path));
+            } catch (IOException e) {
+                throw new BusinessException("the schemas are not well-formed JSON: " + path, e);
+            }
+        }
+
+        int[] failed = new int[1];
+        registrar.register(this.buildWeIdAuthentication(weIdResult), documents, item -> {
+            BaseBean.print(item);
+            if (item.getErrorCode().intValue() != ErrorCode.SUCCESS.getCode()) {
+                failed[0]++;
+            }
+        });
+        return failed[0];
+    }
+
     /**
      * build WeIdAuthentication object by CreateWeIdDataResult object.
      * 
@@ -33,6 +33,7 @@ import com.webank.weid.cpt.Cpt1000;
 import com.webank.weid.cpt.Cpt1002;
 import com.webank.weid.cpt.Data;
 import com.webank.weid.cpt.Meta;
+import com.webank.weid.demo.common.util.AmopClient;
 import com.webank.weid.demo.common.util.FileUtil;
 import com.webank.weid.demo.common.util.PrivateKeyUtil;
 import com.webank.weid.demo.exception.BusinessException;
@@ -42,8 +43,6 @@ import com.webank.weid.protocol.base.WeIdAuthentication;
 import com.webank.weid.protocol.request.CreateCredentialPojoArgs;
 import com.webank.weid.protocol.response.CreateWeIdDataResult;
 import com.webank.weid.protocol.response.ResponseData;
-import com.webank.weid.rpc.AmopService;
-import com.webank.weid.service.impl.AmopServiceImpl;
 import com.webank.weid.util.DataToolUtils;
 
 /**
@@ -281,9 +280,8 @@ public class DemoUtil {
         String targetWeId
     ) {
 
-        AmopService amopService = new AmopServiceImpl();
         ResponseData<PolicyAndChallenge> response = 
-            amopService.getPolicyAndChallenge(orgId, policyId, targetWeId);
+            AmopClient.getInstance().getPolicyAndChallenge(orgId, policyId, targetWeId);
         
         BaseBean.print("queryPolicyAndChallenge from amop result:");
         BaseBean.print(response);
@@ -296,4 +294,34 @@ public class DemoUtil {
         }
         return response.getResult();
     }
+
+    /**
+     * send AMOP messages for get the policyAndChallenge of every target weId at the same time.
+     * a failed target does not fail the others, it keeps its error response.
+     * @param orgId send to orgId
+     * @param policyId the policyId
+     * @param targetWeIds the weIds of the users
+     * @return the response of every target weId, in the order of the weIds
+     */
+    public static Map<String, ResponseData<PolicyAndChallenge>> queryPolicyAndChallenges(
+        String orgId,
+        Integer policyId,
+        List<String> targetWeIds
+    ) {
+
+        Map<String, ResponseData<PolicyAndChallenge>> responses = 
+            AmopClient.getInstance().getPolicyAndChallenges(orgId, policyId, targetWeIds);
+        
+        for (Map.Entry<String, ResponseData<PolicyAndChallenge>> entry : responses.entrySet()) {
+            ResponseData<PolicyAndChallenge> response = entry.getValue();
+            if (response.getErrorCode() != ErrorCode.SUCCESS.getCode()) {
+                logger.error(
+                    "queryPolicyAndChallenges from amop failed,targetWeId:{},responseData:{}",
+                    entry.getKey(),
+                    response
+                );
+            }
+        }
+        return responses;
+    }
 }
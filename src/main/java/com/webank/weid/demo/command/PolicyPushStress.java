@@ -0,0 +1,164 @@
+/*
+ *       Copyright© (2019) WeBank Co., Ltd.
+ *
+ *       This file is part of weidentity-sample.
+ *
+ *       weidentity-sample is free software: you can redistribute it and/or modify
+ *       it under the terms of the GNU Lesser General Public License as published by
+ *       the Free Software Foundation, either version 3 of the License, or
+ *       (at your option) any later version.
+ *
+ *       weidentity-sample is distributed in the hope that it will be useful,
+ *       but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *       MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *       GNU Lesser General Public License for more details.
+ *
+ *       You should have received a copy of the GNU Lesser General Public License
+ *       along with weidentity-sample.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.webank.weid.demo.command;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.webank.weid.demo.common.util.NamedThreadFactory;
+import com.webank.weid.demo.service.impl.PolicyServiceImpl;
+import com.webank.weid.protocol.base.ClaimPolicy;
+import com.webank.weid.protocol.base.PolicyAndChallenge;
+import com.webank.weid.protocol.base.PresentationPolicyE;
+import com.webank.weid.util.DataToolUtils;
+
+/**
+ * offline stress test of the AMOP policy push, many threads push the same policy with
+ * distinct target weIds at the same time and every response is checked for cross-talk:
+ * its challenge must belong to its own target, and the policy read back from the
+ * serialized response must carry its own publisher and every other property of the
+ * template. the shared template must be unchanged at the end.
+ *
+ * <p>the challenges are stored in the challenge store of weid.challengeStore.*, run it
+ * with the class path of the command mode:
+ * java -cp dist/conf/:dist/lib/*:dist/app/* com.webank.weid.demo.command.PolicyPushStress
+ *
+ * @author agent
+ */
+public class PolicyPushStress {
+
+    private static final int DEFAULT_THREADS = 64;
+
+    private static final int DEFAULT_PUSHES = 2000;
+
+    private static final String DEFAULT_POLICY_ID = "123456";
+
+    /**
+     * the main for the policy push stress test, exits with 1 when any check fails.
+     *
+     * @param args the number of threads, the pushes of every thread and the policy id,
+     *     64, 2000 and 123456 by default
+     * @throws Exception if a pushing thread fails unexpectedly
+     */
+    public static void main(String[] args) throws Exception {
+
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_THREADS;
+        int pushes = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_PUSHES;
+        String policyId = args.length > 2 ? args[2] : DEFAULT_POLICY_ID;
+
+        PresentationPolicyE template = DbUtils.getPolicy(policyId);
+        if (template == null) {
+            System.out.println("the policy does not exist: " + policyId);
+            System.exit(1);
+        }
+        String templateJson = DataToolUtils.serialize(template);
+        PolicyServiceImpl policyService = new PolicyServiceImpl();
+        AtomicLong failCount = new AtomicLong();
+        if (!isFrozen(policyService.policyAndChallengeOnPush(policyId, "did:weid:stress"))) {
+            System.out.println("the policy of the template is writable");
+            failCount.incrementAndGet();
+        }
+
+        ExecutorService executor =
+            Executors.newFixedThreadPool(threads, new NamedThreadFactory("weid-policy-stress"));
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        for (int thread = 0; thread < threads; thread++) {
+            String prefix = "did:weid:stress:" + thread + ":";
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < pushes; i++) {
+                    String targetWeId = prefix + i;
+                    if (!isOwn(policyService.policyAndChallengeOnPush(policyId, targetWeId),
+                        template, targetWeId)) {
+                        failCount.incrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        long elapsed = System.nanoTime() - begin;
+        executor.shutdown();
+
+        if (!templateJson.equals(DataToolUtils.serialize(DbUtils.getPolicy(policyId)))) {
+            System.out.println("the shared template was modified");
+            failCount.incrementAndGet();
+        }
+        long total = (long) threads * pushes;
+        System.out.println(String.format("%d pushes by %d threads in %d ms, %.0f pushes/s, "
+            + "failures: %d", total, threads, elapsed / 1000000L,
+            total * 1e9 / elapsed, failCount.get()));
+        System.exit(failCount.get() == 0 ? 0 : 1);
+    }
+
+    /**
+     * whether the response carries the publisher and the challenge of its own target, and
+     * the policy read back from its serialized form is the template.
+     */
+    private static boolean isOwn(
+        PolicyAndChallenge response,
+        PresentationPolicyE template,
+        String targetWeId) {
+
+        if (!targetWeId.equals(response.getChallenge().getWeId())) {
+            return false;
+        }
+        PresentationPolicyE pushed = PresentationPolicyE.fromJson(
+            DataToolUtils.serialize(response.getPresentationPolicyE()));
+        return pushed != null
+            && targetWeId.equals(pushed.getPolicyPublisherWeId())
+            && Objects.equals(template.getId(), pushed.getId())
+            && Objects.equals(template.getOrgId(), pushed.getOrgId())
+            && Objects.equals(template.getVersion(), pushed.getVersion())
+            && Objects.equals(template.getPolicyType(), pushed.getPolicyType())
+            && Objects.equals(template.getExtra(), pushed.getExtra())
+            && Objects.equals(
+                DataToolUtils.serialize(template.getPolicy()),
+                DataToolUtils.serialize(pushed.getPolicy()));
+    }
+
+    /**
+     * whether the maps of the policy handed out can not be modified.
+     */
+    private static boolean isFrozen(PolicyAndChallenge response) {
+        Map<Integer, ClaimPolicy> policy = response.getPresentationPolicyE().getPolicy();
+        if (policy == null) {
+            return true;
+        }
+        try {
+            policy.clear();
+            return false;
+        } catch (UnsupportedOperationException e) {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ *       Copyright© (2019) WeBank Co., Ltd.
+ *
+ *       This file is part of weidentity-sample.
+ *
+ *       weidentity-sample is free software: you can redistribute it and/or modify
+ *       it under the terms of the GNU Lesser General Public License as published by
+ *       the Free Software Foundation, either version 3 of the License, or
+ *       (at your option) any later version.
+ *
+ *       weidentity-sample is distributed in the hope that it will be useful,
+ *       but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *       MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *       GNU Lesser General Public License for more details.
+ *
+ *       You should have received a copy of the GNU Lesser General Public License
+ *       along with weidentity-sample.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.webank.weid.demo.common.dto;
+
+import com.webank.weid.protocol.response.ResponseData;
+
+/**
+ * one result of a batch interface, the response of one input with its position and id.
+ *
+ * @param <T> the type of the result
+ * @author agent
+ *
+ */
+public class BatchItem<T> {
+
+    /**
+     * the position of the input in the batch, starting from 0.
+     */
+    private int index;
+
+    /**
+     * the id of the input, such as the weId.
+     */
+    private String id;
+
+    private Integer errorCode;
+
+    private String errorMessage;
+
+    private T result;
+
+    /**
+     * constructor.
+     */
+    public BatchItem() {
+    }
+
+    /**
+     * constructor.
+     *
+     * @param index the position of the input
+     * @param id the id of the input
+     * @param response the response of the input
+     */
+    public BatchItem(int index, String id, ResponseData<T> response) {
+        this.index = index;
+        this.id = id;
+        this.errorCode = response.getErrorCode();
+        this.errorMessage = response.getErrorMessage();
+        this.result = response.getResult();
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public void setIndex(int index) {
+        this.index = index;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public Integer getErrorCode() {
+        return errorCode;
+    }
+
+    public void setErrorCode(Integer errorCode) {
+        this.errorCode = errorCode;
+    }
+
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+    public void setErrorMessage(String errorMessage) {
+        this.errorMessage = errorMessage;
+    }
+
+    public T getResult() {
+        return result;
+    }
+
+    public void setResult(T result) {
+        this.result = result;
+    }
+}
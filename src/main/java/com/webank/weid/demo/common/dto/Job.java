@@ -0,0 +1,122 @@
+/*
+ *       Copyright© (2019) WeBank Co., Ltd.
+ *
+ *       This file is part of weidentity-sample.
+ *
+ *       weidentity-sample is free software: you can redistribute it and/or modify
+ *       it under the terms of the GNU Lesser General Public License as published by
+ *       the Free Software Foundation, either version 3 of the License, or
+ *       (at your option) any later version.
+ *
+ *       weidentity-sample is distributed in the hope that it will be useful,
+ *       but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *       MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *       GNU Lesser General Public License for more details.
+ *
+ *       You should have received a copy of the GNU Lesser General Public License
+ *       along with weidentity-sample.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.webank.weid.demo.common.dto;
+
+import com.webank.weid.protocol.response.ResponseData;
+
+/**
+ * asynchronous job of a chain-writing request.
+ *
+ * @author agent
+ *
+ */
+public class Job {
+
+    /**
+     * the status of job.
+     */
+    public enum Status {
+        QUEUED, RUNNING, DONE, FAILED
+    }
+
+    /**
+     * the id of job.
+     */
+    private String jobId;
+
+    /**
+     * the type of job, the name of the operation.
+     */
+    private String type;
+
+    private volatile Status status = Status.QUEUED;
+
+    /**
+     * the create time in milliseconds.
+     */
+    private long createTime;
+
+    /**
+     * the finish time in milliseconds, 0 when not finished.
+     */
+    private volatile long finishTime;
+
+    /**
+     * the response of the operation, null when not finished.
+     */
+    private volatile ResponseData<?> result;
+
+    public String getJobId() {
+        return jobId;
+    }
+
+    public void setJobId(String jobId) {
+        this.jobId = jobId;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+
+    public long getCreateTime() {
+        return createTime;
+    }
+
+    public void setCreateTime(long createTime) {
+        this.createTime = createTime;
+    }
+
+    public long getFinishTime() {
+        return finishTime;
+    }
+
+    public void setFinishTime(long finishTime) {
+        this.finishTime = finishTime;
+    }
+
+    public ResponseData<?> getResult() {
+        return result;
+    }
+
+    public void setResult(ResponseData<?> result) {
+        this.result = result;
+    }
+
+    /**
+     * whether the job is finished.
+     *
+     * @return true if done or failed
+     */
+    public boolean isFinished() {
+        return status == Status.DONE || status == Status.FAILED;
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ *       Copyright© (2019) WeBank Co., Ltd.
+ *
+ *       This file is part of weidentity-sample.
+ *
+ *       weidentity-sample is free software: you can redistribute it and/or modify
+ *       it under the terms of the GNU Lesser General Public License as published by
+ *       the Free Software Foundation, either version 3 of the License, or
+ *       (at your option) any later version.
+ *
+ *       weidentity-sample is distributed in the hope that it will be useful,
+ *       but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *       MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *       GNU Lesser General Public License for more details.
+ *
+ *       You should have received a copy of the GNU Lesser General Public License
+ *       along with weidentity-sample.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.webank.weid.demo.common.keystore;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * the base of keystores, the private keys are stored by the address of weId.
+ *
+ * @author agent
+ */
+public abstract class AbstractKeyStore implements KeyStore {
+
+    @Override
+    public Map<String, String> batchGet(Collection<String> weIds) {
+        Map<String, String> result = new HashMap<String, String>();
+        for (String weId : weIds) {
+            String privateKey = get(weId);
+            if (null != privateKey) {
+                result.put(weId, privateKey);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void putAll(Map<String, String> privateKeys) {
+        for (Map.Entry<String, String> entry : privateKeys.entrySet()) {
+            put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    @Override
+    public boolean contains(String weId) {
+        return null != get(weId);
+    }
+
+    /**
+     * get the third paragraph of weId.
+     *
+     * @param weId the weId
+     * @return returns the address
+     */
+    protected static String toAddress(String weId) {
+        return weId.substring(weId.lastIndexOf(":") + 1);
+    }
+}
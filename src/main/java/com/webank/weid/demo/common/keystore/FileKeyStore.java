@@ -0,0 +1,257 @@
+/*
+ *       Copyright© (2019) WeBank Co., Ltd.
+ *
+ *       This file is part of weidentity-sample.
+ *
+ *       weidentity-sample is free software: you can redistribute it and/or modify
+ *       it under the terms of the GNU Lesser General Public License as published by
+ *       the Free Software Foundation, either version 3 of the License, or
+ *       (at your option) any later version.
+ *
+ *       weidentity-sample is distributed in the hope that it will be useful,
+ *       but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *       MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *       GNU Lesser General Public License for more details.
+ *
+ *       You should have received a copy of the GNU Lesser General Public License
+ *       along with weidentity-sample.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.webank.weid.demo.common.keystore;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.webank.weid.demo.common.util.BloomFilter;
+import com.webank.weid.demo.common.util.FileUtil;
+import com.webank.weid.demo.common.util.TtlCache;
+import com.webank.weid.demo.exception.BusinessException;
+
+/**
+ * keystore that stores the private key of each weId in its own file under the key
+ * directory, the file is named after the third paragraph of weId. the private keys read
+ * from or written to the files are cached in memory.
+ *
+ * <p>in the sharded layout the file is placed under two levels of sub directories picked
+ * by the hash of the address, such as keys/3f/a2/0x19607c..., so that no directory grows
+ * too large. files in the flat layout are still found. a bloom filter of the addresses
+ * on disk, built when the keystore is created, answers unknown weIds without touching
+ * the file system.
+ *
+ * @author agent
+ */
+public class FileKeyStore extends AbstractKeyStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(FileKeyStore.class);
+
+    /**
+     * the name pattern of the shard directories.
+     */
+    private static final String SHARD_DIR_PATTERN = "[0-9a-f]{2}";
+
+    /**
+     * the key directory, ends with a slash.
+     */
+    private final String keyDir;
+
+    private final TtlCache<String, String> keyCache;
+
+    /**
+     * whether new private keys are saved in the sharded layout.
+     */
+    private final boolean sharded;
+
+    /**
+     * the addresses on disk, null if disabled.
+     */
+    private final BloomFilter knownAddresses;
+
+    /**
+     * constructor, the flat layout without bloom filter.
+     *
+     * @param keyDir the key directory
+     * @param keyCache the cache in front of the key directory
+     */
+    public FileKeyStore(String keyDir, TtlCache<String, String> keyCache) {
+        this(keyDir, keyCache, false, null);
+    }
+
+    /**
+     * constructor, the bloom filter is filled from the key directory.
+     *
+     * @param keyDir the key directory
+     * @param keyCache the cache in front of the key directory
+     * @param sharded whether new private keys are saved in the sharded layout
+     * @param knownAddresses the empty bloom filter of the addresses, null to disable
+     */
+    public FileKeyStore(
+        String keyDir,
+        TtlCache<String, String> keyCache,
+        boolean sharded,
+        BloomFilter knownAddresses) {
+
+        // check whether the path exists or not, then create the path and return.
+        this.keyDir = FileUtil.checkDir(keyDir);
+        this.keyCache = keyCache;
+        this.sharded = sharded;
+        this.knownAddresses = knownAddresses;
+        if (null != knownAddresses) {
+            long count = loadKnownAddresses();
+            logger.info("load known addresses finish, keyDir={}, count={}", this.keyDir, count);
+        }
+    }
+
+    @Override
+    public String get(String weId) {
+
+        // an unknown address has no file, return without disk access.
+        String fileName = toAddress(weId);
+        if (null != knownAddresses && !knownAddresses.mightContain(fileName)) {
+            return null;
+        }
+
+        // return the cached private key, no disk access on a hit.
+        String privateKey = keyCache.get(fileName);
+        if (null != privateKey) {
+            return privateKey;
+        }
+
+        String filePath = findFile(fileName);
+        if (null == filePath) {
+            return null;
+        }
+        logger.info("get private key from file, weId={}, filePath={}", weId, filePath);
+
+        // get private key information from a file according to the third paragraph of weId.
+        privateKey = FileUtil.getDataByPath(filePath);
+        keyCache.put(fileName, privateKey);
+        return privateKey;
+    }
+
+    @Override
+    public void put(String weId, String privateKey) {
+
+        String fileName = toAddress(weId);
+        String filePath = sharded ? FileUtil.checkDir(shardDir(fileName)) + fileName
+            : keyDir + fileName;
+        logger.info("save private key into file, weId={}, filePath={}", weId, filePath);
+
+        // save the private key information as the file name for the third paragraph of weId.
+        if (FileUtil.saveFile(filePath, privateKey).isEmpty()) {
+            throw new BusinessException("save private key failed: " + weId);
+        }
+        if (null != knownAddresses) {
+            knownAddresses.put(fileName);
+        }
+        keyCache.put(fileName, privateKey);
+    }
+
+    @Override
+    public boolean delete(String weId) {
+        String fileName = toAddress(weId);
+        keyCache.remove(fileName);
+        String filePath = findFile(fileName);
+        return null != filePath && new File(filePath).delete();
+    }
+
+    @Override
+    public boolean contains(String weId) {
+        String fileName = toAddress(weId);
+        if (null != knownAddresses && !knownAddresses.mightContain(fileName)) {
+            return false;
+        }
+        return keyCache.containsKey(fileName) || null != findFile(fileName);
+    }
+
+    /**
+     * get the private key cache, used to read its metrics.
+     *
+     * @return returns the private key cache
+     */
+    public TtlCache<String, String> getKeyCache() {
+        return keyCache;
+    }
+
+    /**
+     * find the file of the address in the sharded layout first, then in the flat layout.
+     *
+     * @return returns the file path, null if not found
+     */
+    private String findFile(String fileName) {
+        String shardPath = shardDir(fileName) + fileName;
+        if (new File(shardPath).isFile()) {
+            return shardPath;
+        }
+        String flatPath = keyDir + fileName;
+        if (new File(flatPath).isFile()) {
+            return flatPath;
+        }
+        return null;
+    }
+
+    /**
+     * get the two-level shard directory of the address, picked by the CRC32 of it.
+     */
+    private String shardDir(String fileName) {
+        CRC32 crc = new CRC32();
+        crc.update(fileName.getBytes(StandardCharsets.UTF_8));
+        long hash = crc.getValue();
+        return keyDir + String.format("%02x/%02x/", (hash >>> 8) & 0xff, hash & 0xff);
+    }
+
+    private long loadKnownAddresses() {
+        return forEachKeyFile(keyDir, file -> knownAddresses.put(file.getName()));
+    }
+
+    /**
+     * visit the key files of the directory, in the flat layout and in the two levels of
+     * shard directories. the hidden files, such as the temporary files of a write, and
+     * the other sub directories are skipped.
+     *
+     * @param keyDir the key directory
+     * @param visitor called with every key file
+     * @return returns the number of key files
+     */
+    static long forEachKeyFile(String keyDir, Consumer<File> visitor) {
+        long count = visitFiles(new File(keyDir), visitor);
+        File[] level1 = new File(keyDir).listFiles();
+        if (null == level1) {
+            return count;
+        }
+        for (File dir1 : level1) {
+            if (!dir1.isDirectory() || !dir1.getName().matches(SHARD_DIR_PATTERN)) {
+                continue;
+            }
+            File[] level2 = dir1.listFiles();
+            if (null == level2) {
+                continue;
+            }
+            for (File dir2 : level2) {
+                if (dir2.isDirectory() && dir2.getName().matches(SHARD_DIR_PATTERN)) {
+                    count += visitFiles(dir2, visitor);
+                }
+            }
+        }
+        return count;
+    }
+
+    private static long visitFiles(File dir, Consumer<File> visitor) {
+        File[] files = dir.listFiles();
+        if (null == files) {
+            return 0;
+        }
+        long count = 0;
+        for (File file : files) {
+            if (file.isFile() && !file.getName().startsWith(".")) {
+                visitor.accept(file);
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ *       Copyright© (2019) WeBank Co., Ltd.
+ *
+ *       This file is part of weidentity-sample.
+ *
+ *       weidentity-sample is free software: you can redistribute it and/or modify
+ *       it under the terms of the GNU Lesser General Public License as published by
+ *       the Free Software Foundation, either version 3 of the License, or
+ *       (at your option) any later version.
+ *
+ *       weidentity-sample is distributed in the hope that it will be useful,
+ *       but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *       MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *       GNU Lesser General Public License for more details.
+ *
+ *       You should have received a copy of the GNU Lesser General Public License
+ *       along with weidentity-sample.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.webank.weid.demo.common.keystore;
+
+import java.io.File;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.webank.weid.demo.common.util.FileUtil;
+import com.webank.weid.demo.common.util.PrivateKeyUtil;
+
+/**
+ * offline tool, imports the one-file-per-weId key directory into the mapped keystore.
+ * run it while the service is stopped, the key files are left untouched.
+ *
+ * @author agent
+ */
+public class KeyDirMigration {
+
+    private static final Logger logger = LoggerFactory.getLogger(KeyDirMigration.class);
+
+    /**
+     * the main for key migration.
+     *
+     * @param args the key directory, weid.keys.dir by default
+     */
+    public static void main(String[] args) {
+
+        String keyDir = PrivateKeyUtil.KEY_DIR;
+        if (null != args && args.length > 0 && StringUtils.isNotBlank(args[0])) {
+            keyDir = args[0];
+        }
+        String checkPath = FileUtil.checkDir(keyDir);
+        int count = migrate(checkPath, checkPath + MappedKeyStore.DATA_FILE_NAME);
+        System.out.println("migrate finish, " + count + " keys imported from " + checkPath);
+        System.exit(0);
+    }
+
+    /**
+     * import every key file in the directory into the data file.
+     *
+     * @param keyDir the key directory
+     * @param dataFile the data file of the mapped keystore
+     * @return returns the number of imported keys
+     */
+    public static int migrate(String keyDir, String dataFile) {
+
+        if (!new File(keyDir).isDirectory()) {
+            logger.error("the key directory does not exist, keyDir={}", keyDir);
+            return 0;
+        }
+        String dataFileName = new File(dataFile).getName();
+        MappedKeyStore keyStore = new MappedKeyStore(dataFile);
+        int[] count = new int[1];
+        try {
+            // walk the flat files and the shard directories, the SDK private key is in
+            // another sub directory and is left out.
+            FileKeyStore.forEachKeyFile(keyDir, file -> {
+                if (file.getName().startsWith(dataFileName)) {
+                    return;
+                }
+                String privateKey = FileUtil.getDataByPath(file.getPath());
+                if (StringUtils.isBlank(privateKey)) {
+                    logger.warn("skip the empty key file, file={}", file);
+                    return;
+                }
+                keyStore.append(file.getName(), privateKey);
+                count[0]++;
+            });
+        } finally {
+            keyStore.close();
+        }
+        logger.info("migrate keys finish, keyDir={}, dataFile={}, count={}",
+            keyDir, dataFile, count[0]);
+        return count[0];
+    }
+}
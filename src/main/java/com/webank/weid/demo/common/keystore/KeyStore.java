@@ -0,0 +1,78 @@
+/*
+ *       Copyright© (2019) WeBank Co., Ltd.
+ *
+ *       This file is part of weidentity-sample.
+ *
+ *       weidentity-sample is free software: you can redistribute it and/or modify
+ *       it under the terms of the GNU Lesser General Public License as published by
+ *       the Free Software Foundation, either version 3 of the License, or
+ *       (at your option) any later version.
+ *
+ *       weidentity-sample is distributed in the hope that it will be useful,
+ *       but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *       MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *       GNU Lesser General Public License for more details.
+ *
+ *       You should have received a copy of the GNU Lesser General Public License
+ *       along with weidentity-sample.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.webank.weid.demo.common.keystore;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * the storage of weId private keys.
+ *
+ * @author agent
+ */
+public interface KeyStore {
+
+    /**
+     * get the private key by weId.
+     *
+     * @param weId the weId
+     * @return returns the private key, null if absent
+     */
+    String get(String weId);
+
+    /**
+     * get the private keys of many weIds.
+     *
+     * @param weIds the weIds
+     * @return returns weId to private key, absent weIds are left out
+     */
+    Map<String, String> batchGet(Collection<String> weIds);
+
+    /**
+     * save the private key of the weId.
+     *
+     * @param weId the weId
+     * @param privateKey the private key
+     */
+    void put(String weId, String privateKey);
+
+    /**
+     * save the private keys of many weIds as one batch.
+     *
+     * @param privateKeys weId to private key
+     */
+    void putAll(Map<String, String> privateKeys);
+
+    /**
+     * delete the private key of the weId.
+     *
+     * @param weId the weId
+     * @return true if the private key existed
+     */
+    boolean delete(String weId);
+
+    /**
+     * check whether the weId has a private key.
+     *
+     * @param weId the weId
+     * @return true if it exists
+     */
+    boolean contains(String weId);
+}
@@ -0,0 +1,603 @@
+/*
+ *       Copyright© (2019) WeBank Co., Ltd.
+ *
+ *       This file is part of weidentity-sample.
+ *
+ *       weidentity-sample is free software: you can redistribute it and/or modify
+ *       it under the terms of the GNU Lesser General Public License as published by
+ *       the Free Software Foundation, either version 3 of the License, or
+ *       (at your option) any later version.
+ *
+ *       weidentity-sample is distributed in the hope that it will be useful,
+ *       but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *       MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *       GNU Lesser General Public License for more details.
+ *
+ *       You should have received a copy of the GNU Lesser General Public License
+ *       along with weidentity-sample.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.webank.weid.demo.common.keystore;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.webank.weid.demo.exception.BusinessException;
+
+/**
+ * keystore that keeps all private keys in one append-only, memory-mapped data file.
+ *
+ * <p>every record is laid out as [keyLength][valueLength][key][value], the key is the
+ * address of the weId (the third paragraph). the record header is written last, a record
+ * with a zero header marks the end of the data when the file is reopened. a delete is
+ * appended as a record with a negative value length.
+ *
+ * <p>the file is mapped in segments of 64MB, addressed by long offsets, so the data is
+ * bounded by {@link #MAX_SEGMENTS} segments (64GB) rather than by one mapping. the index is
+ * an open-addressing table of record offsets in a primitive array, a lookup compares the
+ * key stored in the mapped record, so the heap costs 16 to 32 bytes per key: 10M keys take
+ * at most 320MB. a lookup after warmup is an array probe plus a read from the mapped region
+ * without any system call.
+ *
+ * <p>overwritten and deleted records are dead space, the file is rewritten with only the
+ * live records once the dead bytes exceed the live bytes, readers are not blocked meanwhile.
+ *
+ * @author agent
+ */
+public class MappedKeyStore extends AbstractKeyStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(MappedKeyStore.class);
+
+    /**
+     * the name of the data file under the key directory.
+     */
+    public static final String DATA_FILE_NAME = "weid-keys.dat";
+
+    /**
+     * the size of one mapped segment.
+     */
+    static final long SEGMENT_SIZE = 64L * 1024 * 1024;
+
+    /**
+     * the maximum number of segments of the data file.
+     */
+    static final int MAX_SEGMENTS = 1024;
+
+    /**
+     * the length of the record header.
+     */
+    private static final int HEADER_LENGTH = 8;
+
+    /**
+     * the value length of a delete record.
+     */
+    private static final int TOMBSTONE = -1;
+
+    /**
+     * the empty slot of the index.
+     */
+    private static final long EMPTY = -1L;
+
+    private static final int INITIAL_TABLE_SIZE = 1 << 16;
+
+    private static final int MAX_TABLE_SIZE = 1 << 30;
+
+    /**
+     * the minimum dead bytes before a compaction.
+     */
+    private static final long COMPACT_MIN_BYTES = 16L * 1024 * 1024;
+
+    private final String dataFile;
+
+    private FileChannel channel;
+
+    /**
+     * the segments and the index, replaced as a whole by a compaction.
+     */
+    private volatile State state;
+
+    /**
+     * the offset where the next record is appended.
+     */
+    private long writePosition;
+
+    /**
+     * the number of the index slots in use, tombstones included.
+     */
+    private int usedSlots;
+
+    private int liveCount;
+
+    private long liveBytes;
+
+    private long deadBytes;
+
+    /**
+     * the segments written since the last force.
+     */
+    private final boolean[] dirty = new boolean[MAX_SEGMENTS];
+
+    /**
+     * open the data file, create it when it does not exist, and rebuild the index.
+     *
+     * @param dataFile the path of the data file
+     */
+    public MappedKeyStore(String dataFile) {
+        this.dataFile = dataFile;
+        try {
+            File file = new File(dataFile);
+            File parent = file.getAbsoluteFile().getParentFile();
+            if (parent != null && !parent.exists() && !parent.mkdirs()) {
+                logger.error("create the key directory failed, dir={}", parent);
+            }
+            // a compaction interrupted before the rename leaves the old file intact.
+            Files.deleteIfExists(new File(dataFile + ".compact").toPath());
+            this.channel = new RandomAccessFile(file, "rw").getChannel();
+            this.state = new State(
+                new AtomicReferenceArray<MappedByteBuffer>(MAX_SEGMENTS),
+                newTable(INITIAL_TABLE_SIZE));
+            long size = Math.max(channel.size(), 1L);
+            for (int i = 0; i <= (size - 1) / SEGMENT_SIZE; i++) {
+                mapSegment(state, channel, i);
+            }
+            loadIndex();
+            logger.info("open mapped keystore, dataFile={}, keys={}, writePosition={}",
+                dataFile, liveCount, writePosition);
+        } catch (IOException e) {
+            throw new BusinessException("open mapped keystore failed: " + dataFile, e);
+        }
+    }
+
+    @Override
+    public String get(String weId) {
+        State current = state;
+        long offset = find(current, toAddress(weId).getBytes(StandardCharsets.UTF_8));
+        if (offset == EMPTY) {
+            return null;
+        }
+        int keyLength = current.readInt(offset);
+        int valueLength = current.readInt(offset + 4);
+        if (valueLength == TOMBSTONE) {
+            return null;
+        }
+        byte[] value = new byte[valueLength];
+        current.read(offset + HEADER_LENGTH + keyLength, value);
+        return new String(value, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public synchronized void put(String weId, String privateKey) {
+        append(toAddress(weId), privateKey);
+        force();
+        compactIfNeeded();
+    }
+
+    /**
+     * append all private keys and force them to disk once.
+     *
+     * @param privateKeys weId to private key
+     */
+    @Override
+    public synchronized void putAll(Map<String, String> privateKeys) {
+        for (Map.Entry<String, String> entry : privateKeys.entrySet()) {
+            append(toAddress(entry.getKey()), entry.getValue());
+        }
+        force();
+        compactIfNeeded();
+    }
+
+    @Override
+    public synchronized boolean delete(String weId) {
+        byte[] key = toAddress(weId).getBytes(StandardCharsets.UTF_8);
+        if (!isLive(state, find(state, key))) {
+            return false;
+        }
+        index(key, writeRecord(key, null));
+        force();
+        compactIfNeeded();
+        return true;
+    }
+
+    /**
+     * append the private key of the address without forcing it to disk,
+     * the caller flushes once by {@link #close()} after a batch.
+     *
+     * @param address the third paragraph of weId
+     * @param privateKey the private key
+     */
+    synchronized void append(String address, String privateKey) {
+        byte[] key = address.getBytes(StandardCharsets.UTF_8);
+        index(key, writeRecord(key, privateKey.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Override
+    public boolean contains(String weId) {
+        State current = state;
+        return isLive(current, find(current, toAddress(weId).getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * get the number of stored private keys.
+     *
+     * @return returns the size
+     */
+    public synchronized int size() {
+        return liveCount;
+    }
+
+    /**
+     * rewrite the data file with only the live records.
+     */
+    public synchronized void compact() {
+        State old = state;
+        File compactFile = new File(dataFile + ".compact");
+        FileChannel newChannel = null;
+        try {
+            newChannel = new RandomAccessFile(compactFile, "rw").getChannel();
+            State next = new State(
+                new AtomicReferenceArray<MappedByteBuffer>(MAX_SEGMENTS),
+                newTable(tableSizeFor(liveCount)));
+            mapSegment(next, newChannel, 0);
+            long position = 0;
+            int used = 0;
+            for (int slot = 0; slot < old.table.length(); slot++) {
+                long offset = old.table.get(slot);
+                if (!isLive(old, offset)) {
+                    continue;
+                }
+                int length = recordLength(old, offset);
+                byte[] record = new byte[length];
+                old.read(offset, record);
+                ensureCapacity(next, newChannel, position + length + HEADER_LENGTH);
+                // the header goes last, the same as a normal append.
+                next.write(position + 4, Arrays.copyOfRange(record, 4, length));
+                next.write(position, Arrays.copyOfRange(record, 0, 4));
+                insert(next, position, Arrays.copyOfRange(
+                    record, HEADER_LENGTH, HEADER_LENGTH + old.readInt(offset)));
+                position += length;
+                used++;
+            }
+            for (int i = 0; i < MAX_SEGMENTS && next.segments.get(i) != null; i++) {
+                next.segments.get(i).force();
+            }
+            Files.move(compactFile.toPath(), new File(dataFile).toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            FileChannel oldChannel = channel;
+            // the old mappings stay valid for concurrent readers until they are collected.
+            channel = newChannel;
+            state = next;
+            oldChannel.close();
+            logger.info("compact mapped keystore, dataFile={}, bytes {} -> {}",
+                dataFile, writePosition, position);
+            writePosition = position;
+            usedSlots = used;
+            liveBytes = position;
+            deadBytes = 0L;
+            Arrays.fill(dirty, false);
+        } catch (IOException e) {
+            closeQuietly(newChannel);
+            try {
+                Files.deleteIfExists(compactFile.toPath());
+            } catch (IOException ex) {
+                logger.error("delete the compact file failed, file={}", compactFile, ex);
+            }
+            throw new BusinessException("compact mapped keystore failed: " + dataFile, e);
+        }
+    }
+
+    /**
+     * flush the mapping and close the data file.
+     */
+    public synchronized void close() {
+        force();
+        closeQuietly(channel);
+    }
+
+    private void compactIfNeeded() {
+        if (deadBytes >= COMPACT_MIN_BYTES && deadBytes > liveBytes) {
+            compact();
+        }
+    }
+
+    private void force() {
+        State current = state;
+        for (int i = 0; i < MAX_SEGMENTS; i++) {
+            if (dirty[i]) {
+                current.segments.get(i).force();
+                dirty[i] = false;
+            }
+        }
+    }
+
+    /**
+     * write one record at the end of the data, a null value writes a delete record.
+     *
+     * @return returns the offset of the record
+     */
+    private long writeRecord(byte[] key, byte[] value) {
+        int valueLength = value == null ? 0 : value.length;
+        int recordLength = HEADER_LENGTH + key.length + valueLength;
+
+        // keep one empty header after the record as the end marker.
+        ensureCapacity(state, channel, writePosition + recordLength + HEADER_LENGTH);
+
+        State current = state;
+        long offset = writePosition;
+        current.writeInt(offset + 4, value == null ? TOMBSTONE : valueLength);
+        current.write(offset + HEADER_LENGTH, key);
+        if (value != null) {
+            current.write(offset + HEADER_LENGTH + key.length, value);
+        }
+        current.writeInt(offset, key.length);
+        markDirty(offset, recordLength);
+
+        writePosition = offset + recordLength;
+        return offset;
+    }
+
+    /**
+     * point the key to its new record and account the space of the replaced one.
+     */
+    private void index(byte[] key, long offset) {
+        State current = state;
+        long old = find(current, key);
+        int length = recordLength(current, offset);
+        boolean tombstone = current.readInt(offset + 4) == TOMBSTONE;
+        if (old == EMPTY) {
+            usedSlots++;
+        } else if (isLive(current, old)) {
+            // a tombstone is dead from the start, a live record dies once replaced.
+            int oldLength = recordLength(current, old);
+            liveBytes -= oldLength;
+            deadBytes += oldLength;
+            liveCount--;
+        }
+        if (tombstone) {
+            deadBytes += length;
+        } else {
+            liveBytes += length;
+            liveCount++;
+        }
+        if (old == EMPTY && usedSlots > current.table.length() / 2) {
+            resize(current);
+            usedSlots++;
+        }
+        insert(state, offset, key);
+    }
+
+    private void loadIndex() {
+        State current = state;
+        long offset = 0;
+        long size = (long) mappedSegments(current) * SEGMENT_SIZE;
+        while (offset + HEADER_LENGTH <= size) {
+            int keyLength = current.readInt(offset);
+            if (keyLength <= 0) {
+                break;
+            }
+            int valueLength = current.readInt(offset + 4);
+            byte[] key = new byte[keyLength];
+            current.read(offset + HEADER_LENGTH, key);
+            index(key, offset);
+            offset += HEADER_LENGTH + keyLength + (valueLength == TOMBSTONE ? 0 : valueLength);
+        }
+        writePosition = offset;
+    }
+
+    /**
+     * rebuild the index in a larger table, the tombstones are left out.
+     */
+    private void resize(State current) {
+        if (current.table.length() >= MAX_TABLE_SIZE) {
+            throw new BusinessException("mapped keystore index is full: " + dataFile);
+        }
+        State next = new State(current.segments, newTable(current.table.length() * 2));
+        int used = 0;
+        for (int slot = 0; slot < current.table.length(); slot++) {
+            long offset = current.table.get(slot);
+            if (isLive(current, offset)) {
+                byte[] key = new byte[current.readInt(offset)];
+                current.read(offset + HEADER_LENGTH, key);
+                insert(next, offset, key);
+                used++;
+            }
+        }
+        usedSlots = used;
+        state = next;
+    }
+
+    /**
+     * find the slot of the key and store the offset in it, the caller holds the lock.
+     */
+    private static void insert(State target, long offset, byte[] key) {
+        AtomicLongArray table = target.table;
+        int mask = table.length() - 1;
+        int slot = hash(key) & mask;
+        while (true) {
+            long current = table.get(slot);
+            if (current == EMPTY || keyEquals(target, current, key)) {
+                table.set(slot, offset);
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * get the offset of the latest record of the key, the tombstone included.
+     */
+    private static long find(State current, byte[] key) {
+        AtomicLongArray table = current.table;
+        int mask = table.length() - 1;
+        int slot = hash(key) & mask;
+        while (true) {
+            long offset = table.get(slot);
+            if (offset == EMPTY || keyEquals(current, offset, key)) {
+                return offset;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private static boolean keyEquals(State current, long offset, byte[] key) {
+        if (current.readInt(offset) != key.length) {
+            return false;
+        }
+        byte[] stored = new byte[key.length];
+        current.read(offset + HEADER_LENGTH, stored);
+        return Arrays.equals(stored, key);
+    }
+
+    private static boolean isLive(State current, long offset) {
+        return offset != EMPTY && current.readInt(offset + 4) != TOMBSTONE;
+    }
+
+    private static int recordLength(State current, long offset) {
+        int valueLength = current.readInt(offset + 4);
+        return HEADER_LENGTH + current.readInt(offset)
+            + (valueLength == TOMBSTONE ? 0 : valueLength);
+    }
+
+    private static int hash(byte[] key) {
+        int h = Arrays.hashCode(key);
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        return h;
+    }
+
+    private static AtomicLongArray newTable(int size) {
+        AtomicLongArray table = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            table.set(i, EMPTY);
+        }
+        return table;
+    }
+
+    private static int tableSizeFor(int keys) {
+        int size = INITIAL_TABLE_SIZE;
+        while (size < MAX_TABLE_SIZE && size / 3 < keys) {
+            size = size * 2;
+        }
+        return size;
+    }
+
+    private static int mappedSegments(State current) {
+        int count = 0;
+        while (count < MAX_SEGMENTS && current.segments.get(count) != null) {
+            count++;
+        }
+        return count;
+    }
+
+    private void markDirty(long offset, int length) {
+        for (long i = offset / SEGMENT_SIZE; i <= (offset + length - 1) / SEGMENT_SIZE; i++) {
+            dirty[(int) i] = true;
+        }
+    }
+
+    private void ensureCapacity(State current, FileChannel target, long required) {
+        long segments = (required + SEGMENT_SIZE - 1) / SEGMENT_SIZE;
+        if (segments > MAX_SEGMENTS) {
+            throw new BusinessException("mapped keystore is full: " + dataFile);
+        }
+        for (int i = 0; i < segments; i++) {
+            if (current.segments.get(i) == null) {
+                mapSegment(current, target, i);
+                logger.info("grow mapped keystore, dataFile={}, segments={}", dataFile, i + 1);
+            }
+        }
+    }
+
+    private void mapSegment(State current, FileChannel target, int index) {
+        try {
+            current.segments.set(index, target.map(
+                FileChannel.MapMode.READ_WRITE, index * SEGMENT_SIZE, SEGMENT_SIZE));
+        } catch (IOException e) {
+            throw new BusinessException("map mapped keystore failed: " + dataFile, e);
+        }
+    }
+
+    private void closeQuietly(FileChannel target) {
+        if (target == null) {
+            return;
+        }
+        try {
+            target.close();
+        } catch (IOException e) {
+            logger.error("close mapped keystore error, dataFile={}", dataFile, e);
+        }
+    }
+
+    /**
+     * the mapped segments and the index over them. a segment is mapped before any offset in
+     * it is published, so a reader holding the state finds every segment it is pointed to.
+     */
+    private static final class State {
+
+        private final AtomicReferenceArray<MappedByteBuffer> segments;
+
+        private final AtomicLongArray table;
+
+        private State(AtomicReferenceArray<MappedByteBuffer> segments, AtomicLongArray table) {
+            this.segments = segments;
+            this.table = table;
+        }
+
+        private int readInt(long offset) {
+            int within = (int) (offset % SEGMENT_SIZE);
+            if (within <= SEGMENT_SIZE - 4) {
+                return segments.get((int) (offset / SEGMENT_SIZE)).getInt(within);
+            }
+            byte[] bytes = new byte[4];
+            read(offset, bytes);
+            return ((bytes[0] & 0xff) << 24) | ((bytes[1] & 0xff) << 16)
+                | ((bytes[2] & 0xff) << 8) | (bytes[3] & 0xff);
+        }
+
+        private void writeInt(long offset, int value) {
+            write(offset, new byte[]{
+                (byte) (value >>> 24), (byte) (value >>> 16), (byte) (value >>> 8), (byte) value});
+        }
+
+        /**
+         * read the bytes at the offset, a record may cross the border of two segments.
+         */
+        private void read(long offset, byte[] dst) {
+            int done = 0;
+            while (done < dst.length) {
+                long position = offset + done;
+                MappedByteBuffer view = (MappedByteBuffer) segments
+                    .get((int) (position / SEGMENT_SIZE)).duplicate();
+                view.position((int) (position % SEGMENT_SIZE));
+                int length = Math.min(dst.length - done, view.remaining());
+                view.get(dst, done, length);
+                done += length;
+            }
+        }
+
+        private void write(long offset, byte[] src) {
+            int done = 0;
+            while (done < src.length) {
+                long position = offset + done;
+                MappedByteBuffer view = (MappedByteBuffer) segments
+                    .get((int) (position / SEGMENT_SIZE)).duplicate();
+                view.position((int) (position % SEGMENT_SIZE));
+                int length = Math.min(src.length - done, view.remaining());
+                view.put(src, done, length);
+                done += length;
+            }
+        }
+    }
+}
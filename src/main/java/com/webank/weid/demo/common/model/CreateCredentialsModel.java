@@ -0,0 +1,56 @@
+package com.webank.weid.demo.common.model;
+
+import java.util.List;
+import java.util.Map;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+
+/**
+ * 批量创建电子凭证接口模板.
+ * @author agent
+ **/
+@ApiModel(description = "批量创建电子凭证接口模板")
+public class CreateCredentialsModel {
+
+    @ApiModelProperty(name = "cptId", value = "CPT编号", required = true,
+        example = "1001")
+    private Integer cptId;
+
+    @ApiModelProperty(name = "issuer", value = "发行方WeIdentity DID", required = true,
+        example = "did:weid:1:0x19607cf2bc4538b49847b43688acf3befc487a41")
+    private String issuer;
+
+    @ApiModelProperty(name = "claimDataList", value = "claim数据列表，每个claim生成一个电子凭证",
+        required = true,
+        example = "[{\n"
+            + "    \"age\": 32,\n"
+            + "    \"name\": \"zhang san\",\n"
+            + "    \"gender\": \"F\"\n"
+            + "}]")
+    private List<Map<String, Object>> claimDataList;
+
+    public Integer getCptId() {
+        return cptId;
+    }
+
+    public void setCptId(Integer cptId) {
+        this.cptId = cptId;
+    }
+
+    public String getIssuer() {
+        return issuer;
+    }
+
+    public void setIssuer(String issuer) {
+        this.issuer = issuer;
+    }
+
+    public List<Map<String, Object>> getClaimDataList() {
+        return claimDataList;
+    }
+
+    public void setClaimDataList(List<Map<String, Object>> claimDataList) {
+        this.claimDataList = claimDataList;
+    }
+}
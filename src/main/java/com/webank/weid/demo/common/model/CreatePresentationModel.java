@@ -6,6 +6,8 @@ import java.util.Map;
 import io.swagger.annotations.ApiModel;
 import io.swagger.annotations.ApiModelProperty;
 
+import com.webank.weid.protocol.base.CredentialPojo;
+
 /**
  * 创建Presentation接口模板.
  * @author darwindu
@@ -51,7 +53,7 @@ public class CreatePresentationModel {
             + "    \"hash\": \"0x3d059391a6adb36443c148728eba40a9f280f553ce8043b8c88b9afa7495a39b\",\n"
             + "    \"signatureThumbprint\": \"{\\\"claim\\\":\\\"{\\\"age\\\":\\\"0x98cf672409c25cf2f0149ceccd505e9c75a024273c5588bd88e0c8f362c01422\\\",\\\"gender\\\":\\\"0x8eb2b804a8f36f7257dc708f1629cd47b292566a00066cb76157591d45dcef92\\\",\\\"name\\\":\\\"0x0303a5b639ba700bec18eb9d8d9488a8a7d18371f95a14bd49209f3ddde60136\\\"}\\\",\\\"context\\\":\\\"https://github.com/WeBankFinTech/WeIdentity/blob/master/context/v1\\\",\\\"cptId\\\":1001,\\\"expirationDate\\\":1578517027,\\\"id\\\":\\\"2cd5aced-a30a-4934-803d-fb0f090957a4\\\",\\\"issuanceDate\\\":1578466962,\\\"issuer\\\":\\\"did:weid:1:0x19607cf2bc4538b49847b43688acf3befc487a41\\\",\\\"proof\\\":null,\\\"type\\\":[\\\"VerifiableCredential\\\"]}\"\n"
             + "}]")
-    private List<Map<String, Object>> credentialList;
+    private List<CredentialPojo> credentialList;
 
     @ApiModelProperty(name = "challengeUserWeId", value = "policy提供给指定的WeIdentity DID", required = true,
         example = "did:weid:1:0x19607cf2bc4538b49847b43688acf3befc487a41")
@@ -83,6 +85,10 @@ public class CreatePresentationModel {
             + "}")
     private Map<String, Object> presentationPolicyE;
 
+    @ApiModelProperty(name = "policyId",
+        value = "已注册的PresentationPolicyE的id，传入时可不传presentationPolicyE", example = "1")
+    private Integer policyId;
+
     public String getWeId() {
         return weId;
     }
@@ -91,12 +97,11 @@ public class CreatePresentationModel {
         this.weId = weId;
     }
 
-    public List<Map<String, Object>> getCredentialList() {
+    public List<CredentialPojo> getCredentialList() {
         return credentialList;
     }
 
-    public void setCredentialList(
-        List<Map<String, Object>> credentialList) {
+    public void setCredentialList(List<CredentialPojo> credentialList) {
         this.credentialList = credentialList;
     }
 
@@ -115,4 +120,12 @@ public class CreatePresentationModel {
     public void setPresentationPolicyE(Map<String, Object> presentationPolicyE) {
         this.presentationPolicyE = presentationPolicyE;
     }
+
+    public Integer getPolicyId() {
+        return policyId;
+    }
+
+    public void setPolicyId(Integer policyId) {
+        this.policyId = policyId;
+    }
 }
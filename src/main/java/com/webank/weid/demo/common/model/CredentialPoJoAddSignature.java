@@ -1,11 +1,12 @@
 package com.webank.weid.demo.common.model;
 
 import java.util.List;
-import java.util.Map;
 
 import io.swagger.annotations.ApiModel;
 import io.swagger.annotations.ApiModelProperty;
 
+import com.webank.weid.protocol.base.CredentialPojo;
+
 /**
  * 增加签名接口模板.
  * @author darwindu
@@ -55,7 +56,7 @@ public class CredentialPoJoAddSignature {
             + "    \"hash\": \"0x3d059391a6adb36443c148728eba40a9f280f553ce8043b8c88b9afa7495a39b\",\n"
             + "    \"signatureThumbprint\": \"{\\\"claim\\\":\\\"{\\\"age\\\":\\\"0x98cf672409c25cf2f0149ceccd505e9c75a024273c5588bd88e0c8f362c01422\\\",\\\"gender\\\":\\\"0x8eb2b804a8f36f7257dc708f1629cd47b292566a00066cb76157591d45dcef92\\\",\\\"name\\\":\\\"0x0303a5b639ba700bec18eb9d8d9488a8a7d18371f95a14bd49209f3ddde60136\\\"}\\\",\\\"context\\\":\\\"https://github.com/WeBankFinTech/WeIdentity/blob/master/context/v1\\\",\\\"cptId\\\":1001,\\\"expirationDate\\\":1578517027,\\\"id\\\":\\\"2cd5aced-a30a-4934-803d-fb0f090957a4\\\",\\\"issuanceDate\\\":1578466962,\\\"issuer\\\":\\\"did:weid:1:0x19607cf2bc4538b49847b43688acf3befc487a41\\\",\\\"proof\\\":null,\\\"type\\\":[\\\"VerifiableCredential\\\"]}\"\n"
             + "}]")
-    private List<Map<String, Object>> credentialList;
+    private List<CredentialPojo> credentialList;
 
     public String getWeid() {
         return weid;
@@ -65,12 +66,11 @@ public class CredentialPoJoAddSignature {
         this.weid = weid;
     }
 
-    public List<Map<String, Object>> getCredentialList() {
+    public List<CredentialPojo> getCredentialList() {
         return credentialList;
     }
 
-    public void setCredentialList(
-        List<Map<String, Object>> credentialList) {
+    public void setCredentialList(List<CredentialPojo> credentialList) {
         this.credentialList = credentialList;
     }
 }
@@ -0,0 +1,245 @@
+/*
+ *       Copyright© (2019) WeBank Co., Ltd.
+ *
+ *       This file is part of weidentity-sample.
+ *
+ *       weidentity-sample is free software: you can redistribute it and/or modify
+ *       it under the terms of the GNU Lesser General Public License as published by
+ *       the Free Software Foundation, either version 3 of the License, or
+ *       (at your option) any later version.
+ *
+ *       weidentity-sample is distributed in the hope that it will be useful,
+ *       but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *       MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *       GNU Lesser General Public License for more details.
+ *
+ *       You should have received a copy of the GNU Lesser General Public License
+ *       along with weidentity-sample.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.webank.weid.demo.common.util;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.webank.weid.constant.ErrorCode;
+import com.webank.weid.demo.exception.BusinessException;
+import com.webank.weid.protocol.base.PolicyAndChallenge;
+import com.webank.weid.protocol.response.ResponseData;
+import com.webank.weid.rpc.AmopService;
+import com.webank.weid.service.impl.AmopServiceImpl;
+
+/**
+ * long-lived AMOP client of the user agent, shares one AMOP service of the SDK by all
+ * requests and records the latency of the requests per orgId.
+ *
+ * <p>the policies are not cached: the AMOP protocol of the SDK only has the combined
+ * policy and challenge message, so every fresh challenge brings its policy anyway.
+ *
+ * @author agent
+ */
+public class AmopClient {
+
+    private static final Logger logger = LoggerFactory.getLogger(AmopClient.class);
+
+    private final AmopService amopService;
+
+    /**
+     * the threads sending the requests of a batch at the same time.
+     */
+    private final ExecutorService batchExecutor;
+
+    private final Map<String, Latency> latencies = new ConcurrentHashMap<String, Latency>();
+
+    /**
+     * constructor.
+     *
+     * @param amopService the AMOP service shared by all requests
+     * @param batchThreads the number of requests of a batch sent at the same time
+     */
+    public AmopClient(AmopService amopService, int batchThreads) {
+        this.amopService = amopService;
+        this.batchExecutor = Executors.newFixedThreadPool(
+            Math.max(1, batchThreads), new NamedThreadFactory("weid-amop-batch"));
+        logger.info("amop client init, batchThreads={}", batchThreads);
+    }
+
+    /**
+     * get the shared client of the process, configured by weid.amop.*.
+     *
+     * @return returns the AMOP client
+     */
+    public static AmopClient getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * get the policy and a fresh challenge for the target weId from the organization.
+     *
+     * @param orgId the orgId of the verifier
+     * @param policyId the policy id
+     * @param targetWeId the weId of the user
+     * @return returns the policy and challenge
+     */
+    public ResponseData<PolicyAndChallenge> getPolicyAndChallenge(
+        String orgId,
+        Integer policyId,
+        String targetWeId) {
+
+        long start = System.nanoTime();
+        try {
+            return amopService.getPolicyAndChallenge(orgId, policyId, targetWeId);
+        } finally {
+            latency(orgId).record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * get the policy and a fresh challenge for every target weId, the requests are sent at
+     * the same time, so the batch takes about the time of the slowest request.
+     *
+     * @param orgId the orgId of the verifier
+     * @param policyId the policy id
+     * @param targetWeIds the weIds of the users
+     * @return returns the response of every target weId, in the order of the weIds
+     */
+    public Map<String, ResponseData<PolicyAndChallenge>> getPolicyAndChallenges(
+        String orgId,
+        Integer policyId,
+        List<String> targetWeIds) {
+
+        List<Future<ResponseData<PolicyAndChallenge>>> futures =
+            new ArrayList<Future<ResponseData<PolicyAndChallenge>>>(targetWeIds.size());
+        for (String targetWeId : targetWeIds) {
+            futures.add(batchExecutor.submit(
+                () -> getPolicyAndChallenge(orgId, policyId, targetWeId)));
+        }
+        Map<String, ResponseData<PolicyAndChallenge>> responses =
+            new LinkedHashMap<String, ResponseData<PolicyAndChallenge>>();
+        for (int i = 0; i < targetWeIds.size(); i++) {
+            try {
+                responses.put(targetWeIds.get(i), futures.get(i).get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new BusinessException("get the policy and challenges interrupted", e);
+            } catch (ExecutionException e) {
+                logger.error("get the policy and challenge failed, orgId={}, targetWeId={}",
+                    orgId, targetWeIds.get(i), e.getCause());
+                responses.put(targetWeIds.get(i), new ResponseData<PolicyAndChallenge>(
+                    null, ErrorCode.UNKNOW_ERROR));
+            }
+        }
+        return responses;
+    }
+
+    /**
+     * get the metrics of the client, including the latency percentiles of every orgId.
+     *
+     * @return returns the metrics
+     */
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<String, Object>();
+        Map<String, Object> orgs = new TreeMap<String, Object>();
+        for (Map.Entry<String, Latency> entry : latencies.entrySet()) {
+            orgs.put(entry.getKey(), entry.getValue().getMetrics());
+        }
+        metrics.put("latency", orgs);
+        return metrics;
+    }
+
+    private Latency latency(String orgId) {
+        return latencies.computeIfAbsent(String.valueOf(orgId), id -> new Latency());
+    }
+
+    /**
+     * latency histogram of the requests to one organization. the buckets grow by a quarter
+     * of a power of two, so a percentile is reported within 25% of the exact value without
+     * keeping the samples.
+     */
+    private static final class Latency {
+
+        private static final int BUCKETS = 160;
+
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+        private final LongAdder count = new LongAdder();
+
+        private final LongAdder totalMicros = new LongAdder();
+
+        private void record(long nanos) {
+            long micros = Math.max(0L, nanos / 1000L);
+            counts.incrementAndGet(bucket(micros));
+            count.increment();
+            totalMicros.add(micros);
+        }
+
+        private Map<String, Object> getMetrics() {
+            long[] snapshot = new long[BUCKETS];
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                snapshot[i] = counts.get(i);
+                total += snapshot[i];
+            }
+            Map<String, Object> metrics = new LinkedHashMap<String, Object>();
+            metrics.put("count", count.sum());
+            metrics.put("avgMillis", total == 0 ? 0.0 : totalMicros.sum() / 1000.0 / total);
+            metrics.put("p50Millis", percentile(snapshot, total, 0.50));
+            metrics.put("p90Millis", percentile(snapshot, total, 0.90));
+            metrics.put("p99Millis", percentile(snapshot, total, 0.99));
+            metrics.put("maxMillis", percentile(snapshot, total, 1.0));
+            return metrics;
+        }
+
+        private static double percentile(long[] snapshot, long total, double quantile) {
+            if (total == 0) {
+                return 0.0;
+            }
+            long rank = Math.max(1L, (long) Math.ceil(total * quantile));
+            long seen = 0;
+            for (int i = 0; i < snapshot.length; i++) {
+                seen += snapshot[i];
+                if (seen >= rank) {
+                    return upperBound(i) / 1000.0;
+                }
+            }
+            return upperBound(snapshot.length - 1) / 1000.0;
+        }
+
+        private static int bucket(long micros) {
+            if (micros < 4) {
+                return (int) micros;
+            }
+            int msb = 63 - Long.numberOfLeadingZeros(micros);
+            int sub = (int) (micros >>> (msb - 2)) & 3;
+            return Math.min(BUCKETS - 1, (msb - 1) * 4 + sub);
+        }
+
+        private static long upperBound(int bucket) {
+            if (bucket < 4) {
+                return bucket;
+            }
+            int msb = bucket / 4 + 1;
+            long lower = (4L + bucket % 4) << (msb - 2);
+            return lower + (1L << (msb - 2)) - 1;
+        }
+    }
+
+    private static final class Holder {
+
+        private static final AmopClient INSTANCE = new AmopClient(
+            new AmopServiceImpl(),
+            Integer.parseInt(PropertiesUtils.getProperty("weid.amop.batchThreads", "16")));
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ *       Copyright© (2019) WeBank Co., Ltd.
+ *
+ *       This file is part of weidentity-sample.
+ *
+ *       weidentity-sample is free software: you can redistribute it and/or modify
+ *       it under the terms of the GNU Lesser General Public License as published by
+ *       the Free Software Foundation, either version 3 of the License, or
+ *       (at your option) any later version.
+ *
+ *       weidentity-sample is distributed in the hope that it will be useful,
+ *       but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *       MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *       GNU Lesser General Public License for more details.
+ *
+ *       You should have received a copy of the GNU Lesser General Public License
+ *       along with weidentity-sample.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.webank.weid.demo.common.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import com.webank.weid.constant.ErrorCode;
+import com.webank.weid.protocol.response.ResponseData;
+
+/**
+ * bulkhead of one kind of operation, such as chain reads, chain writes or signing.
+ * the operations run on a fixed size executor with a bounded queue, so one kind of
+ * operation can not take the threads of the others. the caller gets a DeferredResult
+ * and the servlet thread is released while the operation is in flight.
+ *
+ * @author agent
+ */
+public class Bulkhead {
+
+    private static final Logger logger = LoggerFactory.getLogger(Bulkhead.class);
+
+    private final String name;
+
+    private final long timeoutMillis;
+
+    private final ThreadPoolExecutor executor;
+
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    /**
+     * constructor.
+     *
+     * @param name the name of the bulkhead
+     * @param threads the number of threads
+     * @param queueCapacity the maximum number of operations waiting for a thread
+     * @param timeoutMillis the time the caller waits for the operation in milliseconds
+     */
+    public Bulkhead(String name, int threads, int queueCapacity, long timeoutMillis) {
+        this.name = name;
+        this.timeoutMillis = timeoutMillis;
+        this.executor = new ThreadPoolExecutor(
+            threads,
+            threads,
+            0L,
+            TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<Runnable>(queueCapacity),
+            new NamedThreadFactory("bulkhead-" + name));
+        logger.info("bulkhead init, name={}, threads={}, queueCapacity={}, timeoutMillis={}",
+            name, threads, queueCapacity, timeoutMillis);
+    }
+
+    /**
+     * run the operation in the bulkhead. the result is an error response when the bulkhead
+     * is full, the operation throws or it does not finish in time.
+     *
+     * @param operation the operation
+     * @param <T> the type of the result
+     * @return returns the deferred response of the operation
+     */
+    public <T> DeferredResult<ResponseData<T>> submit(Supplier<ResponseData<T>> operation) {
+
+        DeferredResult<ResponseData<T>> deferredResult = new DeferredResult<ResponseData<T>>(
+            timeoutMillis,
+            new ResponseData<T>(null, ErrorCode.UNKNOW_ERROR.getCode(), "the request is timeout."));
+        try {
+            executor.execute(() -> {
+                try {
+                    deferredResult.setResult(operation.get());
+                } catch (Exception e) {
+                    logger.error("bulkhead operation error, name={}", name, e);
+                    deferredResult.setResult(new ResponseData<T>(null, ErrorCode.UNKNOW_ERROR));
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejectedCount.incrementAndGet();
+            logger.error("bulkhead is full, name={}", name);
+            deferredResult.setResult(new ResponseData<T>(
+                null, ErrorCode.UNKNOW_ERROR.getCode(), "the " + name + " bulkhead is full."));
+        }
+        return deferredResult;
+    }
+
+    /**
+     * get the metrics of the bulkhead: active threads, queued and rejected operations.
+     *
+     * @return returns the metrics
+     */
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<String, Object>();
+        metrics.put("activeCount", executor.getActiveCount());
+        metrics.put("queueSize", executor.getQueue().size());
+        metrics.put("completedCount", executor.getCompletedTaskCount());
+        metrics.put("rejectedCount", rejectedCount.get());
+        return metrics;
+    }
+
+    /**
+     * stop accepting operations, the queued ones are still run.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
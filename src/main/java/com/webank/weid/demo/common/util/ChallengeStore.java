@@ -0,0 +1,600 @@
+/*
+ *       Copyright© (2019) WeBank Co., Ltd.
+ *
+ *       This file is part of weidentity-sample.
+ *
+ *       weidentity-sample is free software: you can redistribute it and/or modify
+ *       it under the terms of the GNU Lesser General Public License as published by
+ *       the Free Software Foundation, either version 3 of the License, or
+ *       (at your option) any later version.
+ *
+ *       weidentity-sample is distributed in the hope that it will be useful,
+ *       but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *       MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *       GNU Lesser General Public License for more details.
+ *
+ *       You should have received a copy of the GNU Lesser General Public License
+ *       along with weidentity-sample.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.webank.weid.demo.common.util;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.webank.weid.demo.exception.BusinessException;
+import com.webank.weid.protocol.base.Challenge;
+import com.webank.weid.util.DataToolUtils;
+
+/**
+ * in-memory store of the challenges sent to the users, keyed by nonce. a challenge lives for
+ * a fixed time and is consumed by the first verification that reads it, so a presentation
+ * can not be replayed against the same challenge.
+ *
+ * <p>the expired challenges are removed by a hashed timing wheel: every challenge is put in
+ * the slot of the tick it expires in, and the sweeper only visits the slots of the elapsed
+ * ticks, so a sweep costs the number of challenges due rather than the size of the store.
+ *
+ * <p>when a log file is configured every put and consume is appended to it and the log is
+ * replayed at startup, so the challenges survive a restart and are shared by the command
+ * mode processes on the same directory, such as the daemon putting the challenges and the
+ * verifier consuming them. the log has one writer at a time, the process holding the
+ * exclusive lock of the lock file next to it: under the lock a process first reads the
+ * records the other processes appended since its last read, then checks and appends its
+ * own, so a challenge consumed by one process is never consumed again by another. the log
+ * is rewritten with only the live challenges, under the same lock, once the dead records
+ * outnumber them, and the other processes read the rewritten log from the start.
+ *
+ * @author agent
+ */
+public class ChallengeStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChallengeStore.class);
+
+    private static final String PUT = "PUT";
+
+    private static final String CONSUME = "CONSUME";
+
+    private static final String SEPARATOR = "\t";
+
+    private static final String LOCK_SUFFIX = ".lock";
+
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private final long ttlMillis;
+
+    private final long tickMillis;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+    /**
+     * the nonces by the slot of the tick they expire in.
+     */
+    private final List<Set<String>> wheel;
+
+    /**
+     * the last tick swept, only touched by the sweeper.
+     */
+    private long sweptTick;
+
+    private final ScheduledExecutorService sweeper;
+
+    /**
+     * the append-only log, null when persistence is disabled.
+     */
+    private final File logFile;
+
+    /**
+     * the log is written only while holding both, the monitor for the threads of the
+     * process and the file lock for the other processes.
+     */
+    private final Object logLock = new Object();
+
+    private FileChannel lockChannel;
+
+    private FileChannel logChannel;
+
+    /**
+     * the identity of the opened log file, a different one means the log was compacted
+     * by another process.
+     */
+    private Object logFileKey;
+
+    /**
+     * the end of the last complete record read or appended.
+     */
+    private long logPosition;
+
+    private long logRecords;
+
+    private final AtomicLong putCount = new AtomicLong();
+
+    private final AtomicLong consumeCount = new AtomicLong();
+
+    private final AtomicLong rejectCount = new AtomicLong();
+
+    private final AtomicLong expireCount = new AtomicLong();
+
+    private final AtomicLong compactCount = new AtomicLong();
+
+    /**
+     * constructor, replays the log when it exists.
+     *
+     * @param ttlMillis the time to live of a challenge in milliseconds
+     * @param tickMillis the tick of the timing wheel in milliseconds
+     * @param wheelSize the number of slots of the timing wheel
+     * @param logFile the path of the log, blank disables persistence
+     * @param compactMillis the interval of checking the log for compaction in milliseconds
+     */
+    public ChallengeStore(
+        long ttlMillis,
+        long tickMillis,
+        int wheelSize,
+        String logFile,
+        long compactMillis) {
+
+        if (ttlMillis <= 0 || tickMillis <= 0 || wheelSize <= 0) {
+            throw new BusinessException("the ttl, tick and wheel size of the challenge store "
+                + "must be positive");
+        }
+        this.ttlMillis = ttlMillis;
+        this.tickMillis = tickMillis;
+        this.wheel = new ArrayList<Set<String>>(wheelSize);
+        for (int i = 0; i < wheelSize; i++) {
+            wheel.add(ConcurrentHashMap.<String>newKeySet());
+        }
+        this.sweptTick = System.currentTimeMillis() / tickMillis - 1;
+        this.logFile = StringUtils.isBlank(logFile) ? null : new File(logFile);
+        if (this.logFile != null) {
+            openLockFile();
+            // replays the log.
+            withLog(() -> null);
+        }
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(
+            new NamedThreadFactory("weid-challenge-sweeper"));
+        sweeper.scheduleAtFixedRate(this::sweep, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+        if (this.logFile != null && compactMillis > 0) {
+            sweeper.scheduleWithFixedDelay(
+                this::compact, compactMillis, compactMillis, TimeUnit.MILLISECONDS);
+        }
+        logger.info("challenge store init, ttlMillis={}, tickMillis={}, wheelSize={}, "
+            + "logFile={}, challenges={}", ttlMillis, tickMillis, wheelSize, logFile,
+            entries.size());
+    }
+
+    /**
+     * get the shared store of the process, configured by weid.challengeStore.*.
+     *
+     * @return returns the challenge store
+     */
+    public static ChallengeStore getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * store the challenge with the default time to live.
+     *
+     * @param challenge the challenge
+     */
+    public void put(Challenge challenge) {
+        put(challenge, ttlMillis);
+    }
+
+    /**
+     * store the challenge until it is consumed or expires.
+     *
+     * @param challenge the challenge
+     * @param ttlMillis the time to live of the challenge in milliseconds
+     */
+    public void put(Challenge challenge, long ttlMillis) {
+        if (challenge == null || StringUtils.isBlank(challenge.getNonce())) {
+            throw new BusinessException("the challenge has no nonce");
+        }
+        withLog(() -> {
+            long expireAt = System.currentTimeMillis() + ttlMillis;
+            Entry entry = new Entry(challenge, expireAt);
+            Entry old = entries.putIfAbsent(challenge.getNonce(), entry);
+            if (old != null && !old.isExpired(System.currentTimeMillis())) {
+                throw new BusinessException("the nonce is in use: " + challenge.getNonce());
+            }
+            if (old != null) {
+                entries.put(challenge.getNonce(), entry);
+            }
+            schedule(challenge.getNonce(), expireAt);
+            appendLog(
+                PUT + SEPARATOR + expireAt + SEPARATOR + DataToolUtils.serialize(challenge));
+            putCount.incrementAndGet();
+            return null;
+        });
+    }
+
+    /**
+     * take the challenge of the nonce out of the store, so it can be used only once.
+     *
+     * @param nonce the nonce
+     * @return returns the challenge, null if it is unknown, expired or already consumed
+     */
+    public Challenge consume(String nonce) {
+        return withLog(() -> {
+            Entry entry = nonce == null ? null : entries.remove(nonce);
+            if (entry == null || entry.isExpired(System.currentTimeMillis())) {
+                rejectCount.incrementAndGet();
+                logger.warn("the challenge is unknown, expired or already consumed, nonce={}",
+                    nonce);
+                return null;
+            }
+            appendLog(CONSUME + SEPARATOR + nonce);
+            consumeCount.incrementAndGet();
+            return entry.challenge;
+        });
+    }
+
+    /**
+     * get the challenge of the nonce without consuming it.
+     *
+     * @param nonce the nonce
+     * @return returns the challenge, null if it is unknown, expired or already consumed
+     */
+    public Challenge peek(String nonce) {
+        return withLog(() -> {
+            Entry entry = nonce == null ? null : entries.get(nonce);
+            if (entry == null || entry.isExpired(System.currentTimeMillis())) {
+                return null;
+            }
+            return entry.challenge;
+        });
+    }
+
+    /**
+     * get the number of the live challenges, the expired ones not swept yet included.
+     *
+     * @return returns the size
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * get the metrics of the store.
+     *
+     * @return returns the metrics
+     */
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<String, Object>();
+        metrics.put("size", entries.size());
+        metrics.put("putCount", putCount.get());
+        metrics.put("consumeCount", consumeCount.get());
+        metrics.put("rejectCount", rejectCount.get());
+        metrics.put("expireCount", expireCount.get());
+        metrics.put("logFile", logFile == null ? null : logFile.getPath());
+        synchronized (logLock) {
+            metrics.put("logRecords", logRecords);
+        }
+        metrics.put("compactCount", compactCount.get());
+        return metrics;
+    }
+
+    /**
+     * stop the sweeper and close the log.
+     */
+    public void close() {
+        sweeper.shutdownNow();
+        synchronized (logLock) {
+            closeLog();
+            if (lockChannel != null) {
+                try {
+                    lockChannel.close();
+                } catch (IOException e) {
+                    logger.error("close the challenge lock file error, logFile={}", logFile, e);
+                }
+                lockChannel = null;
+            }
+        }
+    }
+
+    private void schedule(String nonce, long expireAt) {
+        wheel.get(slot(expireAt / tickMillis)).add(nonce);
+    }
+
+    private int slot(long tick) {
+        return (int) (tick % wheel.size());
+    }
+
+    /**
+     * visit the slots of the ticks elapsed since the last sweep, a slot holds the nonces of
+     * later rounds as well, they stay until their own round comes.
+     */
+    void sweep() {
+        try {
+            long now = System.currentTimeMillis();
+            // a tick is swept once it is fully elapsed, so all its challenges are expired.
+            long lastTick = now / tickMillis - 1;
+            long firstTick = Math.max(sweptTick + 1, lastTick - wheel.size() + 1);
+            for (long tick = firstTick; tick <= lastTick; tick++) {
+                Set<String> nonces = wheel.get(slot(tick));
+                for (String nonce : nonces) {
+                    Entry entry = entries.get(nonce);
+                    if (entry == null) {
+                        nonces.remove(nonce);
+                    } else if (entry.isExpired(now)) {
+                        nonces.remove(nonce);
+                        if (entries.remove(nonce, entry)) {
+                            expireCount.incrementAndGet();
+                        }
+                    } else if (slot(entry.expireAt / tickMillis) != slot(tick)) {
+                        // the nonce was put again and lives in another slot now.
+                        nonces.remove(nonce);
+                    }
+                }
+            }
+            sweptTick = Math.max(sweptTick, lastTick);
+        } catch (Exception e) {
+            logger.error("sweep the challenges error", e);
+        }
+    }
+
+    /**
+     * rewrite the log with only the live challenges once the dead records outnumber them,
+     * the records of the other processes are read first, so none of them is lost.
+     */
+    void compact() {
+        if (logFile == null) {
+            return;
+        }
+        synchronized (logLock) {
+            if (lockChannel == null) {
+                return;
+            }
+            try (FileLock lock = lockChannel.lock()) {
+                catchUp();
+                long live = entries.size();
+                if (logRecords - live <= live) {
+                    return;
+                }
+                File compactFile = new File(logFile.getPath() + ".compact");
+                long now = System.currentTimeMillis();
+                long records = 0;
+                try (FileOutputStream output = new FileOutputStream(compactFile)) {
+                    Writer writer = new BufferedWriter(
+                        new OutputStreamWriter(output, StandardCharsets.UTF_8));
+                    for (Entry entry : entries.values()) {
+                        if (entry.isExpired(now)) {
+                            continue;
+                        }
+                        writer.write(PUT + SEPARATOR + entry.expireAt + SEPARATOR
+                            + DataToolUtils.serialize(entry.challenge) + "\n");
+                        records++;
+                    }
+                    writer.flush();
+                    output.getFD().sync();
+                }
+                Files.move(compactFile.toPath(), logFile.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                logger.info("compact the challenge log, logFile={}, records {} -> {}",
+                    logFile, logRecords, records);
+                closeLog();
+                openLog();
+                logPosition = logChannel.size();
+                logRecords = records;
+                compactCount.incrementAndGet();
+            } catch (IOException | RuntimeException e) {
+                logger.error("compact the challenge log error, logFile={}", logFile, e);
+            }
+        }
+    }
+
+    /**
+     * run the action holding the log, after reading the records appended by the other
+     * processes. without a log the action runs alone.
+     */
+    private <T> T withLog(Supplier<T> action) {
+        if (logFile == null) {
+            return action.get();
+        }
+        synchronized (logLock) {
+            if (lockChannel == null) {
+                throw new BusinessException("the challenge store is closed");
+            }
+            try (FileLock lock = lockChannel.lock()) {
+                catchUp();
+                return action.get();
+            } catch (IOException e) {
+                throw new BusinessException("read the challenge log failed: " + logFile, e);
+            }
+        }
+    }
+
+    /**
+     * read the records appended since the last read. when the log was replaced by the
+     * compaction of another process, the store is rebuilt from the new log.
+     */
+    private void catchUp() throws IOException {
+        BasicFileAttributes attributes = logFile.exists()
+            ? Files.readAttributes(logFile.toPath(), BasicFileAttributes.class) : null;
+        boolean replaced = attributes == null
+            || attributes.size() < logPosition
+            || (attributes.fileKey() != null && !attributes.fileKey().equals(logFileKey));
+        if (logChannel == null || replaced) {
+            closeLog();
+            openLog();
+            entries.clear();
+            logPosition = 0;
+            logRecords = 0;
+        }
+        readLog(logChannel.size());
+    }
+
+    /**
+     * apply the complete records up to the size, a torn last record, left by a process
+     * stopped while appending, is not read.
+     */
+    private void readLog(long size) throws IOException {
+        long now = System.currentTimeMillis();
+        ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        long position = logPosition;
+        while (position < size) {
+            buffer.clear();
+            int read = logChannel.read(buffer, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                byte value = buffer.get(i);
+                if (value != '\n') {
+                    line.write(value);
+                    continue;
+                }
+                apply(new String(line.toByteArray(), StandardCharsets.UTF_8), now);
+                line.reset();
+                logPosition = position + i + 1;
+            }
+            position += read;
+        }
+    }
+
+    /**
+     * apply one record of the log, a broken record is skipped.
+     */
+    private void apply(String line, long now) {
+        logRecords++;
+        String[] fields = line.split(SEPARATOR, 3);
+        try {
+            if (PUT.equals(fields[0]) && fields.length == 3) {
+                long expireAt = Long.parseLong(fields[1]);
+                Challenge challenge = DataToolUtils.deserialize(fields[2], Challenge.class);
+                if (expireAt > now) {
+                    entries.put(challenge.getNonce(), new Entry(challenge, expireAt));
+                    schedule(challenge.getNonce(), expireAt);
+                }
+            } else if (CONSUME.equals(fields[0]) && fields.length == 2) {
+                entries.remove(fields[1]);
+            } else {
+                logger.warn("skip the broken challenge record: {}", line);
+            }
+        } catch (Exception e) {
+            logger.warn("skip the broken challenge record: {}", line, e);
+        }
+    }
+
+    /**
+     * append the record, called holding the log after reading it.
+     */
+    private void appendLog(String record) {
+        if (logChannel == null) {
+            return;
+        }
+        try {
+            // whatever follows the last complete record is a torn record, end it so it
+            // is skipped rather than merged with this one.
+            long end = logChannel.size();
+            String data = end > logPosition ? "\n" + record + "\n" : record + "\n";
+            ByteBuffer buffer = ByteBuffer.wrap(data.getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                end += logChannel.write(buffer, end);
+            }
+            logPosition = end;
+            logRecords++;
+        } catch (IOException e) {
+            throw new BusinessException("append the challenge log failed: " + logFile, e);
+        }
+    }
+
+    private void openLockFile() {
+        File parent = logFile.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            logger.error("create the challenge log directory failed, dir={}", parent);
+        }
+        try {
+            lockChannel = FileChannel.open(
+                new File(logFile.getPath() + LOCK_SUFFIX).toPath(),
+                StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            throw new BusinessException("open the challenge lock file failed: " + logFile, e);
+        }
+    }
+
+    private void openLog() throws IOException {
+        logChannel = FileChannel.open(
+            logFile.toPath(),
+            StandardOpenOption.CREATE,
+            StandardOpenOption.READ,
+            StandardOpenOption.WRITE);
+        logFileKey =
+            Files.readAttributes(logFile.toPath(), BasicFileAttributes.class).fileKey();
+    }
+
+    private void closeLog() {
+        if (logChannel == null) {
+            return;
+        }
+        try {
+            logChannel.close();
+        } catch (IOException e) {
+            logger.error("close the challenge log error, logFile={}", logFile, e);
+        }
+        logChannel = null;
+    }
+
+    /**
+     * a stored challenge with its expiration time.
+     */
+    private static final class Entry {
+
+        private final Challenge challenge;
+
+        private final long expireAt;
+
+        private Entry(Challenge challenge, long expireAt) {
+            this.challenge = challenge;
+            this.expireAt = expireAt;
+        }
+
+        private boolean isExpired(long now) {
+            return now >= expireAt;
+        }
+    }
+
+    private static final class Holder {
+
+        private static final ChallengeStore INSTANCE = new ChallengeStore(
+            Long.parseLong(PropertiesUtils.getProperty("weid.challengeStore.ttlSeconds", "600"))
+                * 1000L,
+            Long.parseLong(
+                PropertiesUtils.getProperty("weid.challengeStore.wheelTickMillis", "1000")),
+            Integer.parseInt(
+                PropertiesUtils.getProperty("weid.challengeStore.wheelSize", "512")),
+            PropertiesUtils.getProperty("weid.challengeStore.logFile", ""),
+            Long.parseLong(
+                PropertiesUtils.getProperty("weid.challengeStore.compactSeconds", "60"))
+                * 1000L);
+    }
+}
@@ -0,0 +1,628 @@
+/*
+ *       Copyright© (2019) WeBank Co., Ltd.
+ *
+ *       This file is part of weidentity-sample.
+ *
+ *       weidentity-sample is free software: you can redistribute it and/or modify
+ *       it under the terms of the GNU Lesser General Public License as published by
+ *       the Free Software Foundation, either version 3 of the License, or
+ *       (at your option) any later version.
+ *
+ *       weidentity-sample is distributed in the hope that it will be useful,
+ *       but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *       MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *       GNU Lesser General Public License for more details.
+ *
+ *       You should have received a copy of the GNU Lesser General Public License
+ *       along with weidentity-sample.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.webank.weid.demo.common.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.github.fge.jsonschema.core.report.ProcessingMessage;
+import com.github.fge.jsonschema.core.report.ProcessingReport;
+import com.github.fge.jsonschema.main.JsonSchemaFactory;
+import com.github.fge.jsonschema.processors.syntax.SyntaxValidator;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.webank.weid.constant.ErrorCode;
+import com.webank.weid.demo.common.dto.BatchItem;
+import com.webank.weid.protocol.base.CptBaseInfo;
+import com.webank.weid.protocol.base.WeIdAuthentication;
+import com.webank.weid.protocol.request.CptMapArgs;
+import com.webank.weid.protocol.response.ResponseData;
+import com.webank.weid.rpc.CptService;
+import com.webank.weid.service.impl.CptServiceImpl;
+import com.webank.weid.util.DataToolUtils;
+
+/**
+ * registers CPTs in batch. the schemas are validated in parallel, then registered with a
+ * bounded number of transactions in flight. every registered schema is recorded in a
+ * manifest file, mapping its content hash to the cptId and the names it was submitted
+ * under, and a schema whose hash is already in the manifest is skipped, so a batch can
+ * simply be rerun.
+ *
+ * @author agent
+ */
+public class CptBatchRegistrar {
+
+    private static final Logger logger = LoggerFactory.getLogger(CptBatchRegistrar.class);
+
+    /**
+     * the name of the manifest written into a schema directory.
+     */
+    public static final String MANIFEST_FILE_NAME = "cpt-manifest.json";
+
+    private static final String JSON_SUFFIX = ".json";
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    /**
+     * serializes the maps with sorted keys, so the hash does not depend on the key order.
+     */
+    private static final ObjectMapper CANONICAL_MAPPER =
+        new ObjectMapper().configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true);
+
+    private static final SyntaxValidator SYNTAX_VALIDATOR =
+        JsonSchemaFactory.byDefault().getSyntaxValidator();
+
+    private final CptService cptService;
+
+    private final int maxCount;
+
+    private final int maxInFlight;
+
+    private final String manifestFile;
+
+    /**
+     * the content hash to the registered CPT, in registration order.
+     */
+    private final Map<String, ManifestEntry> manifest;
+
+    /**
+     * the content hashes being registered, a schema submitted again meanwhile, by the
+     * same or by a concurrent batch, waits for the registration instead of repeating it.
+     */
+    private final Map<String, CompletableFuture<Void>> inFlight =
+        new HashMap<String, CompletableFuture<Void>>();
+
+    /**
+     * constructor, loads the manifest when it exists.
+     *
+     * @param cptService the service registering CPTs on the chain
+     * @param maxCount the maximum number of schemas of one batch
+     * @param maxInFlight the maximum number of registrations at the same time
+     * @param manifestFile the path of the manifest file
+     */
+    public CptBatchRegistrar(
+        CptService cptService,
+        int maxCount,
+        int maxInFlight,
+        String manifestFile) {
+
+        this.cptService = cptService;
+        this.maxCount = maxCount;
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.manifestFile = manifestFile;
+        this.manifest = loadManifest(manifestFile);
+        logger.info("cpt batch registrar init, manifestFile={}, registered={}",
+            manifestFile, manifest.size());
+    }
+
+    /**
+     * get the shared registrar of the process, configured by weid.cptBatch.*.
+     *
+     * @return returns the cpt batch registrar
+     */
+    public static CptBatchRegistrar getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * create a registrar recording into the manifest of the schema directory.
+     *
+     * @param dir the schema directory
+     * @return returns the cpt batch registrar
+     */
+    public static CptBatchRegistrar forDirectory(String dir) {
+        return new CptBatchRegistrar(
+            new CptServiceImpl(),
+            Holder.MAX_COUNT,
+            Holder.MAX_IN_FLIGHT,
+            FileUtil.checkDir(dir) + MANIFEST_FILE_NAME);
+    }
+
+    /**
+     * read every JSON file of the directory as one schema named by its file name,
+     * the manifest is excluded.
+     *
+     * @param dir the schema directory
+     * @return returns the schemas, sorted by name
+     */
+    public static List<SchemaDocument> readDirectory(String dir) {
+        List<SchemaDocument> documents = new ArrayList<SchemaDocument>();
+        File[] files = new File(dir).listFiles();
+        if (null == files) {
+            logger.error("the schema directory does not exist, dir={}", dir);
+            return documents;
+        }
+        Arrays.sort(files);
+        for (File file : files) {
+            if (!file.isFile()
+                || !file.getName().endsWith(JSON_SUFFIX)
+                || file.getName().equals(MANIFEST_FILE_NAME)) {
+                continue;
+            }
+            documents.add(
+                new SchemaDocument(file.getName(), FileUtil.getDataByPath(file.getPath())));
+        }
+        return documents;
+    }
+
+    /**
+     * split a stream of JSON documents into schemas, the documents are concatenated,
+     * newline delimited or the elements of one JSON array. they are named by the source
+     * name and their position, such as request#0.
+     *
+     * @param sourceName the name of the stream
+     * @param content the JSON documents
+     * @return returns the schemas
+     * @throws IOException if the stream is not well-formed JSON
+     */
+    public static List<SchemaDocument> readStream(String sourceName, String content)
+        throws IOException {
+
+        List<SchemaDocument> documents = new ArrayList<SchemaDocument>();
+        if (StringUtils.isBlank(content)) {
+            return documents;
+        }
+        try (MappingIterator<JsonNode> iterator =
+            OBJECT_MAPPER.readerFor(JsonNode.class).readValues(content)) {
+            while (iterator.hasNextValue()) {
+                documents.add(new SchemaDocument(
+                    sourceName + "#" + documents.size(), iterator.nextValue().toString()));
+            }
+        }
+        return documents;
+    }
+
+    /**
+     * register the schemas, the result of every schema is passed to the consumer in
+     * completion order. a skipped schema succeeds with the CPT recorded in the manifest.
+     *
+     * @param weIdAuthentication the publisher of the CPTs
+     * @param documents the schemas
+     * @param consumer the consumer of the results
+     */
+    public void register(
+        WeIdAuthentication weIdAuthentication,
+        List<SchemaDocument> documents,
+        Consumer<BatchItem<CptBaseInfo>> consumer) {
+
+        if (null == documents || documents.isEmpty() || documents.size() > maxCount) {
+            logger.error("registCpts documents is illegal.");
+            consumer.accept(new BatchItem<CptBaseInfo>(
+                -1, null, new ResponseData<CptBaseInfo>(null, ErrorCode.ILLEGAL_INPUT)));
+            return;
+        }
+
+        // validating is pure CPU work, do it for all schemas before the first transaction.
+        List<PreparedSchema> preparedSchemas = IntStream.range(0, documents.size())
+            .parallel()
+            .mapToObj(index -> prepare(index, documents.get(index)))
+            .collect(Collectors.toList());
+
+        // classify under the lock, the results are emitted outside of it, the consumer may
+        // write to a slow client.
+        List<BatchItem<CptBaseInfo>> completed = new ArrayList<BatchItem<CptBaseInfo>>();
+        List<PreparedSchema> pending = new ArrayList<PreparedSchema>();
+        List<PreparedSchema> duplicates = new ArrayList<PreparedSchema>();
+        synchronized (this) {
+            for (PreparedSchema prepared : preparedSchemas) {
+                if (null != prepared.error) {
+                    completed.add(
+                        new BatchItem<CptBaseInfo>(prepared.index, prepared.name, prepared.error));
+                } else if (null != manifest.get(prepared.hash)) {
+                    completed.add(skip(prepared));
+                } else if (inFlight.containsKey(prepared.hash)) {
+                    prepared.claim = inFlight.get(prepared.hash);
+                    duplicates.add(prepared);
+                } else {
+                    prepared.claim = new CompletableFuture<Void>();
+                    inFlight.put(prepared.hash, prepared.claim);
+                    pending.add(prepared);
+                }
+            }
+        }
+        for (BatchItem<CptBaseInfo> item : completed) {
+            consumer.accept(item);
+        }
+        try {
+            registerPending(weIdAuthentication, pending, consumer);
+        } finally {
+            // the schemas never started are released too, so no duplicate waits forever.
+            for (PreparedSchema prepared : pending) {
+                release(prepared);
+            }
+        }
+
+        // the same schema is being registered elsewhere, it is registered once.
+        for (PreparedSchema duplicate : duplicates) {
+            consumer.accept(awaitDuplicate(duplicate));
+        }
+    }
+
+    private BatchItem<CptBaseInfo> awaitDuplicate(PreparedSchema duplicate) {
+        try {
+            duplicate.claim.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.error("registCpts interrupted, name={}", duplicate.name);
+            return new BatchItem<CptBaseInfo>(duplicate.index, duplicate.name,
+                new ResponseData<CptBaseInfo>(null, ErrorCode.UNKNOW_ERROR));
+        } catch (ExecutionException e) {
+            // the claims are only completed normally.
+            logger.error("registCpts error", e.getCause());
+        }
+        synchronized (this) {
+            if (null != manifest.get(duplicate.hash)) {
+                return skip(duplicate);
+            }
+        }
+        return new BatchItem<CptBaseInfo>(
+            duplicate.index,
+            duplicate.name,
+            new ResponseData<CptBaseInfo>(null, ErrorCode.UNKNOW_ERROR.getCode(),
+                "the same schema submitted before failed to register."));
+    }
+
+    private synchronized void release(PreparedSchema prepared) {
+        if (inFlight.remove(prepared.hash, prepared.claim)) {
+            prepared.claim.complete(null);
+        }
+    }
+
+    /**
+     * get a copy of the manifest.
+     *
+     * @return returns the content hash to the registered CPT
+     */
+    public synchronized Map<String, ManifestEntry> getManifest() {
+        return new LinkedHashMap<String, ManifestEntry>(manifest);
+    }
+
+    private void registerPending(
+        WeIdAuthentication weIdAuthentication,
+        List<PreparedSchema> pending,
+        Consumer<BatchItem<CptBaseInfo>> consumer) {
+
+        if (pending.isEmpty()) {
+            return;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(
+            Math.min(maxInFlight, pending.size()),
+            new NamedThreadFactory("weid-cpt-register"));
+        CompletionService<BatchItem<CptBaseInfo>> completionService =
+            new ExecutorCompletionService<BatchItem<CptBaseInfo>>(executor);
+        List<Future<BatchItem<CptBaseInfo>>> futures =
+            new ArrayList<Future<BatchItem<CptBaseInfo>>>();
+        try {
+            // the pool size bounds the transactions in flight.
+            for (PreparedSchema prepared : pending) {
+                futures.add(
+                    completionService.submit(() -> registerOne(weIdAuthentication, prepared)));
+            }
+            for (int completed = 0; completed < pending.size(); completed++) {
+                consumer.accept(completionService.take().get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.error("registCpts interrupted.");
+        } catch (ExecutionException e) {
+            // registerOne converts the exceptions to error responses.
+            logger.error("registCpts error", e.getCause());
+        } finally {
+            for (Future<BatchItem<CptBaseInfo>> future : futures) {
+                future.cancel(false);
+            }
+            executor.shutdown();
+            // the registrations in flight still record their CPTs into the manifest.
+            awaitQuietly(executor);
+        }
+    }
+
+    private static void awaitQuietly(ExecutorService executor) {
+        boolean interrupted = false;
+        while (!executor.isTerminated()) {
+            try {
+                executor.awaitTermination(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private BatchItem<CptBaseInfo> registerOne(
+        WeIdAuthentication weIdAuthentication,
+        PreparedSchema prepared) {
+
+        ResponseData<CptBaseInfo> response;
+        try {
+            CptMapArgs cptMapArgs = new CptMapArgs();
+            cptMapArgs.setWeIdAuthentication(weIdAuthentication);
+            cptMapArgs.setCptJsonSchema(prepared.schema);
+            response = cptService.registerCpt(cptMapArgs);
+            logger.info("registerCpt is result,name:{},errorCode:{},errorMessage:{}",
+                prepared.name, response.getErrorCode(), response.getErrorMessage());
+            if (response.getErrorCode().intValue() == ErrorCode.SUCCESS.getCode()
+                && null != response.getResult()) {
+                record(prepared, response.getResult());
+                // the schema stored on the chain is loaded on the next validation.
+                CptSchemaCache.getInstance().invalidate(response.getResult().getCptId());
+            }
+        } catch (Exception e) {
+            logger.error("registerOne error, name={}", prepared.name, e);
+            response = new ResponseData<CptBaseInfo>(null, ErrorCode.UNKNOW_ERROR);
+        } finally {
+            release(prepared);
+        }
+        return new BatchItem<CptBaseInfo>(prepared.index, prepared.name, response);
+    }
+
+    /**
+     * parse and validate one schema and hash its canonical form.
+     */
+    private PreparedSchema prepare(int index, SchemaDocument document) {
+        PreparedSchema prepared = new PreparedSchema(index, document.getName());
+        try {
+            JsonNode node = StringUtils.isBlank(document.getContent())
+                ? null : OBJECT_MAPPER.readTree(document.getContent());
+            if (null == node || !node.isObject()) {
+                prepared.error = new ResponseData<CptBaseInfo>(null,
+                    ErrorCode.CPT_JSON_SCHEMA_INVALID.getCode(), "the schema is not an object.");
+                return prepared;
+            }
+            ProcessingReport report = SYNTAX_VALIDATOR.validateSchema(node);
+            if (!report.isSuccess()) {
+                prepared.error = new ResponseData<CptBaseInfo>(null,
+                    ErrorCode.CPT_JSON_SCHEMA_INVALID.getCode(), firstMessage(report));
+                return prepared;
+            }
+            prepared.schema = OBJECT_MAPPER.convertValue(
+                node, new TypeReference<LinkedHashMap<String, Object>>() { });
+            prepared.hash =
+                DataToolUtils.sha3(CANONICAL_MAPPER.writeValueAsString(prepared.schema));
+        } catch (IOException | IllegalArgumentException e) {
+            logger.error("prepare schema error, name={}", document.getName(), e);
+            prepared.error = new ResponseData<CptBaseInfo>(null,
+                ErrorCode.CPT_JSON_SCHEMA_INVALID.getCode(), "the schema is not valid JSON.");
+        }
+        return prepared;
+    }
+
+    private static String firstMessage(ProcessingReport report) {
+        Iterator<ProcessingMessage> messages = report.iterator();
+        return messages.hasNext()
+            ? messages.next().getMessage() : ErrorCode.CPT_JSON_SCHEMA_INVALID.getCodeDesc();
+    }
+
+    private synchronized BatchItem<CptBaseInfo> skip(PreparedSchema prepared) {
+        ManifestEntry registered = manifest.get(prepared.hash);
+        if (!registered.getNames().contains(prepared.name)) {
+            record(prepared, registered.toCptBaseInfo());
+        }
+        return new BatchItem<CptBaseInfo>(
+            prepared.index,
+            prepared.name,
+            new ResponseData<CptBaseInfo>(registered.toCptBaseInfo(),
+                ErrorCode.SUCCESS.getCode(), "already registered, skipped."));
+    }
+
+    /**
+     * record the CPT of the schema and rewrite the manifest, a schema submitted under
+     * another name adds the name to the entry of its hash.
+     */
+    private synchronized void record(PreparedSchema prepared, CptBaseInfo cptBaseInfo) {
+        ManifestEntry entry = manifest.get(prepared.hash);
+        if (null == entry) {
+            entry = new ManifestEntry();
+            entry.setHash(prepared.hash);
+            entry.setCptId(cptBaseInfo.getCptId());
+            entry.setCptVersion(cptBaseInfo.getCptVersion());
+            manifest.put(prepared.hash, entry);
+        }
+        if (!entry.getNames().contains(prepared.name)) {
+            entry.getNames().add(prepared.name);
+        }
+        try {
+            FileUtil.saveFile(
+                manifestFile,
+                OBJECT_MAPPER.writerWithDefaultPrettyPrinter().writeValueAsString(manifest));
+        } catch (IOException e) {
+            logger.error("save cpt manifest error, manifestFile={}", manifestFile, e);
+        }
+    }
+
+    private static Map<String, ManifestEntry> loadManifest(String manifestFile) {
+        if (!new File(manifestFile).exists()) {
+            return new LinkedHashMap<String, ManifestEntry>();
+        }
+        String content = FileUtil.getDataByPath(manifestFile);
+        if (StringUtils.isBlank(content)) {
+            return new LinkedHashMap<String, ManifestEntry>();
+        }
+        try {
+            Map<String, ManifestEntry> entries = new LinkedHashMap<String, ManifestEntry>();
+            for (ManifestEntry entry : OBJECT_MAPPER.readValue(
+                content, new TypeReference<LinkedHashMap<String, ManifestEntry>>() { }).values()) {
+                // keyed by the hash, whatever the keys of the file are.
+                entries.put(entry.getHash(), entry);
+            }
+            return entries;
+        } catch (IOException e) {
+            // never overwrite a manifest we can not read.
+            throw new IllegalStateException("load cpt manifest failed: " + manifestFile, e);
+        }
+    }
+
+    /**
+     * one schema of a batch, with its name.
+     */
+    public static class SchemaDocument {
+
+        private final String name;
+
+        private final String content;
+
+        /**
+         * constructor.
+         *
+         * @param name the name of the schema, such as the file name
+         * @param content the JSON schema
+         */
+        public SchemaDocument(String name, String content) {
+            this.name = name;
+            this.content = content;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getContent() {
+            return content;
+        }
+    }
+
+    /**
+     * the CPT registered for one schema.
+     */
+    public static class ManifestEntry {
+
+        /**
+         * the names the schema was submitted under, such as file names or request#0.
+         */
+        private List<String> names = new ArrayList<String>();
+
+        /**
+         * the sha3 of the schema serialized with sorted keys.
+         */
+        private String hash;
+
+        private Integer cptId;
+
+        private Integer cptVersion;
+
+        public List<String> getNames() {
+            return names;
+        }
+
+        public void setNames(List<String> names) {
+            this.names = null == names ? new ArrayList<String>() : names;
+        }
+
+        public String getHash() {
+            return hash;
+        }
+
+        public void setHash(String hash) {
+            this.hash = hash;
+        }
+
+        public Integer getCptId() {
+            return cptId;
+        }
+
+        public void setCptId(Integer cptId) {
+            this.cptId = cptId;
+        }
+
+        public Integer getCptVersion() {
+            return cptVersion;
+        }
+
+        public void setCptVersion(Integer cptVersion) {
+            this.cptVersion = cptVersion;
+        }
+
+        private CptBaseInfo toCptBaseInfo() {
+            CptBaseInfo cptBaseInfo = new CptBaseInfo();
+            cptBaseInfo.setCptId(cptId);
+            cptBaseInfo.setCptVersion(cptVersion);
+            return cptBaseInfo;
+        }
+    }
+
+    /**
+     * a validated schema waiting for registration, or the error of an invalid one.
+     */
+    private static final class PreparedSchema {
+
+        private final int index;
+
+        private final String name;
+
+        private Map<String, Object> schema;
+
+        private String hash;
+
+        private ResponseData<CptBaseInfo> error;
+
+        /**
+         * completed when the registration of the hash ends, guarded by the registrar.
+         */
+        private CompletableFuture<Void> claim;
+
+        private PreparedSchema(int index, String name) {
+            this.index = index;
+            this.name = name;
+        }
+    }
+
+    private static final class Holder {
+
+        private static final int MAX_COUNT =
+            Integer.parseInt(PropertiesUtils.getProperty("weid.cptBatch.maxCount", "1000"));
+
+        private static final int MAX_IN_FLIGHT =
+            Integer.parseInt(PropertiesUtils.getProperty("weid.cptBatch.maxInFlight", "8"));
+
+        private static final CptBatchRegistrar INSTANCE = new CptBatchRegistrar(
+            new CptServiceImpl(),
+            MAX_COUNT,
+            MAX_IN_FLIGHT,
+            PropertiesUtils.getProperty(
+                "weid.cptBatch.manifestFile", "./claim/" + MANIFEST_FILE_NAME));
+    }
+}
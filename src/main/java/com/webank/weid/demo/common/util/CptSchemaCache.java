@@ -0,0 +1,269 @@
+/*
+ *       Copyright© (2019) WeBank Co., Ltd.
+ *
+ *       This file is part of weidentity-sample.
+ *
+ *       weidentity-sample is free software: you can redistribute it and/or modify
+ *       it under the terms of the GNU Lesser General Public License as published by
+ *       the Free Software Foundation, either version 3 of the License, or
+ *       (at your option) any later version.
+ *
+ *       weidentity-sample is distributed in the hope that it will be useful,
+ *       but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *       MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *       GNU Lesser General Public License for more details.
+ *
+ *       You should have received a copy of the GNU Lesser General Public License
+ *       along with weidentity-sample.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.webank.weid.demo.common.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.fge.jsonschema.core.exceptions.ProcessingException;
+import com.github.fge.jsonschema.core.report.ProcessingReport;
+import com.github.fge.jsonschema.main.JsonSchema;
+import com.github.fge.jsonschema.main.JsonSchemaFactory;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.webank.weid.constant.ErrorCode;
+import com.webank.weid.protocol.base.Cpt;
+import com.webank.weid.protocol.response.ResponseData;
+import com.webank.weid.rpc.CptService;
+import com.webank.weid.service.impl.CptServiceImpl;
+
+/**
+ * cache of the compiled JSON schemas of the CPTs, used to check a claim locally before
+ * the credential is signed, so an invalid claim fails without a chain call. a schema is
+ * compiled when it is looked up from the chain on first use.
+ *
+ * <p>the local check only rejects, a claim passing it is still checked by the SDK. when
+ * the schema can not be loaded the check is skipped and the SDK decides.
+ *
+ * <p>a CPT that does not exist, or whose schema does not compile, is remembered for a
+ * short time, so a bogus cptId does not reach the chain on every claim.
+ *
+ * @author agent
+ */
+public class CptSchemaCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(CptSchemaCache.class);
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private final CptService cptService;
+
+    private final JsonSchemaFactory schemaFactory = JsonSchemaFactory.byDefault();
+
+    private final TtlCache<Integer, JsonSchema> cache;
+
+    /**
+     * the result of the CPTs without a usable schema, CPT_NOT_EXISTS, or SUCCESS when the
+     * schema does not compile and the check is skipped.
+     */
+    private final TtlCache<Integer, ErrorCode> negativeCache;
+
+    private final AtomicLong loadCount = new AtomicLong();
+
+    private final AtomicLong rejectCount = new AtomicLong();
+
+    /**
+     * constructor.
+     *
+     * @param cptService the service querying CPTs from the chain
+     * @param maxSize the maximum number of schemas, 0 disables the cache
+     * @param ttlMillis the time to live of a schema in milliseconds, 0 means never expire
+     * @param negativeTtlMillis the time to remember a CPT without a usable schema,
+     *     0 disables
+     */
+    public CptSchemaCache(
+        CptService cptService,
+        int maxSize,
+        long ttlMillis,
+        long negativeTtlMillis) {
+
+        this.cptService = cptService;
+        this.cache = new TtlCache<Integer, JsonSchema>(maxSize, ttlMillis);
+        this.negativeCache = new TtlCache<Integer, ErrorCode>(
+            negativeTtlMillis > 0 ? maxSize : 0, negativeTtlMillis);
+        logger.info("cpt schema cache init, maxSize={}, ttlMillis={}, negativeTtlMillis={}",
+            maxSize, ttlMillis, negativeTtlMillis);
+    }
+
+    /**
+     * get the shared cache of the process, configured by weid.cptCache.*.
+     *
+     * @return returns the cpt schema cache
+     */
+    public static CptSchemaCache getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * compile and cache the schema of a CPT loaded from the chain, a schema failing to
+     * compile is remembered in the negative cache.
+     */
+    private void put(Integer cptId, Map<String, Object> jsonSchema) {
+        JsonSchema schema = compile(cptId, jsonSchema);
+        if (schema != null) {
+            cache.put(cptId, schema);
+        } else if (cptId != null) {
+            negativeCache.put(cptId, ErrorCode.SUCCESS);
+        }
+    }
+
+    /**
+     * check the claim against the schema of the CPT.
+     *
+     * @param cptId the cptId
+     * @param claim the claim data
+     * @return returns SUCCESS when the claim is valid or the schema is unavailable,
+     *     CPT_NOT_EXISTS or CREDENTIAL_CLAIM_DATA_ILLEGAL otherwise
+     */
+    public ErrorCode validateClaim(Integer cptId, Map<String, Object> claim) {
+        JsonSchema schema = cache.get(cptId);
+        if (schema == null) {
+            ErrorCode known = negativeCache.get(cptId);
+            if (known != null) {
+                if (known != ErrorCode.SUCCESS) {
+                    rejectCount.incrementAndGet();
+                }
+                return known;
+            }
+            ResponseData<Cpt> response = load(cptId);
+            if (response.getErrorCode().intValue() == ErrorCode.CPT_NOT_EXISTS.getCode()) {
+                rejectCount.incrementAndGet();
+                return ErrorCode.CPT_NOT_EXISTS;
+            }
+            schema = cache.get(cptId);
+            if (schema == null) {
+                return ErrorCode.SUCCESS;
+            }
+        }
+        try {
+            JsonNode claimNode = OBJECT_MAPPER.valueToTree(claim);
+            ProcessingReport report = schema.validate(claimNode);
+            if (!report.isSuccess()) {
+                rejectCount.incrementAndGet();
+                logger.info("claim does not match the cpt schema, cptId={}, report={}",
+                    cptId, report);
+                return ErrorCode.CREDENTIAL_CLAIM_DATA_ILLEGAL;
+            }
+            return ErrorCode.SUCCESS;
+        } catch (IllegalArgumentException | ProcessingException e) {
+            logger.warn("validate claim error, skip the local check, cptId={}", cptId, e);
+            return ErrorCode.SUCCESS;
+        }
+    }
+
+    /**
+     * load the schemas of the CPTs into the cache, the CPTs failed to load are skipped.
+     *
+     * @param cptIds the cptIds
+     * @return returns the number of loaded schemas
+     */
+    public int warmup(List<Integer> cptIds) {
+        int count = 0;
+        for (Integer cptId : cptIds) {
+            try {
+                load(cptId);
+                if (cache.containsKey(cptId)) {
+                    count++;
+                }
+            } catch (Exception e) {
+                logger.error("warmup cpt schema error, cptId={}", cptId, e);
+            }
+        }
+        logger.info("warmup cpt schema finish, cptIds={}, loaded={}", cptIds, count);
+        return count;
+    }
+
+    /**
+     * drop the schema of the CPT, such as after the CPT is updated.
+     *
+     * @param cptId the cptId
+     */
+    public void invalidate(Integer cptId) {
+        cache.remove(cptId);
+        negativeCache.remove(cptId);
+    }
+
+    /**
+     * get the metrics of the cache, including chain loads and rejected claims.
+     *
+     * @return returns the metrics
+     */
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = cache.getMetrics();
+        metrics.put("loadCount", loadCount.get());
+        metrics.put("rejectCount", rejectCount.get());
+        metrics.put("negative", negativeCache.getMetrics());
+        return metrics;
+    }
+
+    /**
+     * parse the comma separated cptIds of weid.cptCache.warmupCptIds.
+     *
+     * @return returns the cptIds to warm up
+     */
+    public static List<Integer> getWarmupCptIds() {
+        List<Integer> cptIds = new ArrayList<Integer>();
+        String value = PropertiesUtils.getProperty("weid.cptCache.warmupCptIds", "");
+        for (String cptId : StringUtils.split(value, ',')) {
+            if (StringUtils.isNotBlank(cptId)) {
+                cptIds.add(Integer.valueOf(cptId.trim()));
+            }
+        }
+        return cptIds;
+    }
+
+    /**
+     * query the CPT from the chain and cache its compiled schema.
+     */
+    private ResponseData<Cpt> load(Integer cptId) {
+        loadCount.incrementAndGet();
+        ResponseData<Cpt> response = cptService.queryCpt(cptId);
+        if (response.getErrorCode().intValue() == ErrorCode.SUCCESS.getCode()
+            && null != response.getResult()) {
+            put(cptId, response.getResult().getCptJsonSchema());
+        } else if (response.getErrorCode().intValue() == ErrorCode.CPT_NOT_EXISTS.getCode()) {
+            negativeCache.put(cptId, ErrorCode.CPT_NOT_EXISTS);
+        } else {
+            logger.warn("query cpt failed, cptId={}, errorCode={}, errorMessage={}",
+                cptId, response.getErrorCode(), response.getErrorMessage());
+        }
+        return response;
+    }
+
+    private JsonSchema compile(Integer cptId, Map<String, Object> jsonSchema) {
+        if (cptId == null || jsonSchema == null) {
+            return null;
+        }
+        try {
+            JsonNode schemaNode = OBJECT_MAPPER.valueToTree(jsonSchema);
+            return schemaFactory.getJsonSchema(schemaNode);
+        } catch (IllegalArgumentException | ProcessingException e) {
+            logger.error("compile cpt schema error, cptId={}", cptId, e);
+            return null;
+        }
+    }
+
+    private static final class Holder {
+
+        private static final CptSchemaCache INSTANCE = new CptSchemaCache(
+            new CptServiceImpl(),
+            Integer.parseInt(PropertiesUtils.getProperty("weid.cptCache.maxSize", "1000")),
+            Long.parseLong(PropertiesUtils.getProperty("weid.cptCache.ttlSeconds", "3600"))
+                * 1000L,
+            Long.parseLong(PropertiesUtils.getProperty("weid.cptCache.negativeTtlSeconds", "10"))
+                * 1000L);
+    }
+}
@@ -20,12 +20,17 @@
 package com.webank.weid.demo.common.util;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
@@ -46,6 +51,30 @@ public class FileUtil {
      */
     private static final String SLASH_CHARACTER = "/";
 
+    /**
+     * the suffix of temporary files, renamed into place after written.
+     */
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /**
+     * the hidden sub directory holding the temporary files, it is on the same file system
+     * as the target so the rename stays atomic, and keeps them out of directory listings
+     * such as the key directory.
+     */
+    private static final String TEMP_DIR_NAME = ".tmp";
+
+    /**
+     * coalesces the fsyncs of concurrent writes, null if group commit is disabled.
+     */
+    private static final GroupCommitWriter GROUP_COMMIT_WRITER =
+        Boolean.parseBoolean(PropertiesUtils.getProperty("file.groupCommit.enable", "false"))
+            ? new GroupCommitWriter(
+                Long.parseLong(
+                    PropertiesUtils.getProperty("file.groupCommit.intervalMillis", "10")),
+                Long.parseLong(
+                    PropertiesUtils.getProperty("file.groupCommit.timeoutMillis", "30000")))
+            : null;
+
     /**
      * check the path is exists, create and return the path if it does not exist.
      * @param path the path
@@ -80,33 +109,33 @@ public class FileUtil {
     public static String getDataByPath(String path) {
 
         logger.info("get data form [{}]", path);
-        FileInputStream fis = null;
-        String str = null;
-        try {
-            fis = new FileInputStream(path);
-            byte[] buff = new byte[fis.available()];
-            int size = fis.read(buff);
-            if (size > 0) {
-                str = new String(buff, StandardCharsets.UTF_8);
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            // read exactly the size of the file.
+            long size = channel.size();
+            if (size <= 0) {
+                return null;
             }
-        } catch (FileNotFoundException e) {
-            logger.error("getDataByPath error", e);
+            if (size > Integer.MAX_VALUE) {
+                logger.error("getDataByPath error, file too large, size={}", size);
+                return null;
+            }
+            ByteBuffer buff = ByteBuffer.allocate((int) size);
+            while (buff.hasRemaining() && channel.read(buff) >= 0) {
+                continue;
+            }
+            return new String(buff.array(), 0, buff.position(), StandardCharsets.UTF_8);
+        } catch (NoSuchFileException e) {
+            logger.error("getDataByPath error, file not found: {}", path);
         } catch (IOException e) {
             logger.error("getDataByPath error", e);
-        } finally {
-            if (null != fis) {
-                try {
-                    fis.close();
-                } catch (IOException e) {
-                    logger.error("getDataByPath error", e);
-                }
-            }
         }
-        return str;
+        return null;
     }
 
     /**
-     * save data in a specified file.
+     * save data in a specified file. the data is written to a temporary file first and
+     * renamed into place, so readers never see a partial file. with group commit enabled
+     * the call returns after the data is durable.
      * 
      * @param filePath save file path
      * @param dataStr save data
@@ -115,23 +144,86 @@ public class FileUtil {
     public static String saveFile(String filePath, String dataStr) {
 
         logger.info("save data in to [{}]", filePath);
-        OutputStreamWriter ow = null;
+        Path path = Paths.get(filePath);
+        byte[] data = dataStr.getBytes(StandardCharsets.UTF_8);
         try {
-            File file = new File(filePath);
-            ow = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8);
-            ow.write(dataStr);
-            return file.getAbsolutePath();
-        } catch (IOException e) {
-            logger.error("writer file exception", e);
-        } finally {
-            if (null != ow) {
-                try {
-                    ow.close();
+            if (null != GROUP_COMMIT_WRITER) {
+                GROUP_COMMIT_WRITER.write(path, data);
+            } else {
+                Path tempFile = tempFileOf(path);
+                try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                    writeFully(channel, ByteBuffer.wrap(data));
                 } catch (IOException e) {
-                    logger.error("io close exception", e);
+                    Files.deleteIfExists(tempFile);
+                    throw e;
                 }
+                moveAtomically(tempFile, path);
             }
+            return path.toAbsolutePath().toString();
+        } catch (IOException e) {
+            logger.error("writer file exception", e);
         }
         return StringUtils.EMPTY;
     }
+
+    /**
+     * create a temporary file in the hidden temporary directory next to the path.
+     *
+     * @param path the target path
+     * @return returns the temporary file
+     * @throws IOException if the temporary file can not be created
+     */
+    static Path tempFileOf(Path path) throws IOException {
+        Path dir = Files.createDirectories(
+            path.toAbsolutePath().getParent().resolve(TEMP_DIR_NAME));
+        return Files.createTempFile(dir, path.getFileName().toString(), TEMP_SUFFIX);
+    }
+
+    /**
+     * write all remaining bytes of the buffer into the channel.
+     *
+     * @param channel the channel
+     * @param buffer the buffer
+     * @throws IOException if the write fails
+     */
+    static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * rename the source onto the target, replacing the target.
+     *
+     * @param source the source
+     * @param target the target
+     * @throws IOException if the rename fails
+     */
+    static void moveAtomically(Path source, Path target) throws IOException {
+        try {
+            try {
+                Files.move(source, target,
+                    StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(source);
+            throw e;
+        }
+    }
+
+    /**
+     * force the directory entries to disk, ignored where directories can not be opened.
+     *
+     * @param dir the directory
+     */
+    static void forceDirectory(Path dir) {
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            logger.debug("force directory is not supported, dir={}", dir);
+        }
+    }
 }
@@ -0,0 +1,201 @@
+/*
+ *       Copyright© (2019) WeBank Co., Ltd.
+ *
+ *       This file is part of weidentity-sample.
+ *
+ *       weidentity-sample is free software: you can redistribute it and/or modify
+ *       it under the terms of the GNU Lesser General Public License as published by
+ *       the Free Software Foundation, either version 3 of the License, or
+ *       (at your option) any later version.
+ *
+ *       weidentity-sample is distributed in the hope that it will be useful,
+ *       but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *       MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *       GNU Lesser General Public License for more details.
+ *
+ *       You should have received a copy of the GNU Lesser General Public License
+ *       along with weidentity-sample.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.webank.weid.demo.common.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * durable file writer that commits the writes of concurrent callers as one group.
+ * a background thread wakes up every interval, writes every pending file to a temporary
+ * file, forces them, renames them into place and forces each parent directory once.
+ * callers block until the group holding their write is durable, at most for the timeout.
+ * writes to the same path within one interval are coalesced, the last one wins. a group
+ * that fails, for whatever reason, fails its callers and the thread goes on with the next.
+ *
+ * @author agent
+ */
+public class GroupCommitWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(GroupCommitWriter.class);
+
+    /**
+     * the interval between two group commits in milliseconds.
+     */
+    private final long intervalMillis;
+
+    /**
+     * the maximum time a caller waits for its group in milliseconds.
+     */
+    private final long timeoutMillis;
+
+    /**
+     * the pending writes of the current group, path to data.
+     */
+    private Map<Path, byte[]> pending = new LinkedHashMap<Path, byte[]>();
+
+    /**
+     * released when the current group is committed.
+     */
+    private Group currentGroup = new Group();
+
+    /**
+     * constructor, starts the commit thread.
+     *
+     * @param intervalMillis the interval between two group commits in milliseconds
+     * @param timeoutMillis the maximum time a caller waits for its group in milliseconds
+     */
+    public GroupCommitWriter(long intervalMillis, long timeoutMillis) {
+        this.intervalMillis = Math.max(1L, intervalMillis);
+        this.timeoutMillis = Math.max(1L, timeoutMillis);
+        Thread thread = new Thread(this::run, "group-commit-writer");
+        thread.setDaemon(true);
+        thread.start();
+        logger.info("group commit writer start, intervalMillis={}, timeoutMillis={}",
+            this.intervalMillis, this.timeoutMillis);
+    }
+
+    /**
+     * write the data into the file, returns after the data is durable.
+     *
+     * @param path the file path
+     * @param data the data
+     * @throws IOException if the group holding the write failed or timed out
+     */
+    public void write(Path path, byte[] data) throws IOException {
+        Group group;
+        synchronized (this) {
+            pending.put(path, data);
+            group = currentGroup;
+        }
+        try {
+            if (!group.done.await(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new IOException("group commit timed out after " + timeoutMillis
+                    + "ms, path=" + path);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while waiting for group commit", e);
+        }
+        if (null != group.error) {
+            throw group.error;
+        }
+    }
+
+    private void run() {
+        while (true) {
+            try {
+                TimeUnit.MILLISECONDS.sleep(intervalMillis);
+            } catch (InterruptedException e) {
+                logger.warn("group commit writer interrupted");
+                return;
+            }
+            Map<Path, byte[]> writes;
+            Group group;
+            synchronized (this) {
+                if (pending.isEmpty()) {
+                    continue;
+                }
+                writes = pending;
+                group = currentGroup;
+                pending = new LinkedHashMap<Path, byte[]>();
+                currentGroup = new Group();
+            }
+            try {
+                commit(writes);
+            } catch (IOException e) {
+                logger.error("group commit error, files={}", writes.size(), e);
+                group.error = e;
+            } catch (RuntimeException | Error e) {
+                // fail this group only, the thread keeps serving the next ones.
+                logger.error("group commit error, files={}", writes.size(), e);
+                group.error = new IOException("group commit failed", e);
+            } finally {
+                group.done.countDown();
+            }
+        }
+    }
+
+    private void commit(Map<Path, byte[]> writes) throws IOException {
+        List<Path> tempFiles = new ArrayList<Path>(writes.size());
+        Set<Path> parents = new LinkedHashSet<Path>();
+        try {
+            for (Map.Entry<Path, byte[]> entry : writes.entrySet()) {
+                Path tempFile = FileUtil.tempFileOf(entry.getKey());
+                tempFiles.add(tempFile);
+                try (FileChannel channel = FileChannel.open(tempFile,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    FileUtil.writeFully(channel, ByteBuffer.wrap(entry.getValue()));
+                    channel.force(true);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            for (Path tempFile : tempFiles) {
+                Files.deleteIfExists(tempFile);
+            }
+            throw e;
+        }
+        int moved = 0;
+        try {
+            for (Path path : writes.keySet()) {
+                FileUtil.moveAtomically(tempFiles.get(moved), path);
+                moved++;
+                Path parent = path.toAbsolutePath().getParent();
+                if (null != parent) {
+                    parents.add(parent);
+                }
+            }
+        } finally {
+            // delete the temporary files not moved into place, the failed one included.
+            for (Path tempFile : tempFiles.subList(moved, tempFiles.size())) {
+                Files.deleteIfExists(tempFile);
+            }
+        }
+        for (Path parent : parents) {
+            FileUtil.forceDirectory(parent);
+        }
+        logger.debug("group commit finish, files={}, dirs={}", writes.size(), parents.size());
+    }
+
+    /**
+     * the completion of one group.
+     */
+    private static final class Group {
+
+        private final CountDownLatch done = new CountDownLatch(1);
+
+        private volatile IOException error;
+    }
+}
@@ -0,0 +1,370 @@
+/*
+ *       Copyright© (2019) WeBank Co., Ltd.
+ *
+ *       This file is part of weidentity-sample.
+ *
+ *       weidentity-sample is free software: you can redistribute it and/or modify
+ *       it under the terms of the GNU Lesser General Public License as published by
+ *       the Free Software Foundation, either version 3 of the License, or
+ *       (at your option) any later version.
+ *
+ *       weidentity-sample is distributed in the hope that it will be useful,
+ *       but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *       MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *       GNU Lesser General Public License for more details.
+ *
+ *       You should have received a copy of the GNU Lesser General Public License
+ *       along with weidentity-sample.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.webank.weid.demo.common.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.webank.weid.constant.ErrorCode;
+import com.webank.weid.protocol.base.AuthorityIssuer;
+import com.webank.weid.protocol.base.WeIdDocument;
+import com.webank.weid.protocol.response.ResponseData;
+import com.webank.weid.rpc.AuthorityIssuerService;
+import com.webank.weid.service.impl.AuthorityIssuerServiceImpl;
+
+/**
+ * in-memory map of the issuers, weId to the public keys of its document and whether it is
+ * an authority issuer. the issuers are few and their keys rarely change, so the map is
+ * preloaded with the authority issuers at startup and refreshed in the background as a
+ * whole, an issuer is never expired on the request path.
+ *
+ * <p>an issuer is dropped and reloaded in the background when its document is changed by
+ * us through the weId document cache, or when it is registered as an authority issuer.
+ *
+ * @author agent
+ */
+public class IssuerCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(IssuerCache.class);
+
+    /**
+     * the page size of listing the authority issuers.
+     */
+    private static final int PRELOAD_PAGE_SIZE = 100;
+
+    private final WeIdDocumentCache documentCache;
+
+    private final AuthorityIssuerService authorityIssuerService;
+
+    private final int maxSize;
+
+    private final Map<String, Issuer> issuers = new ConcurrentHashMap<String, Issuer>();
+
+    /**
+     * the token of the latest load of every weId, a load finishing after the weId is
+     * invalidated or loaded again does not store its result.
+     */
+    private final Map<String, Object> loading = new ConcurrentHashMap<String, Object>();
+
+    private final ScheduledExecutorService refreshExecutor;
+
+    private final AtomicLong hitCount = new AtomicLong();
+
+    private final AtomicLong missCount = new AtomicLong();
+
+    private final AtomicLong invalidateCount = new AtomicLong();
+
+    private final AtomicLong refreshCount = new AtomicLong();
+
+    private final AtomicLong refreshErrorCount = new AtomicLong();
+
+    /**
+     * constructor.
+     *
+     * @param documentCache the cache of the weId documents
+     * @param authorityIssuerService the service querying the authority issuers
+     * @param maxSize the maximum number of issuers, 0 disables the cache
+     * @param refreshMillis the interval of refreshing all issuers, 0 disables
+     */
+    public IssuerCache(
+        WeIdDocumentCache documentCache,
+        AuthorityIssuerService authorityIssuerService,
+        int maxSize,
+        long refreshMillis) {
+
+        this.documentCache = documentCache;
+        this.authorityIssuerService = authorityIssuerService;
+        this.maxSize = Math.max(0, maxSize);
+        this.refreshExecutor = Executors.newSingleThreadScheduledExecutor(
+            new NamedThreadFactory("weid-issuer-refresh"));
+        if (this.maxSize > 0 && refreshMillis > 0) {
+            refreshExecutor.scheduleWithFixedDelay(
+                this::refreshAll, refreshMillis, refreshMillis, TimeUnit.MILLISECONDS);
+        }
+        documentCache.addChangeListener(this::invalidate);
+        logger.info("issuer cache init, maxSize={}, refreshMillis={}", maxSize, refreshMillis);
+    }
+
+    /**
+     * get the shared cache of the process, configured by weid.issuerCache.*.
+     *
+     * @return returns the issuer cache
+     */
+    public static IssuerCache getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * get the issuer, from the map when present.
+     *
+     * @param weId the weId of the issuer
+     * @return returns the issuer
+     */
+    public ResponseData<Issuer> getIssuer(String weId) {
+        return getIssuer(weId, false);
+    }
+
+    /**
+     * get the issuer.
+     *
+     * @param weId the weId of the issuer
+     * @param bypassCache load from the chain and update the map
+     * @return returns the issuer
+     */
+    public ResponseData<Issuer> getIssuer(String weId, boolean bypassCache) {
+        if (!bypassCache) {
+            Issuer issuer = issuers.get(weId);
+            if (issuer != null) {
+                hitCount.incrementAndGet();
+                return new ResponseData<>(issuer, ErrorCode.SUCCESS);
+            }
+        }
+        missCount.incrementAndGet();
+        return load(weId, bypassCache);
+    }
+
+    /**
+     * load the authority issuers on the chain and the given weIds in the background.
+     *
+     * @param weIds the weIds to load besides the authority issuers
+     * @param authorityIssuers whether to load the authority issuers on the chain
+     */
+    public void preload(Collection<String> weIds, boolean authorityIssuers) {
+        if (maxSize == 0) {
+            return;
+        }
+        try {
+            refreshExecutor.execute(() -> {
+                Set<String> targets = new LinkedHashSet<String>(weIds);
+                if (authorityIssuers) {
+                    targets.addAll(listAuthorityIssuers());
+                }
+                for (String weId : targets) {
+                    loadQuietly(weId);
+                }
+                logger.info("preload issuers finish, count={}", issuers.size());
+            });
+        } catch (RejectedExecutionException e) {
+            logger.error("preload issuers rejected", e);
+        }
+    }
+
+    /**
+     * drop the issuer and reload it in the background, called when its document or its
+     * authority status is changed by us.
+     *
+     * @param weId the weId of the issuer
+     */
+    public void invalidate(String weId) {
+        loading.remove(weId);
+        if (issuers.remove(weId) == null) {
+            return;
+        }
+        invalidateCount.incrementAndGet();
+        try {
+            refreshExecutor.execute(() -> loadQuietly(weId));
+        } catch (RejectedExecutionException e) {
+            // the issuer is loaded on the request path.
+            logger.warn("reload issuer rejected, weId={}", weId);
+        }
+    }
+
+    /**
+     * get the metrics of the cache.
+     *
+     * @return returns the metrics
+     */
+    public Map<String, Object> getMetrics() {
+        long hits = hitCount.get();
+        long misses = missCount.get();
+        Map<String, Object> metrics = new LinkedHashMap<String, Object>();
+        metrics.put("size", issuers.size());
+        metrics.put("maxSize", maxSize);
+        metrics.put("hitCount", hits);
+        metrics.put("missCount", misses);
+        metrics.put("hitRatio", hits + misses == 0 ? 0D : (double) hits / (hits + misses));
+        metrics.put("invalidateCount", invalidateCount.get());
+        metrics.put("refreshCount", refreshCount.get());
+        metrics.put("refreshErrorCount", refreshErrorCount.get());
+        return metrics;
+    }
+
+    /**
+     * get the weIds of weid.issuerCache.preloadWeIds.
+     *
+     * @return returns the weIds
+     */
+    public static List<String> getPreloadWeIds() {
+        List<String> weIds = new ArrayList<String>();
+        String value = PropertiesUtils.getProperty("weid.issuerCache.preloadWeIds", "");
+        for (String weId : StringUtils.split(value, ',')) {
+            if (StringUtils.isNotBlank(weId)) {
+                weIds.add(weId.trim());
+            }
+        }
+        return weIds;
+    }
+
+    /**
+     * resolve the document and the authority status, the result is stored unless the weId
+     * is invalidated or loaded again during the call. a miss on the request path reads the
+     * document through the document cache, so a weId known not to exist does not reach
+     * the chain, the background reloads read it from the chain.
+     */
+    private ResponseData<Issuer> load(String weId, boolean bypassDocumentCache) {
+        Object token = new Object();
+        loading.put(weId, token);
+        try {
+            ResponseData<WeIdDocument> document =
+                documentCache.getWeIdDocument(weId, bypassDocumentCache);
+            if (document.getErrorCode().intValue() != ErrorCode.SUCCESS.getCode()
+                || document.getResult() == null) {
+                return new ResponseData<>(
+                    null, document.getErrorCode(), document.getErrorMessage());
+            }
+            ResponseData<Boolean> authority = authorityIssuerService.isAuthorityIssuer(weId);
+            Issuer issuer = new Issuer(
+                weId, document.getResult(), Boolean.TRUE.equals(authority.getResult()));
+
+            // an unknown authority status is returned but not kept.
+            boolean known = authority.getErrorCode().intValue() == ErrorCode.SUCCESS.getCode()
+                || authority.getErrorCode().intValue()
+                == ErrorCode.AUTHORITY_ISSUER_CONTRACT_ERROR_NOT_EXISTS.getCode();
+            if (known
+                && loading.get(weId) == token
+                && (issuers.containsKey(weId) || issuers.size() < maxSize)) {
+                issuers.put(weId, issuer);
+            }
+            return new ResponseData<>(issuer, ErrorCode.SUCCESS);
+        } finally {
+            loading.remove(weId, token);
+        }
+    }
+
+    private void loadQuietly(String weId) {
+        try {
+            ResponseData<Issuer> response = load(weId, true);
+            if (response.getErrorCode().intValue() != ErrorCode.SUCCESS.getCode()) {
+                refreshErrorCount.incrementAndGet();
+                if (response.getErrorCode().intValue()
+                    == ErrorCode.WEID_DOES_NOT_EXIST.getCode()) {
+                    issuers.remove(weId);
+                }
+            }
+        } catch (Exception e) {
+            refreshErrorCount.incrementAndGet();
+            logger.error("load issuer error, weId={}", weId, e);
+        }
+    }
+
+    private void refreshAll() {
+        refreshCount.incrementAndGet();
+        for (String weId : new ArrayList<String>(issuers.keySet())) {
+            loadQuietly(weId);
+        }
+    }
+
+    private List<String> listAuthorityIssuers() {
+        List<String> weIds = new ArrayList<String>();
+        for (int index = 0; weIds.size() < maxSize; index += PRELOAD_PAGE_SIZE) {
+            ResponseData<List<AuthorityIssuer>> response =
+                authorityIssuerService.getAllAuthorityIssuerList(index, PRELOAD_PAGE_SIZE);
+            if (response.getErrorCode().intValue() != ErrorCode.SUCCESS.getCode()
+                || response.getResult() == null) {
+                logger.error("list authority issuers error, index={}, errorCode={}",
+                    index, response.getErrorCode());
+                break;
+            }
+            for (AuthorityIssuer authorityIssuer : response.getResult()) {
+                weIds.add(authorityIssuer.getWeId());
+            }
+            if (response.getResult().size() < PRELOAD_PAGE_SIZE) {
+                break;
+            }
+        }
+        return weIds;
+    }
+
+    /**
+     * the public keys and the authority status of an issuer.
+     */
+    public static final class Issuer {
+
+        private final String weId;
+
+        private final WeIdDocument document;
+
+        private final boolean authorityIssuer;
+
+        private final long loadTime = System.currentTimeMillis();
+
+        private Issuer(String weId, WeIdDocument document, boolean authorityIssuer) {
+            this.weId = weId;
+            this.document = document;
+            this.authorityIssuer = authorityIssuer;
+        }
+
+        public String getWeId() {
+            return weId;
+        }
+
+        /**
+         * get the document carrying the public keys of the issuer.
+         *
+         * @return returns the weId document
+         */
+        public WeIdDocument getDocument() {
+            return document;
+        }
+
+        public boolean isAuthorityIssuer() {
+            return authorityIssuer;
+        }
+
+        public long getLoadTime() {
+            return loadTime;
+        }
+    }
+
+    private static final class Holder {
+
+        private static final IssuerCache INSTANCE = new IssuerCache(
+            WeIdDocumentCache.getInstance(),
+            new AuthorityIssuerServiceImpl(),
+            Integer.parseInt(PropertiesUtils.getProperty("weid.issuerCache.maxSize", "2000")),
+            Long.parseLong(PropertiesUtils.getProperty("weid.issuerCache.refreshSeconds", "300"))
+                * 1000L);
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ *       Copyright© (2019) WeBank Co., Ltd.
+ *
+ *       This file is part of weidentity-sample.
+ *
+ *       weidentity-sample is free software: you can redistribute it and/or modify
+ *       it under the terms of the GNU Lesser General Public License as published by
+ *       the Free Software Foundation, either version 3 of the License, or
+ *       (at your option) any later version.
+ *
+ *       weidentity-sample is distributed in the hope that it will be useful,
+ *       but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *       MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *       GNU Lesser General Public License for more details.
+ *
+ *       You should have received a copy of the GNU Lesser General Public License
+ *       along with weidentity-sample.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.webank.weid.demo.common.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.bcos.web3j.crypto.ECKeyPair;
+import org.bcos.web3j.crypto.Keys;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.webank.weid.demo.common.dto.PasswordKey;
+import com.webank.weid.demo.exception.BusinessException;
+
+/**
+ * bounded pool of pre-generated secp256k1 key pairs, filled by background producers.
+ * producers refill the pool up to the high watermark once its depth drops below the low
+ * watermark. when the pool is empty the key pair is generated on the caller thread.
+ *
+ * @author agent
+ */
+public class KeyPairPool {
+
+    private static final Logger logger = LoggerFactory.getLogger(KeyPairPool.class);
+
+    private final BlockingQueue<PasswordKey> pool;
+
+    private final int lowWatermark;
+
+    private final int highWatermark;
+
+    private final Thread[] producers;
+
+    private final AtomicLong generatedCount = new AtomicLong();
+
+    private final AtomicLong takenCount = new AtomicLong();
+
+    private final AtomicLong emptyCount = new AtomicLong();
+
+    /**
+     * the snapshot of the generated count for the refill rate.
+     */
+    private long rateCount;
+
+    private long rateTime = System.nanoTime();
+
+    private volatile boolean running = true;
+
+    /**
+     * constructor, starts the producers.
+     *
+     * @param lowWatermark refill starts when the depth drops below it
+     * @param highWatermark the capacity of the pool
+     * @param producerThreads the number of producer threads
+     */
+    public KeyPairPool(int lowWatermark, int highWatermark, int producerThreads) {
+        this.highWatermark = Math.max(1, highWatermark);
+        this.lowWatermark = Math.min(Math.max(0, lowWatermark), this.highWatermark);
+        this.pool = new ArrayBlockingQueue<PasswordKey>(this.highWatermark);
+        this.producers = new Thread[Math.max(1, producerThreads)];
+        for (int i = 0; i < producers.length; i++) {
+            producers[i] = new Thread(this::produce, "key-pair-producer-" + i);
+            producers[i].setDaemon(true);
+            producers[i].start();
+        }
+        logger.info("key pair pool start, lowWatermark={}, highWatermark={}, producers={}",
+            this.lowWatermark, this.highWatermark, producers.length);
+    }
+
+    /**
+     * take a key pair from the pool, generate one if the pool is empty.
+     *
+     * @return returns the key pair
+     */
+    public PasswordKey take() {
+        PasswordKey passwordKey = pool.poll();
+        if (pool.size() < lowWatermark) {
+            synchronized (this) {
+                notifyAll();
+            }
+        }
+        if (null == passwordKey) {
+            emptyCount.incrementAndGet();
+            passwordKey = generate();
+        }
+        takenCount.incrementAndGet();
+        return passwordKey;
+    }
+
+    /**
+     * stop the producers.
+     */
+    public void shutdown() {
+        running = false;
+        for (Thread producer : producers) {
+            producer.interrupt();
+        }
+    }
+
+    /**
+     * get the metrics of the pool: depth, refill rate per second since the last call and
+     * the counters of pooled, taken and inline generated key pairs.
+     *
+     * @return returns the metrics
+     */
+    public synchronized Map<String, Object> getMetrics() {
+        long now = System.nanoTime();
+        long count = generatedCount.get();
+        double seconds = (now - rateTime) / 1e9;
+        double refillRate = seconds > 0 ? (count - rateCount) / seconds : 0;
+        rateCount = count;
+        rateTime = now;
+
+        Map<String, Object> metrics = new LinkedHashMap<String, Object>();
+        metrics.put("depth", pool.size());
+        metrics.put("lowWatermark", lowWatermark);
+        metrics.put("highWatermark", highWatermark);
+        metrics.put("refillRatePerSecond", refillRate);
+        metrics.put("generatedCount", count);
+        metrics.put("takenCount", takenCount.get());
+        metrics.put("emptyCount", emptyCount.get());
+        return metrics;
+    }
+
+    private void produce() {
+        while (running) {
+            try {
+                synchronized (this) {
+                    // once the pool is full, wait for the depth to drop below the low watermark.
+                    if (pool.size() >= highWatermark) {
+                        while (running && pool.size() >= lowWatermark) {
+                            wait();
+                        }
+                    }
+                }
+                pool.put(generate());
+                generatedCount.incrementAndGet();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                logger.error("generate key pair error", e);
+            }
+        }
+    }
+
+    private PasswordKey generate() {
+        try {
+            ECKeyPair keyPair = Keys.createEcKeyPair();
+            PasswordKey passwordKey = new PasswordKey();
+            passwordKey.setPrivateKey(keyPair.getPrivateKey().toString());
+            passwordKey.setPublicKey(keyPair.getPublicKey().toString());
+            return passwordKey;
+        } catch (Exception e) {
+            throw new BusinessException("create key pair failed", e);
+        }
+    }
+}
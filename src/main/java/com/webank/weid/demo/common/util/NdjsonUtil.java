@@ -0,0 +1,106 @@
+/*
+ *       Copyright© (2019) WeBank Co., Ltd.
+ *
+ *       This file is part of weidentity-sample.
+ *
+ *       weidentity-sample is free software: you can redistribute it and/or modify
+ *       it under the terms of the GNU Lesser General Public License as published by
+ *       the Free Software Foundation, either version 3 of the License, or
+ *       (at your option) any later version.
+ *
+ *       weidentity-sample is distributed in the hope that it will be useful,
+ *       but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *       MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *       GNU Lesser General Public License for more details.
+ *
+ *       You should have received a copy of the GNU Lesser General Public License
+ *       along with weidentity-sample.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.webank.weid.demo.common.util;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import com.webank.weid.util.DataToolUtils;
+
+/**
+ * newline delimited JSON tool for the streaming interfaces.
+ *
+ * @author agent
+ */
+public class NdjsonUtil {
+
+    /**
+     * the content type of newline delimited JSON.
+     */
+    public static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper()
+        .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+        .configure(MapperFeature.USE_GETTERS_AS_SETTERS, false);
+
+    /**
+     * write the value as one line of JSON and flush it to the client.
+     *
+     * @param outputStream the output stream of the response
+     * @param value the value
+     * @throws UncheckedIOException if the client is gone
+     */
+    public static void writeLine(OutputStream outputStream, Object value) {
+        try {
+            String line = DataToolUtils.objToJsonStrWithNoPretty(value) + "\n";
+            outputStream.write(line.getBytes(StandardCharsets.UTF_8));
+            outputStream.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * create a reader of the lines of the stream, one JSON value per line.
+     *
+     * @param inputStream the input stream of the request
+     * @return returns the reader
+     */
+    public static BufferedReader createReader(InputStream inputStream) {
+        return new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * read one line of the stream as a tree, only this value is held in memory.
+     *
+     * @param line the line
+     * @return returns the value
+     * @throws JsonProcessingException if the line is not one well-formed JSON value
+     * @throws IOException if the line can not be read
+     */
+    public static JsonNode readLine(String line) throws IOException {
+        return OBJECT_MAPPER.readTree(line);
+    }
+
+    /**
+     * bind a JSON value read by {@link #readLine(String)}, unknown properties are ignored.
+     *
+     * @param node the JSON value
+     * @param valueType the type to bind
+     * @param <T> the type to bind
+     * @return returns the bound value
+     * @throws JsonProcessingException if the value does not match the type
+     */
+    public static <T> T toValue(JsonNode node, Class<T> valueType)
+        throws JsonProcessingException {
+        return OBJECT_MAPPER.treeToValue(node, valueType);
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ *       Copyright© (2019) WeBank Co., Ltd.
+ *
+ *       This file is part of weidentity-sample.
+ *
+ *       weidentity-sample is free software: you can redistribute it and/or modify
+ *       it under the terms of the GNU Lesser General Public License as published by
+ *       the Free Software Foundation, either version 3 of the License, or
+ *       (at your option) any later version.
+ *
+ *       weidentity-sample is distributed in the hope that it will be useful,
+ *       but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *       MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *       GNU Lesser General Public License for more details.
+ *
+ *       You should have received a copy of the GNU Lesser General Public License
+ *       along with weidentity-sample.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.webank.weid.demo.common.util;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.webank.weid.demo.exception.BusinessException;
+import com.webank.weid.protocol.base.PresentationPolicyE;
+import com.webank.weid.util.DataToolUtils;
+
+/**
+ * cache of the parsed presentation policies. a policy is keyed by the hash of its canonical
+ * JSON, so the same policy sent inline is parsed once however its keys are ordered, and a
+ * registered policy is also keyed by its id, so a request naming only the id is served
+ * without any JSON work.
+ *
+ * <p>the cached policies are shared by all requests, they are frozen and every caller gets
+ * its own policy object sharing their maps, so a request or a response can never modify
+ * them.
+ *
+ * @author agent
+ */
+public class PolicyCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(PolicyCache.class);
+
+    /**
+     * serializes the maps with sorted keys, so the hash does not depend on the key order.
+     */
+    private static final ObjectMapper CANONICAL_MAPPER =
+        new ObjectMapper().configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true);
+
+    /**
+     * the registered policies by id.
+     */
+    private final Map<Integer, Policy> registered = new ConcurrentHashMap<Integer, Policy>();
+
+    /**
+     * the policies by the hash of their canonical JSON, the registered ones included.
+     */
+    private final TtlCache<String, Policy> parsed;
+
+    private final AtomicLong parseCount = new AtomicLong();
+
+    /**
+     * constructor.
+     *
+     * @param maxSize the maximum number of policies parsed from requests, 0 disables
+     */
+    public PolicyCache(int maxSize) {
+        this.parsed = new TtlCache<String, Policy>(maxSize, 0L);
+        logger.info("policy cache init, maxSize={}", maxSize);
+    }
+
+    /**
+     * get the shared cache of the process, configured by weid.policyCache.*.
+     *
+     * @return returns the policy cache
+     */
+    public static PolicyCache getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * parse and register the policy, a policy registered with the same id is replaced.
+     *
+     * @param policyJson the policy
+     * @return returns the registered policy
+     */
+    public Policy register(Map<String, Object> policyJson) {
+        Policy policy = resolve(policyJson);
+        if (policy.getId() == null) {
+            throw new BusinessException("the policy has no id");
+        }
+        Policy old = registered.put(policy.getId(), policy);
+        if (old == null || !old.getHash().equals(policy.getHash())) {
+            logger.info("register policy, id={}, hash={}", policy.getId(), policy.getHash());
+        }
+        return policy;
+    }
+
+    /**
+     * get the registered policy of the id.
+     *
+     * @param policyId the id of the policy
+     * @return returns the policy, null if not registered
+     */
+    public Policy get(Integer policyId) {
+        return policyId == null ? null : registered.get(policyId);
+    }
+
+    /**
+     * get the parsed policy of the JSON, parsing it only when its content is not cached.
+     *
+     * @param policyJson the policy
+     * @return returns the policy
+     */
+    public Policy resolve(Map<String, Object> policyJson) {
+        String json;
+        try {
+            json = CANONICAL_MAPPER.writeValueAsString(policyJson);
+        } catch (JsonProcessingException e) {
+            throw new BusinessException("write the policy failed", e);
+        }
+        String hash = DataToolUtils.sha3(json);
+        Policy policy = parsed.get(hash);
+        if (policy != null) {
+            return policy;
+        }
+        PresentationPolicyE presentationPolicyE = PresentationPolicyE.fromJson(json);
+        if (presentationPolicyE == null) {
+            throw new BusinessException("the policy is not valid");
+        }
+        parseCount.incrementAndGet();
+        policy = new Policy(hash, PolicyView.freeze(presentationPolicyE));
+        parsed.put(hash, policy);
+        return policy;
+    }
+
+    /**
+     * get the registered policies.
+     *
+     * @return returns the policies
+     */
+    public List<Policy> getRegistered() {
+        return new ArrayList<Policy>(registered.values());
+    }
+
+    /**
+     * get the metrics of the cache, including the number of parsed policies.
+     *
+     * @return returns the metrics
+     */
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<String, Object>();
+        metrics.put("registeredCount", registered.size());
+        metrics.put("parseCount", parseCount.get());
+        metrics.put("parsed", parsed.getMetrics());
+        return metrics;
+    }
+
+    /**
+     * a parsed policy with the hash of its canonical JSON.
+     */
+    public static final class Policy {
+
+        private final String hash;
+
+        private final PresentationPolicyE presentationPolicyE;
+
+        private Policy(String hash, PresentationPolicyE presentationPolicyE) {
+            this.hash = hash;
+            this.presentationPolicyE = presentationPolicyE;
+        }
+
+        public Integer getId() {
+            return presentationPolicyE.getId();
+        }
+
+        public String getHash() {
+            return hash;
+        }
+
+        /**
+         * get the parsed policy as a new object sharing the frozen maps, a property set on
+         * it is only seen by the caller.
+         *
+         * @return returns the policy
+         */
+        public PresentationPolicyE getPresentationPolicyE() {
+            return PolicyView.bind(
+                presentationPolicyE, presentationPolicyE.getPolicyPublisherWeId());
+        }
+    }
+
+    private static final class Holder {
+
+        private static final PolicyCache INSTANCE = new PolicyCache(
+            Integer.parseInt(PropertiesUtils.getProperty("weid.policyCache.maxSize", "1000")));
+    }
+}
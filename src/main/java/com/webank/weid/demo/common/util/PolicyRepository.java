@@ -0,0 +1,340 @@
+/*
+ *       Copyright© (2019) WeBank Co., Ltd.
+ *
+ *       This file is part of weidentity-sample.
+ *
+ *       weidentity-sample is free software: you can redistribute it and/or modify
+ *       it under the terms of the GNU Lesser General Public License as published by
+ *       the Free Software Foundation, either version 3 of the License, or
+ *       (at your option) any later version.
+ *
+ *       weidentity-sample is distributed in the hope that it will be useful,
+ *       but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *       MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *       GNU Lesser General Public License for more details.
+ *
+ *       You should have received a copy of the GNU Lesser General Public License
+ *       along with weidentity-sample.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.webank.weid.demo.common.util;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.webank.weid.demo.exception.BusinessException;
+import com.webank.weid.protocol.base.PresentationPolicyE;
+import com.webank.weid.util.DataToolUtils;
+
+/**
+ * repository of the presentation policies served by the AMOP daemon. every *.json file of the
+ * policy directory is loaded at startup and the directory is watched, a created or modified
+ * file is parsed again on its own and replaces the policy of its id in one map write, so
+ * the readers never wait for a reload. a file that fails to parse, such as one still being
+ * written, keeps the previous policy until its next change.
+ *
+ * <p>the built-in policies on the classpath are served when no file of the directory has
+ * their id. the policies handed out are shared templates, frozen by PolicyView, and must
+ * not be modified.
+ *
+ * @author agent
+ */
+public class PolicyRepository {
+
+    private static final Logger logger = LoggerFactory.getLogger(PolicyRepository.class);
+
+    private static final String POLICY_FILE_SUFFIX = ".json";
+
+    private final Path dir;
+
+    /**
+     * the policies of the classpath by id.
+     */
+    private final Map<String, PresentationPolicyE> builtins =
+        new ConcurrentHashMap<String, PresentationPolicyE>();
+
+    /**
+     * the policies of the directory by id.
+     */
+    private final Map<String, Loaded> policies = new ConcurrentHashMap<String, Loaded>();
+
+    /**
+     * the policy id of every loaded file, only touched by the loader.
+     */
+    private final Map<Path, String> fileIds = new ConcurrentHashMap<Path, String>();
+
+    private final Map<String, LongAdder> requestCounts = new ConcurrentHashMap<String, LongAdder>();
+
+    private final LongAdder missCount = new LongAdder();
+
+    private final AtomicLong reloadCount = new AtomicLong();
+
+    private final AtomicLong failCount = new AtomicLong();
+
+    private volatile WatchService watchService;
+
+    /**
+     * constructor, loads the directory and starts watching it.
+     *
+     * @param dir the policy directory, blank serves the built-in policies only
+     * @param builtinFiles the classpath files of the built-in policies
+     * @param reportMillis the interval of logging the request counters, 0 disables
+     */
+    public PolicyRepository(String dir, String[] builtinFiles, long reportMillis) {
+        for (String builtinFile : builtinFiles) {
+            PresentationPolicyE policy = PresentationPolicyE.create(builtinFile);
+            if (policy == null || policy.getId() == null) {
+                logger.error("load the built-in policy failed, file={}", builtinFile);
+                continue;
+            }
+            builtins.put(String.valueOf(policy.getId()), PolicyView.freeze(policy));
+        }
+        this.dir = StringUtils.isBlank(dir) ? null : Paths.get(dir).toAbsolutePath();
+        if (this.dir != null && Files.isDirectory(this.dir)) {
+            loadAll();
+            watch(reportMillis);
+        } else if (this.dir != null) {
+            logger.warn("the policy directory does not exist, dir={}", this.dir);
+        }
+        logger.info("policy repository init, dir={}, builtins={}, policies={}",
+            this.dir, builtins.keySet(), policies.keySet());
+    }
+
+    /**
+     * get the shared repository of the process, configured by weid.policy.*.
+     *
+     * @return returns the policy repository
+     */
+    public static PolicyRepository getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * get the policy of the id and count the request.
+     *
+     * @param policyId the policy id
+     * @return returns the shared policy, read only, null if it does not exist
+     */
+    public PresentationPolicyE get(String policyId) {
+        if (policyId == null) {
+            missCount.increment();
+            return null;
+        }
+        Loaded loaded = policies.get(policyId);
+        PresentationPolicyE policy = loaded == null ? builtins.get(policyId) : loaded.policy;
+        if (policy == null) {
+            missCount.increment();
+            return null;
+        }
+        requestCounts.computeIfAbsent(policyId, id -> new LongAdder()).increment();
+        return policy;
+    }
+
+    /**
+     * get the metrics of the repository, including the request count of every policy.
+     *
+     * @return returns the metrics
+     */
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<String, Object>();
+        metrics.put("dir", dir == null ? null : dir.toString());
+        metrics.put("builtinCount", builtins.size());
+        metrics.put("policyCount", policies.size());
+        metrics.put("reloadCount", reloadCount.get());
+        metrics.put("failCount", failCount.get());
+        metrics.put("missCount", missCount.sum());
+        Map<String, Object> requests = new TreeMap<String, Object>();
+        for (Map.Entry<String, LongAdder> entry : requestCounts.entrySet()) {
+            requests.put(entry.getKey(), entry.getValue().sum());
+        }
+        metrics.put("requestCounts", requests);
+        return metrics;
+    }
+
+    /**
+     * stop watching the directory.
+     */
+    public void close() {
+        WatchService current = watchService;
+        if (current == null) {
+            return;
+        }
+        try {
+            current.close();
+        } catch (IOException e) {
+            logger.error("close the policy watch service error, dir={}", dir, e);
+        }
+    }
+
+    private void loadAll() {
+        Set<Path> files = new LinkedHashSet<Path>(fileIds.keySet());
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+            for (Path file : stream) {
+                files.add(file);
+            }
+        } catch (IOException e) {
+            logger.error("list the policy directory error, dir={}", dir, e);
+            return;
+        }
+        for (Path file : files) {
+            load(file);
+        }
+    }
+
+    /**
+     * load the file again, or drop its policy when the file is gone.
+     */
+    private void load(Path file) {
+        if (!file.getFileName().toString().endsWith(POLICY_FILE_SUFFIX)) {
+            return;
+        }
+        if (!Files.isRegularFile(file)) {
+            unload(file);
+            return;
+        }
+        try {
+            String json = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+            String hash = DataToolUtils.sha3(json);
+            String oldId = fileIds.get(file);
+            Loaded old = oldId == null ? null : policies.get(oldId);
+            if (old != null && file.equals(old.file) && hash.equals(old.hash)) {
+                return;
+            }
+            PresentationPolicyE policy = PresentationPolicyE.fromJson(json);
+            if (policy == null || policy.getId() == null) {
+                throw new BusinessException("the policy is not valid");
+            }
+            String id = String.valueOf(policy.getId());
+            if (oldId != null && !oldId.equals(id)) {
+                unload(file);
+            }
+            policies.put(id, new Loaded(PolicyView.freeze(policy), file, hash));
+            fileIds.put(file, id);
+            reloadCount.incrementAndGet();
+            logger.info("load policy, id={}, file={}", id, file);
+        } catch (Exception e) {
+            failCount.incrementAndGet();
+            logger.warn("load policy failed, the previous one is kept, file={}", file, e);
+        }
+    }
+
+    private void unload(Path file) {
+        String id = fileIds.remove(file);
+        if (id == null) {
+            return;
+        }
+        Loaded loaded = policies.get(id);
+        if (loaded != null && file.equals(loaded.file)) {
+            policies.remove(id, loaded);
+            logger.info("unload policy, id={}, file={}", id, file);
+        }
+    }
+
+    private void watch(long reportMillis) {
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            dir.register(watchService,
+                StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY,
+                StandardWatchEventKinds.ENTRY_DELETE);
+        } catch (IOException e) {
+            throw new BusinessException("watch the policy directory failed: " + dir, e);
+        }
+        new NamedThreadFactory("weid-policy-watcher").newThread(() -> {
+            try {
+                watchLoop(reportMillis);
+            } catch (ClosedWatchServiceException e) {
+                logger.info("stop watching the policy directory, dir={}", dir);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }).start();
+    }
+
+    private void watchLoop(long reportMillis) throws InterruptedException {
+        long nextReport = System.currentTimeMillis() + reportMillis;
+        while (true) {
+            WatchKey key = reportMillis > 0
+                ? watchService.poll(
+                    Math.max(0L, nextReport - System.currentTimeMillis()), TimeUnit.MILLISECONDS)
+                : watchService.take();
+            if (reportMillis > 0 && System.currentTimeMillis() >= nextReport) {
+                logger.info("policy repository metrics: {}", getMetrics());
+                nextReport = System.currentTimeMillis() + reportMillis;
+            }
+            if (key == null) {
+                continue;
+            }
+            // one save may raise several events, every changed file is loaded once.
+            Set<Path> changed = new LinkedHashSet<Path>();
+            boolean overflow = false;
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    overflow = true;
+                } else {
+                    changed.add(dir.resolve((Path) event.context()));
+                }
+            }
+            if (overflow) {
+                loadAll();
+            } else {
+                for (Path file : changed) {
+                    load(file);
+                }
+            }
+            if (!key.reset()) {
+                logger.error("the policy directory is no longer accessible, dir={}", dir);
+                return;
+            }
+        }
+    }
+
+    /**
+     * a policy loaded from a file with the hash of the file content.
+     */
+    private static final class Loaded {
+
+        private final PresentationPolicyE policy;
+
+        private final Path file;
+
+        private final String hash;
+
+        private Loaded(PresentationPolicyE policy, Path file, String hash) {
+            this.policy = policy;
+            this.file = file;
+            this.hash = hash;
+        }
+    }
+
+    private static final class Holder {
+
+        private static final PolicyRepository INSTANCE = new PolicyRepository(
+            PropertiesUtils.getProperty("weid.policy.dir", "./policy"),
+            new String[]{"policy123456.json"},
+            Long.parseLong(PropertiesUtils.getProperty("weid.policy.reportSeconds", "60"))
+                * 1000L);
+    }
+}
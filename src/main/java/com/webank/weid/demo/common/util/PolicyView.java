@@ -0,0 +1,87 @@
+/*
+ *       Copyright© (2019) WeBank Co., Ltd.
+ *
+ *       This file is part of weidentity-sample.
+ *
+ *       weidentity-sample is free software: you can redistribute it and/or modify
+ *       it under the terms of the GNU Lesser General Public License as published by
+ *       the Free Software Foundation, either version 3 of the License, or
+ *       (at your option) any later version.
+ *
+ *       weidentity-sample is distributed in the hope that it will be useful,
+ *       but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *       MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *       GNU Lesser General Public License for more details.
+ *
+ *       You should have received a copy of the GNU Lesser General Public License
+ *       along with weidentity-sample.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.webank.weid.demo.common.util;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.webank.weid.protocol.base.ClaimPolicy;
+import com.webank.weid.protocol.base.PresentationPolicyE;
+
+/**
+ * per-request views of a shared policy template. a template is frozen once when it is
+ * loaded, its maps are replaced by unmodifiable ones, and every request binds its own
+ * publisher weId on a new policy object sharing the frozen maps by reference, so the
+ * template is never modified by a request and the policy content is never copied.
+ *
+ * <p>the bound policy is a plain PresentationPolicyE with all its fields set, so it is
+ * serialized like any other policy, by fields or by getters. the claim policies in the
+ * maps are shared by all requests as well and must not be modified.
+ *
+ * @author agent
+ */
+public final class PolicyView {
+
+    private PolicyView() {
+    }
+
+    /**
+     * freeze a policy before it is shared as a template, the maps are replaced by
+     * unmodifiable ones. called once per template, before it is published to the other
+     * threads.
+     *
+     * @param policy the policy just parsed
+     * @return returns the same policy, frozen
+     */
+    public static PresentationPolicyE freeze(PresentationPolicyE policy) {
+        if (policy.getPolicy() != null) {
+            policy.setPolicy(Collections.unmodifiableMap(
+                new LinkedHashMap<Integer, ClaimPolicy>(policy.getPolicy())));
+        }
+        if (policy.getExtra() != null) {
+            policy.setExtra(Collections.unmodifiableMap(
+                new LinkedHashMap<String, String>(policy.getExtra())));
+        }
+        return policy;
+    }
+
+    /**
+     * bind the publisher of one request to a frozen template, the maps are shared with
+     * the template.
+     *
+     * @param template the frozen template, not modified
+     * @param policyPublisherWeId the publisher weId of this request
+     * @return returns a new policy of this request
+     */
+    public static PresentationPolicyE bind(
+        PresentationPolicyE template,
+        String policyPublisherWeId) {
+
+        PresentationPolicyE policy = new PresentationPolicyE();
+        policy.setId(template.getId());
+        policy.setOrgId(template.getOrgId());
+        policy.setVersion(template.getVersion());
+        policy.setPolicyPublisherWeId(policyPublisherWeId);
+        policy.setPolicy(template.getPolicy());
+        policy.setExtra(template.getExtra());
+        policy.setPolicyType(template.getPolicyType());
+        return policy;
+    }
+}
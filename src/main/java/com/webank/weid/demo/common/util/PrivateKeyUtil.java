@@ -19,10 +19,17 @@
 
 package com.webank.weid.demo.common.util;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.webank.weid.demo.common.keystore.FileKeyStore;
+import com.webank.weid.demo.common.keystore.KeyStore;
+import com.webank.weid.demo.common.keystore.MappedKeyStore;
+
 /**
  * the util of the private key.
  * @author v_wbgyang
@@ -39,6 +46,19 @@ public class PrivateKeyUtil {
     public static final String SDK_PRIVKEY_PATH = 
         PropertiesUtils.getProperty("admin.privKeyPath");
 
+    /**
+     * the keystore backend, "file" keeps one file per weId, "mapped" keeps all keys
+     * in one memory-mapped data file under the key directory.
+     */
+    private static final String KEY_STORE_TYPE =
+        PropertiesUtils.getProperty("weid.keys.store", "file");
+
+    /**
+     * the keystores, one per key directory.
+     */
+    private static final Map<String, KeyStore> KEY_STORES =
+        new ConcurrentHashMap<String, KeyStore>();
+
     /**
      * this method stores weId private key information by file and stores
      * private key information by itself in actual scene.
@@ -56,17 +76,7 @@ public class PrivateKeyUtil {
                 return false;
             }
 
-            // get the third paragraph of weId.
-            String fileName = weId.substring(weId.lastIndexOf(":") + 1);
-
-            // check whether the path exists or not, then create the path and return.
-            String checkPath = FileUtil.checkDir(path);
-            String filePath = checkPath + fileName;
-
-            logger.info("save private key into file, weId={}, filePath={}", weId, filePath);
-
-            // save the private key information as the file name for the third paragraph of weId.
-            FileUtil.saveFile(filePath, privateKey);
+            getKeyStore(path).put(weId, privateKey);
             return true;
         } catch (Exception e) {
             logger.error("savePrivateKey error", e);
@@ -89,16 +99,63 @@ public class PrivateKeyUtil {
             return StringUtils.EMPTY;
         }
 
-        // get the third paragraph of weId.
-        String fileName = weId.substring(weId.lastIndexOf(":") + 1);
-        
-        // check whether the path exists or not, then create the path and return.
-        String checkPath = FileUtil.checkDir(path);
-        String filePath = checkPath + fileName;
+        return getKeyStore(path).get(weId);
+    }
 
-        logger.info("get private key from file, weId={}, filePath={}", weId, filePath);
+    /**
+     * get the keystore of the weId key directory.
+     *
+     * @return returns the keystore
+     */
+    public static KeyStore getKeyStore() {
+        return getKeyStore(KEY_DIR);
+    }
+
+    /**
+     * get the keystore of the path, the keystore is created on first use.
+     *
+     * @param path the key directory
+     * @return returns the keystore
+     */
+    public static KeyStore getKeyStore(String path) {
+        KeyStore keyStore = KEY_STORES.get(path);
+        if (null == keyStore) {
+            synchronized (KEY_STORES) {
+                keyStore = KEY_STORES.get(path);
+                if (null == keyStore) {
+                    keyStore = createKeyStore(path);
+                    KEY_STORES.put(path, keyStore);
+                }
+            }
+        }
+        return keyStore;
+    }
 
-        // get private key information from a file according to the third paragraph of weId.
-        return FileUtil.getDataByPath(filePath);
+    private static KeyStore createKeyStore(String path) {
+        logger.info("create keystore, type={}, path={}", KEY_STORE_TYPE, path);
+        if ("mapped".equalsIgnoreCase(KEY_STORE_TYPE)) {
+            String checkPath = FileUtil.checkDir(path);
+            return new MappedKeyStore(checkPath + MappedKeyStore.DATA_FILE_NAME);
+        }
+        int cacheMaxSize =
+            Integer.parseInt(PropertiesUtils.getProperty("weid.keys.cache.maxSize", "10000"));
+        long cacheTtlMillis =
+            Long.parseLong(PropertiesUtils.getProperty("weid.keys.cache.ttlSeconds", "600"))
+                * 1000L;
+        logger.info("private key cache init, maxSize={}, ttlMillis={}",
+            cacheMaxSize, cacheTtlMillis);
+        TtlCache<String, String> keyCache =
+            new TtlCache<String, String>(cacheMaxSize, cacheTtlMillis);
+        BloomFilter knownAddresses = null;
+        if (Boolean.parseBoolean(PropertiesUtils.getProperty("weid.keys.bloom.enable", "true"))) {
+            knownAddresses = new BloomFilter(
+                Long.parseLong(
+                    PropertiesUtils.getProperty("weid.keys.bloom.expectedKeys", "1000000")),
+                Double.parseDouble(PropertiesUtils.getProperty("weid.keys.bloom.fpp", "0.01"))
+            );
+        }
+        boolean sharded =
+            "sharded".equalsIgnoreCase(PropertiesUtils.getProperty("weid.keys.layout", "flat"));
+        return new FileKeyStore(path, keyCache, sharded, knownAddresses);
     }
 }
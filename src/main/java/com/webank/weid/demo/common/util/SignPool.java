@@ -0,0 +1,85 @@
+/*
+ *       Copyright© (2019) WeBank Co., Ltd.
+ *
+ *       This file is part of weidentity-sample.
+ *
+ *       weidentity-sample is free software: you can redistribute it and/or modify
+ *       it under the terms of the GNU Lesser General Public License as published by
+ *       the Free Software Foundation, either version 3 of the License, or
+ *       (at your option) any later version.
+ *
+ *       weidentity-sample is distributed in the hope that it will be useful,
+ *       but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *       MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *       GNU Lesser General Public License for more details.
+ *
+ *       You should have received a copy of the GNU Lesser General Public License
+ *       along with weidentity-sample.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.webank.weid.demo.common.util;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.function.BiFunction;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * the fork-join pool of the batch signing, such as batch credential issuance. signing is
+ * pure CPU work, so the pool has one thread per processor by default, configured by
+ * weid.sign.parallelism, and is shared by all batches instead of the common pool.
+ *
+ * @author agent
+ */
+public final class SignPool {
+
+    private static final Logger logger = LoggerFactory.getLogger(SignPool.class);
+
+    private static final int PARALLELISM;
+
+    private static final ForkJoinPool POOL;
+
+    static {
+        int parallelism =
+            Integer.parseInt(PropertiesUtils.getProperty("weid.sign.parallelism", "0"));
+        PARALLELISM = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        POOL = new ForkJoinPool(
+            PARALLELISM,
+            pool -> {
+                ForkJoinWorkerThread thread =
+                    ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                thread.setName("weid-sign-" + thread.getPoolIndex());
+                return thread;
+            },
+            null,
+            false);
+        logger.info("sign pool init, parallelism={}", PARALLELISM);
+    }
+
+    private SignPool() {
+    }
+
+    /**
+     * apply the function to every item in parallel, the results keep the order of items.
+     * the function should convert its own failures into results, an exception thrown by it
+     * fails the whole call.
+     *
+     * @param items the items
+     * @param function the function of the position and the item
+     * @param <T> the type of item
+     * @param <R> the type of result
+     * @return returns the results in the order of items
+     */
+    public static <T, R> List<R> mapInOrder(List<T> items, BiFunction<Integer, T, R> function) {
+        return POOL.submit(() -> IntStream.range(0, items.size())
+            .parallel()
+            .mapToObj(index -> function.apply(index, items.get(index)))
+            .collect(Collectors.toList())
+        ).join();
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ *       Copyright© (2019) WeBank Co., Ltd.
+ *
+ *       This file is part of weidentity-sample.
+ *
+ *       weidentity-sample is free software: you can redistribute it and/or modify
+ *       it under the terms of the GNU Lesser General Public License as published by
+ *       the Free Software Foundation, either version 3 of the License, or
+ *       (at your option) any later version.
+ *
+ *       weidentity-sample is distributed in the hope that it will be useful,
+ *       but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *       MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *       GNU Lesser General Public License for more details.
+ *
+ *       You should have received a copy of the GNU Lesser General Public License
+ *       along with weidentity-sample.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.webank.weid.demo.common.util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * size and TTL bounded cache, entries are evicted in LRU order once the entry count
+ * exceeds the maximum size. one entry may have its own time to live, such as a short
+ * lived negative result.
+ *
+ * @param <K> the type of key
+ * @param <V> the type of value
+ * @author agent
+ */
+public class TtlCache<K, V> {
+
+    /**
+     * the maximum number of entries, 0 disables the cache.
+     */
+    private final int maxSize;
+
+    /**
+     * the default time to live of one entry in milliseconds, 0 means never expire.
+     */
+    private final long ttlMillis;
+
+    /**
+     * the entries, in access order.
+     */
+    private final LinkedHashMap<K, Entry<V>> entries;
+
+    private final AtomicLong hitCount = new AtomicLong();
+
+    private final AtomicLong missCount = new AtomicLong();
+
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    /**
+     * constructor.
+     *
+     * @param maxSize the maximum number of entries, 0 disables the cache
+     * @param ttlMillis the default time to live in milliseconds, 0 means never expire
+     */
+    public TtlCache(int maxSize, long ttlMillis) {
+        this.maxSize = Math.max(0, maxSize);
+        this.ttlMillis = Math.max(0L, ttlMillis);
+        this.entries = new LinkedHashMap<K, Entry<V>>(16, 0.75f, true);
+    }
+
+    /**
+     * get the value of the key, returns null if absent or expired.
+     *
+     * @param key the key
+     * @return returns the value
+     */
+    public V get(K key) {
+        if (maxSize == 0) {
+            missCount.incrementAndGet();
+            return null;
+        }
+        synchronized (entries) {
+            Entry<V> entry = entries.get(key);
+            if (entry == null) {
+                missCount.incrementAndGet();
+                return null;
+            }
+            if (System.currentTimeMillis() >= entry.expireAt) {
+                entries.remove(key);
+                evictionCount.incrementAndGet();
+                missCount.incrementAndGet();
+                return null;
+            }
+            hitCount.incrementAndGet();
+            return entry.value;
+        }
+    }
+
+    /**
+     * whether an unexpired value of the key is present, the hit and miss counters are
+     * not changed.
+     *
+     * @param key the key
+     * @return true if present
+     */
+    public boolean containsKey(K key) {
+        synchronized (entries) {
+            Entry<V> entry = entries.get(key);
+            return entry != null && System.currentTimeMillis() < entry.expireAt;
+        }
+    }
+
+    /**
+     * put the value with the default time to live.
+     *
+     * @param key the key
+     * @param value the value
+     */
+    public void put(K key, V value) {
+        put(key, value, ttlMillis);
+    }
+
+    /**
+     * put the value with its own time to live, evicting the eldest entries when full.
+     *
+     * @param key the key
+     * @param value the value
+     * @param ttlMillis the time to live in milliseconds, 0 means never expire
+     */
+    public void put(K key, V value, long ttlMillis) {
+        if (maxSize == 0 || key == null || value == null) {
+            return;
+        }
+        long expireAt =
+            ttlMillis <= 0L ? Long.MAX_VALUE : System.currentTimeMillis() + ttlMillis;
+        synchronized (entries) {
+            entries.put(key, new Entry<V>(value, expireAt));
+            Iterator<Map.Entry<K, Entry<V>>> it = entries.entrySet().iterator();
+            while (entries.size() > maxSize && it.hasNext()) {
+                it.next();
+                it.remove();
+                evictionCount.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * remove the value of the key.
+     *
+     * @param key the key
+     */
+    public void remove(K key) {
+        synchronized (entries) {
+            entries.remove(key);
+        }
+    }
+
+    /**
+     * remove all entries.
+     */
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    /**
+     * get the current number of entries.
+     *
+     * @return returns the size
+     */
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * get the metrics of the cache: size, hits, misses, hit ratio and evictions.
+     *
+     * @return returns the metrics
+     */
+    public Map<String, Object> getMetrics() {
+        long hits = hitCount.get();
+        long misses = missCount.get();
+        Map<String, Object> metrics = new LinkedHashMap<String, Object>();
+        metrics.put("size", size());
+        metrics.put("maxSize", maxSize);
+        metrics.put("hitCount", hits);
+        metrics.put("missCount", misses);
+        metrics.put("hitRatio", hits + misses == 0 ? 0D : (double) hits / (hits + misses));
+        metrics.put("evictionCount", evictionCount.get());
+        return metrics;
+    }
+
+    /**
+     * cached value with its expiration time.
+     */
+    private static final class Entry<V> {
+
+        private final V value;
+
+        private final long expireAt;
+
+        private Entry(V value, long expireAt) {
+            this.value = value;
+            this.expireAt = expireAt;
+        }
+    }
+}
@@ -0,0 +1,246 @@
+/*
+ *       Copyright© (2019) WeBank Co., Ltd.
+ *
+ *       This file is part of weidentity-sample.
+ *
+ *       weidentity-sample is free software: you can redistribute it and/or modify
+ *       it under the terms of the GNU Lesser General Public License as published by
+ *       the Free Software Foundation, either version 3 of the License, or
+ *       (at your option) any later version.
+ *
+ *       weidentity-sample is distributed in the hope that it will be useful,
+ *       but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *       MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *       GNU Lesser General Public License for more details.
+ *
+ *       You should have received a copy of the GNU Lesser General Public License
+ *       along with weidentity-sample.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.webank.weid.demo.common.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.webank.weid.constant.ErrorCode;
+import com.webank.weid.demo.exception.BusinessException;
+import com.webank.weid.protocol.base.Credential;
+import com.webank.weid.protocol.base.WeIdDocument;
+import com.webank.weid.protocol.response.ResponseData;
+import com.webank.weid.util.DataToolUtils;
+
+/**
+ * cache of the successful credential verifications. an entry is keyed by the hash of the
+ * whole credential, signature included, the issuer and the version of the issuer document,
+ * which is the updated time of the document read from the weId document cache. an entry
+ * lives no longer than the credential itself.
+ *
+ * <p>the cache listens to the changes of the weId document cache, a verification made
+ * before the last change of its issuer document is never served. only successful results
+ * are cached, a failed verification is always redone.
+ *
+ * @author agent
+ */
+public class VerificationCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(VerificationCache.class);
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private final WeIdDocumentCache documentCache;
+
+    private final TtlCache<String, Long> cache;
+
+    /**
+     * issuer to the time of the last change of its document.
+     */
+    private final TtlCache<String, Long> issuerChanges;
+
+    private final long ttlMillis;
+
+    private final AtomicLong bypassCount = new AtomicLong();
+
+    private final AtomicLong staleCount = new AtomicLong();
+
+    private final AtomicLong uncacheableCount = new AtomicLong();
+
+    /**
+     * constructor.
+     *
+     * @param documentCache the cache of the issuer documents
+     * @param maxSize the maximum number of verifications, 0 disables the cache
+     * @param ttlMillis the time to live of a verification in milliseconds, 0 means it lives
+     *     until the credential expires
+     */
+    public VerificationCache(WeIdDocumentCache documentCache, int maxSize, long ttlMillis) {
+        this.documentCache = documentCache;
+        this.cache = new TtlCache<String, Long>(maxSize, ttlMillis);
+        this.issuerChanges = new TtlCache<String, Long>(maxSize, ttlMillis);
+        this.ttlMillis = Math.max(0L, ttlMillis);
+        documentCache.addChangeListener(this::onIssuerChanged);
+        logger.info("verification cache init, maxSize={}, ttlMillis={}", maxSize, ttlMillis);
+    }
+
+    /**
+     * get the shared cache of the process, configured by weid.verifyCache.*.
+     *
+     * @return returns the verification cache
+     */
+    public static VerificationCache getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * get the hash of the credential in JSON, the signature is part of the JSON so two
+     * credentials differing only in their signatures never share an entry.
+     *
+     * @param credentialJson the credential in JSON
+     * @return returns the hash
+     */
+    public static String hash(String credentialJson) {
+        return DataToolUtils.sha3(credentialJson);
+    }
+
+    /**
+     * get the hash of the bound credential. only the fields carried by the credential are
+     * written, the proof with the signature included, the getters computing thumbprints
+     * are not called.
+     *
+     * @param credential the credential
+     * @return returns the hash
+     */
+    public static String hash(Credential credential) {
+        Map<String, Object> fields = new LinkedHashMap<String, Object>();
+        fields.put("context", credential.getContext());
+        fields.put("id", credential.getId());
+        fields.put("cptId", credential.getCptId());
+        fields.put("issuer", credential.getIssuer());
+        fields.put("issuanceDate", credential.getIssuanceDate());
+        fields.put("expirationDate", credential.getExpirationDate());
+        fields.put("claim", credential.getClaim());
+        fields.put("proof", credential.getProof());
+        try {
+            return hash(OBJECT_MAPPER.writeValueAsString(fields));
+        } catch (JsonProcessingException e) {
+            throw new BusinessException("write the credential failed", e);
+        }
+    }
+
+    /**
+     * get the result of the verification, from the cache when present.
+     *
+     * @param credentialHash the hash of the credential, see {@link #hash(String)}
+     * @param issuer the weId of the issuer
+     * @param expirationDate the expiration date of the credential in seconds, may be null
+     * @param bypassCache verify again and do not read the cache, for high assurance checks
+     * @param verifier verifies the credential on a miss
+     * @return returns the result of the verification
+     */
+    public ResponseData<Boolean> verify(
+        String credentialHash,
+        String issuer,
+        Long expirationDate,
+        boolean bypassCache,
+        Supplier<ResponseData<Boolean>> verifier) {
+
+        if (bypassCache) {
+            bypassCount.incrementAndGet();
+        }
+        String version = getDocumentVersion(issuer);
+        if (version == null) {
+            uncacheableCount.incrementAndGet();
+            return verifier.get();
+        }
+        String key = issuer + "|" + version + "|" + credentialHash;
+        if (!bypassCache) {
+            Long verifiedAt = cache.get(key);
+            if (verifiedAt != null) {
+                if (!isStale(issuer, verifiedAt)) {
+                    return new ResponseData<>(Boolean.TRUE, ErrorCode.SUCCESS);
+                }
+                staleCount.incrementAndGet();
+                cache.remove(key);
+            }
+        }
+
+        // taken before the verification, a change during the call makes the result stale.
+        long verifiedAt = System.currentTimeMillis();
+        ResponseData<Boolean> response = verifier.get();
+        if (response.getErrorCode().intValue() == ErrorCode.SUCCESS.getCode()
+            && Boolean.TRUE.equals(response.getResult())) {
+            long ttl = ttlMillis == 0L ? Long.MAX_VALUE : ttlMillis;
+            if (expirationDate != null) {
+                ttl = Math.min(ttl, expirationDate * 1000L - System.currentTimeMillis());
+            }
+            if (ttl > 0L) {
+                cache.put(key, verifiedAt, ttl == Long.MAX_VALUE ? 0L : ttl);
+            }
+        }
+        return response;
+    }
+
+    /**
+     * get the metrics of the cache, including bypassed lookups and stale entries.
+     *
+     * @return returns the metrics
+     */
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = cache.getMetrics();
+        metrics.put("bypassCount", bypassCount.get());
+        metrics.put("staleCount", staleCount.get());
+        metrics.put("uncacheableCount", uncacheableCount.get());
+        return metrics;
+    }
+
+    /**
+     * called when the document of the issuer changes, the verifications made before are
+     * not served any more.
+     *
+     * @param issuer the weId of the issuer
+     */
+    public void onIssuerChanged(String issuer) {
+        issuerChanges.put(issuer, System.currentTimeMillis());
+    }
+
+    private boolean isStale(String issuer, long verifiedAt) {
+        Long changedAt = issuerChanges.get(issuer);
+        return changedAt != null && verifiedAt <= changedAt;
+    }
+
+    /**
+     * get the version of the issuer document, null if the document can not be resolved.
+     */
+    private String getDocumentVersion(String issuer) {
+        if (issuer == null) {
+            return null;
+        }
+        try {
+            ResponseData<WeIdDocument> response = documentCache.getWeIdDocument(issuer);
+            WeIdDocument document = response.getResult();
+            if (response.getErrorCode().intValue() != ErrorCode.SUCCESS.getCode()
+                || document == null) {
+                return null;
+            }
+            return document.getUpdated() + "";
+        } catch (Exception e) {
+            logger.error("get the issuer document error, issuer={}", issuer, e);
+            return null;
+        }
+    }
+
+    private static final class Holder {
+
+        private static final VerificationCache INSTANCE = new VerificationCache(
+            WeIdDocumentCache.getInstance(),
+            Integer.parseInt(PropertiesUtils.getProperty("weid.verifyCache.maxSize", "10000")),
+            Long.parseLong(PropertiesUtils.getProperty("weid.verifyCache.ttlSeconds", "600"))
+                * 1000L);
+    }
+}
@@ -0,0 +1,426 @@
+/*
+ *       Copyright© (2019) WeBank Co., Ltd.
+ *
+ *       This file is part of weidentity-sample.
+ *
+ *       weidentity-sample is free software: you can redistribute it and/or modify
+ *       it under the terms of the GNU Lesser General Public License as published by
+ *       the Free Software Foundation, either version 3 of the License, or
+ *       (at your option) any later version.
+ *
+ *       weidentity-sample is distributed in the hope that it will be useful,
+ *       but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *       MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *       GNU Lesser General Public License for more details.
+ *
+ *       You should have received a copy of the GNU Lesser General Public License
+ *       along with weidentity-sample.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.webank.weid.demo.common.util;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.webank.weid.constant.ErrorCode;
+import com.webank.weid.protocol.base.Credential;
+import com.webank.weid.protocol.base.CredentialPojo;
+import com.webank.weid.protocol.response.ResponseData;
+import com.webank.weid.util.CredentialPojoUtils;
+import com.webank.weid.util.CredentialUtils;
+import com.webank.weid.util.DataToolUtils;
+import com.webank.weid.util.WeIdUtils;
+
+/**
+ * runs the cheap local checks of a credential before the verification of the SDK, in the
+ * order of their cost: the structure, the expiration, the claim against the cached CPT
+ * schema, the signature against the cached issuer document, and at last the SDK call
+ * which reads the chain. the first failing stage rejects the credential, so expired or
+ * malformed credentials never reach the chain nor the signature recovery. the issuer keys
+ * and authority status come from the in-memory issuer map.
+ *
+ * <p>every stage counts its passes and rejections and accumulates its latency.
+ *
+ * @author agent
+ */
+public class VerificationPipeline {
+
+    private static final Logger logger = LoggerFactory.getLogger(VerificationPipeline.class);
+
+    /**
+     * the salt of a claim field which is not disclosed.
+     */
+    private static final String NOT_DISCLOSED_SALT = "0";
+
+    /**
+     * the stages in the order they run.
+     */
+    public enum Stage {
+        STRUCTURE, EXPIRATION, SCHEMA, SIGNATURE, CHAIN
+    }
+
+    private final CptSchemaCache schemaCache;
+
+    private final IssuerCache issuerCache;
+
+    /**
+     * whether to check the signature locally before the SDK call.
+     */
+    private final boolean localSignature;
+
+    /**
+     * whether to reject the credentials whose issuer is not an authority issuer.
+     */
+    private final boolean requireAuthorityIssuer;
+
+    private final Map<Stage, StageMetrics> metrics = new EnumMap<Stage, StageMetrics>(Stage.class);
+
+    /**
+     * constructor.
+     *
+     * @param schemaCache the cache of the CPT schemas
+     * @param issuerCache the public keys and authority status of the issuers
+     * @param localSignature whether to check the signature locally before the SDK call
+     * @param requireAuthorityIssuer whether to reject the issuers not authority issuers
+     */
+    public VerificationPipeline(
+        CptSchemaCache schemaCache,
+        IssuerCache issuerCache,
+        boolean localSignature,
+        boolean requireAuthorityIssuer) {
+
+        this.schemaCache = schemaCache;
+        this.issuerCache = issuerCache;
+        this.localSignature = localSignature;
+        this.requireAuthorityIssuer = requireAuthorityIssuer;
+        for (Stage stage : Stage.values()) {
+            metrics.put(stage, new StageMetrics());
+        }
+        logger.info("verification pipeline init, localSignature={}, requireAuthorityIssuer={}",
+            localSignature, requireAuthorityIssuer);
+    }
+
+    /**
+     * get the shared pipeline of the process, configured by weid.verifyPipeline.*.
+     *
+     * @return returns the verification pipeline
+     */
+    public static VerificationPipeline getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * verify the credential.
+     *
+     * @param credential the credential
+     * @param chainVerifier the verification of the SDK, called once the local stages pass
+     * @return returns the result of the first failing stage, or of the SDK
+     */
+    public ResponseData<Boolean> verify(
+        Credential credential,
+        Supplier<ResponseData<Boolean>> chainVerifier) {
+
+        if (credential == null) {
+            return reject(Stage.STRUCTURE, System.nanoTime(), ErrorCode.ILLEGAL_INPUT);
+        }
+        return verify(
+            new Subject(
+                credential.getId(),
+                credential.getCptId(),
+                credential.getIssuer(),
+                credential.getIssuer(),
+                credential.getIssuanceDate(),
+                credential.getExpirationDate(),
+                credential.getClaim(),
+                null,
+                credential.getSignature(),
+                () -> CredentialUtils.getCredentialThumbprintWithoutSig(credential, null)),
+            chainVerifier);
+    }
+
+    /**
+     * verify the credential against the issuer.
+     *
+     * @param issuerWeId the weId of the issuer
+     * @param credential the credential
+     * @param chainVerifier the verification of the SDK, called once the local stages pass
+     * @return returns the result of the first failing stage, or of the SDK
+     */
+    public ResponseData<Boolean> verify(
+        String issuerWeId,
+        CredentialPojo credential,
+        Supplier<ResponseData<Boolean>> chainVerifier) {
+
+        if (credential == null) {
+            return reject(Stage.STRUCTURE, System.nanoTime(), ErrorCode.ILLEGAL_INPUT);
+        }
+        return verify(
+            new Subject(
+                credential.getId(),
+                credential.getCptId(),
+                credential.getIssuer(),
+                issuerWeId,
+                credential.getIssuanceDate(),
+                credential.getExpirationDate(),
+                credential.getClaim(),
+                credential.getSalt(),
+                credential.getSignature(),
+                () -> CredentialPojoUtils.getCredentialThumbprintWithoutSig(
+                    credential, credential.getSalt(), null)),
+            chainVerifier);
+    }
+
+    /**
+     * get the passes, rejections and latency of every stage.
+     *
+     * @return returns the metrics
+     */
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> result = new LinkedHashMap<String, Object>();
+        for (Map.Entry<Stage, StageMetrics> entry : metrics.entrySet()) {
+            result.put(entry.getKey().name().toLowerCase(), entry.getValue().toMap());
+        }
+        return result;
+    }
+
+    private ResponseData<Boolean> verify(
+        Subject subject,
+        Supplier<ResponseData<Boolean>> chainVerifier) {
+
+        long start = System.nanoTime();
+        ErrorCode errorCode = checkStructure(subject);
+        if (errorCode != ErrorCode.SUCCESS) {
+            return reject(Stage.STRUCTURE, start, errorCode);
+        }
+        start = pass(Stage.STRUCTURE, start);
+
+        if (subject.expirationDate * 1000L < System.currentTimeMillis()) {
+            return reject(Stage.EXPIRATION, start, ErrorCode.CREDENTIAL_EXPIRED);
+        }
+        start = pass(Stage.EXPIRATION, start);
+
+        // the undisclosed fields are replaced by their hashes and do not match the schema.
+        if (!hasUndisclosedField(subject.salt)) {
+            errorCode = schemaCache.validateClaim(subject.cptId, subject.claim);
+            if (errorCode != ErrorCode.SUCCESS) {
+                return reject(Stage.SCHEMA, start, errorCode);
+            }
+        }
+        start = pass(Stage.SCHEMA, start);
+
+        if (localSignature || requireAuthorityIssuer) {
+            errorCode = checkSignature(subject);
+            if (errorCode != ErrorCode.SUCCESS) {
+                return reject(Stage.SIGNATURE, start, errorCode);
+            }
+        }
+        start = pass(Stage.SIGNATURE, start);
+
+        ResponseData<Boolean> response = chainVerifier.get();
+        if (response.getErrorCode().intValue() == ErrorCode.SUCCESS.getCode()
+            && Boolean.TRUE.equals(response.getResult())) {
+            pass(Stage.CHAIN, start);
+        } else {
+            metrics.get(Stage.CHAIN).record(false, System.nanoTime() - start);
+        }
+        return response;
+    }
+
+    private ErrorCode checkStructure(Subject subject) {
+        if (StringUtils.isBlank(subject.id) || StringUtils.isBlank(subject.signature)) {
+            return ErrorCode.ILLEGAL_INPUT;
+        }
+        if (subject.cptId == null || subject.cptId <= 0) {
+            return ErrorCode.CREDENTIAL_CPTID_NOTEXISTS;
+        }
+        if (!WeIdUtils.isWeIdValid(subject.issuer) || !WeIdUtils.isWeIdValid(subject.signer)) {
+            return ErrorCode.CREDENTIAL_ISSUER_INVALID;
+        }
+        if (subject.issuanceDate == null
+            || subject.expirationDate == null
+            || subject.expirationDate <= subject.issuanceDate) {
+            return ErrorCode.CREDENTIAL_EXPIRE_DATE_ILLEGAL;
+        }
+        if (subject.claim == null || subject.claim.isEmpty()) {
+            return ErrorCode.CREDENTIAL_CLAIM_NOT_EXISTS;
+        }
+        return ErrorCode.SUCCESS;
+    }
+
+    /**
+     * check the authority status of the signer and the signature against its cached keys,
+     * a mismatch is checked once more against the keys on the chain in case the issuer
+     * added a key recently.
+     */
+    private ErrorCode checkSignature(Subject subject) {
+        ResponseData<IssuerCache.Issuer> response = issuerCache.getIssuer(subject.signer);
+        if (response.getErrorCode().intValue() != ErrorCode.SUCCESS.getCode()
+            || response.getResult() == null) {
+            return toErrorCode(response);
+        }
+        if (requireAuthorityIssuer && !response.getResult().isAuthorityIssuer()) {
+            return ErrorCode.AUTHORITY_ISSUER_CONTRACT_ERROR_NOT_EXISTS;
+        }
+        if (!localSignature) {
+            return ErrorCode.SUCCESS;
+        }
+        String rawData;
+        try {
+            rawData = subject.rawData.get();
+        } catch (Exception e) {
+            logger.error("get the thumbprint of the credential error, id={}", subject.id, e);
+            return ErrorCode.CREDENTIAL_ERROR;
+        }
+        ErrorCode errorCode = DataToolUtils.verifySignatureFromWeId(
+            rawData, subject.signature, response.getResult().getDocument());
+        if (errorCode == ErrorCode.CREDENTIAL_SIGNATURE_BROKEN) {
+            response = issuerCache.getIssuer(subject.signer, true);
+            if (response.getErrorCode().intValue() != ErrorCode.SUCCESS.getCode()
+                || response.getResult() == null) {
+                return toErrorCode(response);
+            }
+            errorCode = DataToolUtils.verifySignatureFromWeId(
+                rawData, subject.signature, response.getResult().getDocument());
+        }
+        return errorCode;
+    }
+
+    private static ErrorCode toErrorCode(ResponseData<?> response) {
+        return response.getErrorCode().intValue() == ErrorCode.WEID_DOES_NOT_EXIST.getCode()
+            ? ErrorCode.CREDENTIAL_ISSUER_INVALID : ErrorCode.CREDENTIAL_PUBLIC_KEY_NOT_EXISTS;
+    }
+
+    private static boolean hasUndisclosedField(Object salt) {
+        if (salt instanceof Map) {
+            for (Object value : ((Map<?, ?>) salt).values()) {
+                if (hasUndisclosedField(value)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        if (salt instanceof Iterable) {
+            for (Object value : (Iterable<?>) salt) {
+                if (hasUndisclosedField(value)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return salt != null && NOT_DISCLOSED_SALT.equals(salt.toString());
+    }
+
+    private long pass(Stage stage, long start) {
+        long now = System.nanoTime();
+        metrics.get(stage).record(true, now - start);
+        return now;
+    }
+
+    private ResponseData<Boolean> reject(Stage stage, long start, ErrorCode errorCode) {
+        metrics.get(stage).record(false, System.nanoTime() - start);
+        return new ResponseData<>(Boolean.FALSE, errorCode);
+    }
+
+    /**
+     * the fields of a credential the local stages check.
+     */
+    private static final class Subject {
+
+        private final String id;
+
+        private final Integer cptId;
+
+        private final String issuer;
+
+        /**
+         * the weId whose document verifies the signature.
+         */
+        private final String signer;
+
+        private final Long issuanceDate;
+
+        private final Long expirationDate;
+
+        private final Map<String, Object> claim;
+
+        private final Map<String, Object> salt;
+
+        private final String signature;
+
+        /**
+         * the signed thumbprint, computed only when the signature stage runs.
+         */
+        private final Supplier<String> rawData;
+
+        private Subject(
+            String id,
+            Integer cptId,
+            String issuer,
+            String signer,
+            Long issuanceDate,
+            Long expirationDate,
+            Map<String, Object> claim,
+            Map<String, Object> salt,
+            String signature,
+            Supplier<String> rawData) {
+
+            this.id = id;
+            this.cptId = cptId;
+            this.issuer = issuer;
+            this.signer = signer;
+            this.issuanceDate = issuanceDate;
+            this.expirationDate = expirationDate;
+            this.claim = claim;
+            this.salt = salt;
+            this.signature = signature;
+            this.rawData = rawData;
+        }
+    }
+
+    /**
+     * the counters and the accumulated latency of one stage.
+     */
+    private static final class StageMetrics {
+
+        private final LongAdder passCount = new LongAdder();
+
+        private final LongAdder rejectCount = new LongAdder();
+
+        private final LongAdder totalNanos = new LongAdder();
+
+        private void record(boolean passed, long nanos) {
+            (passed ? passCount : rejectCount).increment();
+            totalNanos.add(nanos);
+        }
+
+        private Map<String, Object> toMap() {
+            long passes = passCount.sum();
+            long rejects = rejectCount.sum();
+            long count = passes + rejects;
+            Map<String, Object> map = new LinkedHashMap<String, Object>();
+            map.put("passCount", passes);
+            map.put("rejectCount", rejects);
+            map.put("totalMillis", totalNanos.sum() / 1000000L);
+            map.put("avgMicros", count == 0 ? 0D : totalNanos.sum() / 1000D / count);
+            return map;
+        }
+    }
+
+    private static final class Holder {
+
+        private static final VerificationPipeline INSTANCE = new VerificationPipeline(
+            CptSchemaCache.getInstance(),
+            IssuerCache.getInstance(),
+            Boolean.parseBoolean(
+                PropertiesUtils.getProperty("weid.verifyPipeline.localSignature", "true")),
+            Boolean.parseBoolean(PropertiesUtils.getProperty(
+                "weid.verifyPipeline.requireAuthorityIssuer", "false")));
+    }
+}
@@ -0,0 +1,353 @@
+/*
+ *       Copyright© (2019) WeBank Co., Ltd.
+ *
+ *       This file is part of weidentity-sample.
+ *
+ *       weidentity-sample is free software: you can redistribute it and/or modify
+ *       it under the terms of the GNU Lesser General Public License as published by
+ *       the Free Software Foundation, either version 3 of the License, or
+ *       (at your option) any later version.
+ *
+ *       weidentity-sample is distributed in the hope that it will be useful,
+ *       but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *       MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *       GNU Lesser General Public License for more details.
+ *
+ *       You should have received a copy of the GNU Lesser General Public License
+ *       along with weidentity-sample.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.webank.weid.demo.common.util;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.webank.weid.constant.ErrorCode;
+import com.webank.weid.protocol.base.WeIdDocument;
+import com.webank.weid.protocol.response.ResponseData;
+import com.webank.weid.rpc.WeIdService;
+import com.webank.weid.service.impl.WeIdServiceImpl;
+
+/**
+ * cache of the weId documents resolved from the chain. a document only changes by
+ * setPublicKey, setService and setAuthentication, so the callers of those report the
+ * change by {@link #onDocumentChanged(String)} once the transaction succeeds, and the
+ * document is dropped at once and reloaded in the background. an entry read near its
+ * expiration is reloaded in the background too, so hot documents do not expire on the
+ * request path.
+ *
+ * <p>concurrent lookups of the same weId share one chain call, and a weId that does not
+ * exist is remembered for a short time so repeated bad lookups do not reach the chain.
+ *
+ * @author agent
+ */
+public class WeIdDocumentCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(WeIdDocumentCache.class);
+
+    private final WeIdService weIdService;
+
+    private final TtlCache<String, CachedDocument> cache;
+
+    /**
+     * the weIds that do not exist, with a short time to live.
+     */
+    private final TtlCache<String, ResponseData<WeIdDocument>> negativeCache;
+
+    /**
+     * the chain calls in flight, shared by the concurrent lookups of the same weId.
+     */
+    private final Map<String, CompletableFuture<ResponseData<WeIdDocument>>> loading =
+        new ConcurrentHashMap<String, CompletableFuture<ResponseData<WeIdDocument>>>();
+
+    private final long ttlMillis;
+
+    /**
+     * reload an entry read within this time before its expiration, 0 disables.
+     */
+    private final long refreshAheadMillis;
+
+    /**
+     * whether to reload or only drop the document when it is changed by us.
+     */
+    private final boolean refreshOnWrite;
+
+    private final ThreadPoolExecutor refreshExecutor;
+
+    /**
+     * the weIds being reloaded in the background.
+     */
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+
+    /**
+     * notified with the weId when a document is changed by us.
+     */
+    private final List<Consumer<String>> changeListeners =
+        new CopyOnWriteArrayList<Consumer<String>>();
+
+    private final AtomicLong bypassCount = new AtomicLong();
+
+    private final AtomicLong refreshAheadCount = new AtomicLong();
+
+    private final AtomicLong coalescedCount = new AtomicLong();
+
+    /**
+     * constructor.
+     *
+     * @param weIdService the service resolving documents from the chain
+     * @param maxSize the maximum number of documents, 0 disables the cache
+     * @param ttlMillis the time to live of a document in milliseconds, 0 means never expire
+     * @param refreshAheadMillis reload a document read within this time before expiration
+     * @param refreshOnWrite whether to reload or only drop a document changed by us
+     * @param negativeTtlMillis the time to remember a weId that does not exist, 0 disables
+     */
+    public WeIdDocumentCache(
+        WeIdService weIdService,
+        int maxSize,
+        long ttlMillis,
+        long refreshAheadMillis,
+        boolean refreshOnWrite,
+        long negativeTtlMillis) {
+
+        this.weIdService = weIdService;
+        this.cache = new TtlCache<String, CachedDocument>(maxSize, ttlMillis);
+        this.negativeCache = new TtlCache<String, ResponseData<WeIdDocument>>(
+            negativeTtlMillis > 0 ? maxSize : 0, negativeTtlMillis);
+        this.ttlMillis = ttlMillis;
+        this.refreshAheadMillis = ttlMillis > 0 ? Math.max(0L, refreshAheadMillis) : 0L;
+        this.refreshOnWrite = refreshOnWrite;
+        this.refreshExecutor = new ThreadPoolExecutor(
+            1,
+            1,
+            0L,
+            TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<Runnable>(1000),
+            new NamedThreadFactory("weid-document-refresh"));
+        logger.info("weId document cache init, maxSize={}, ttlMillis={}, refreshAheadMillis={}",
+            maxSize, ttlMillis, this.refreshAheadMillis);
+    }
+
+    /**
+     * get the shared cache of the process, configured by weid.docCache.*.
+     *
+     * @return returns the weId document cache
+     */
+    public static WeIdDocumentCache getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * get the weId document, from the cache when present.
+     *
+     * @param weId the weId
+     * @return returns the weId document
+     */
+    public ResponseData<WeIdDocument> getWeIdDocument(String weId) {
+        return getWeIdDocument(weId, false);
+    }
+
+    /**
+     * get the weId document.
+     *
+     * @param weId the weId
+     * @param bypassCache resolve from the chain and update the cache
+     * @return returns the weId document
+     */
+    public ResponseData<WeIdDocument> getWeIdDocument(String weId, boolean bypassCache) {
+        if (bypassCache) {
+            bypassCount.incrementAndGet();
+        } else {
+            CachedDocument cached = cache.get(weId);
+            if (cached != null) {
+                refreshAhead(weId, cached);
+                return new ResponseData<>(cached.document, ErrorCode.SUCCESS);
+            }
+            ResponseData<WeIdDocument> notExists = negativeCache.get(weId);
+            if (notExists != null) {
+                return new ResponseData<>(
+                    null, notExists.getErrorCode(), notExists.getErrorMessage());
+            }
+        }
+        return load(weId);
+    }
+
+    /**
+     * called after our own transaction changing the document succeeds, a cached document
+     * is dropped and, with refreshOnWrite, reloaded by the refresh thread. the caller's
+     * transaction has committed, so a failing listener is only logged.
+     *
+     * @param weId the weId
+     */
+    public void onDocumentChanged(String weId) {
+        for (Consumer<String> listener : changeListeners) {
+            try {
+                listener.accept(weId);
+            } catch (Exception e) {
+                logger.error("weId document change listener error, weId={}", weId, e);
+            }
+        }
+        negativeCache.remove(weId);
+        // the chain calls in flight may have read the old document, detach them.
+        loading.remove(weId);
+        if (!cache.containsKey(weId)) {
+            return;
+        }
+        cache.remove(weId);
+        if (refreshOnWrite) {
+            refreshChanged(weId);
+        }
+    }
+
+    /**
+     * add a listener notified before a document changed by us is reloaded or dropped.
+     *
+     * @param listener receives the weId
+     */
+    public void addChangeListener(Consumer<String> listener) {
+        changeListeners.add(listener);
+    }
+
+    /**
+     * drop the document of the weId.
+     *
+     * @param weId the weId
+     */
+    public void invalidate(String weId) {
+        cache.remove(weId);
+        negativeCache.remove(weId);
+    }
+
+    /**
+     * get the metrics of the cache, including bypassed and refreshed ahead lookups.
+     *
+     * @return returns the metrics
+     */
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = cache.getMetrics();
+        metrics.put("bypassCount", bypassCount.get());
+        metrics.put("refreshAheadCount", refreshAheadCount.get());
+        metrics.put("coalescedCount", coalescedCount.get());
+        metrics.put("negative", negativeCache.getMetrics());
+        return metrics;
+    }
+
+    /**
+     * resolve the document from the chain, or wait for the chain call of the same weId in
+     * flight. the result is cached unless the document is changed during the call.
+     */
+    private ResponseData<WeIdDocument> load(String weId) {
+        CompletableFuture<ResponseData<WeIdDocument>> future =
+            new CompletableFuture<ResponseData<WeIdDocument>>();
+        CompletableFuture<ResponseData<WeIdDocument>> inFlight =
+            loading.putIfAbsent(weId, future);
+        if (inFlight != null) {
+            coalescedCount.incrementAndGet();
+            try {
+                return inFlight.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException
+                    ? (RuntimeException) e.getCause() : e;
+            }
+        }
+        try {
+            ResponseData<WeIdDocument> response = weIdService.getWeIdDocument(weId);
+            if (loading.get(weId) == future) {
+                if (response.getErrorCode().intValue() == ErrorCode.SUCCESS.getCode()
+                    && null != response.getResult()) {
+                    cache.put(weId, new CachedDocument(response.getResult()));
+                } else if (response.getErrorCode().intValue()
+                    == ErrorCode.WEID_DOES_NOT_EXIST.getCode()) {
+                    negativeCache.put(weId, response);
+                }
+            }
+            future.complete(response);
+            return response;
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(weId, future);
+        }
+    }
+
+    private void refreshChanged(String weId) {
+        try {
+            refreshExecutor.execute(() -> {
+                try {
+                    load(weId);
+                } catch (Exception e) {
+                    logger.error("reload changed weId document error, weId={}", weId, e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // the document is loaded on the request path.
+            logger.warn("reload changed weId document rejected, weId={}", weId);
+        }
+    }
+
+    private void refreshAhead(String weId, CachedDocument cached) {
+        if (refreshAheadMillis == 0
+            || System.currentTimeMillis() - cached.loadTime < ttlMillis - refreshAheadMillis
+            || !refreshing.add(weId)) {
+            return;
+        }
+        try {
+            refreshExecutor.execute(() -> {
+                try {
+                    refreshAheadCount.incrementAndGet();
+                    load(weId);
+                } catch (Exception e) {
+                    logger.error("refresh weId document error, weId={}", weId, e);
+                } finally {
+                    refreshing.remove(weId);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // the entry is loaded on the request path once it expires.
+            refreshing.remove(weId);
+        }
+    }
+
+    /**
+     * cached document with its load time.
+     */
+    private static final class CachedDocument {
+
+        private final WeIdDocument document;
+
+        private final long loadTime = System.currentTimeMillis();
+
+        private CachedDocument(WeIdDocument document) {
+            this.document = document;
+        }
+    }
+
+    private static final class Holder {
+
+        private static final WeIdDocumentCache INSTANCE = new WeIdDocumentCache(
+            new WeIdServiceImpl(),
+            Integer.parseInt(PropertiesUtils.getProperty("weid.docCache.maxSize", "10000")),
+            Long.parseLong(PropertiesUtils.getProperty("weid.docCache.ttlSeconds", "300"))
+                * 1000L,
+            Long.parseLong(PropertiesUtils.getProperty("weid.docCache.refreshAheadSeconds", "30"))
+                * 1000L,
+            Boolean.parseBoolean(
+                PropertiesUtils.getProperty("weid.docCache.refreshOnWrite", "true")),
+            Long.parseLong(PropertiesUtils.getProperty("weid.docCache.negativeTtlSeconds", "10"))
+                * 1000L);
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ *       Copyright© (2019) WeBank Co., Ltd.
+ *
+ *       This file is part of weidentity-sample.
+ *
+ *       weidentity-sample is free software: you can redistribute it and/or modify
+ *       it under the terms of the GNU Lesser General Public License as published by
+ *       the Free Software Foundation, either version 3 of the License, or
+ *       (at your option) any later version.
+ *
+ *       weidentity-sample is distributed in the hope that it will be useful,
+ *       but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *       MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *       GNU Lesser General Public License for more details.
+ *
+ *       You should have received a copy of the GNU Lesser General Public License
+ *       along with weidentity-sample.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.webank.weid.demo.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.webank.weid.demo.common.util.Bulkhead;
+
+/**
+ * bulkheads of the non-blocking interfaces: chain reads, chain writes and CPU-bound
+ * signing and verifying.
+ * @author agent
+ *
+ */
+@Configuration
+public class BulkheadConfig {
+
+    @Value("${weid.bulkhead.chainRead.threads:64}")
+    private int chainReadThreads;
+
+    @Value("${weid.bulkhead.chainRead.queueCapacity:2000}")
+    private int chainReadQueueCapacity;
+
+    @Value("${weid.bulkhead.chainRead.timeoutMillis:30000}")
+    private long chainReadTimeoutMillis;
+
+    @Value("${weid.bulkhead.chainWrite.threads:32}")
+    private int chainWriteThreads;
+
+    @Value("${weid.bulkhead.chainWrite.queueCapacity:1000}")
+    private int chainWriteQueueCapacity;
+
+    @Value("${weid.bulkhead.chainWrite.timeoutMillis:60000}")
+    private long chainWriteTimeoutMillis;
+
+    /**
+     * 0 means the number of processors.
+     */
+    @Value("${weid.bulkhead.cpu.threads:0}")
+    private int cpuThreads;
+
+    @Value("${weid.bulkhead.cpu.queueCapacity:5000}")
+    private int cpuQueueCapacity;
+
+    @Value("${weid.bulkhead.cpu.timeoutMillis:30000}")
+    private long cpuTimeoutMillis;
+
+    /**
+     * the bulkhead of chain reads, such as querying evidence.
+     * @return the bulkhead
+     */
+    @Bean
+    public Bulkhead chainReadBulkhead() {
+        return new Bulkhead(
+            "chainRead", chainReadThreads, chainReadQueueCapacity, chainReadTimeoutMillis);
+    }
+
+    /**
+     * the bulkhead of chain writes, which wait for the transaction receipts.
+     * @return the bulkhead
+     */
+    @Bean
+    public Bulkhead chainWriteBulkhead() {
+        return new Bulkhead(
+            "chainWrite", chainWriteThreads, chainWriteQueueCapacity, chainWriteTimeoutMillis);
+    }
+
+    /**
+     * the bulkhead of CPU-bound signing and verifying.
+     * @return the bulkhead
+     */
+    @Bean
+    public Bulkhead cpuBulkhead() {
+        int threads = cpuThreads > 0 ? cpuThreads : Runtime.getRuntime().availableProcessors();
+        return new Bulkhead("cpu", threads, cpuQueueCapacity, cpuTimeoutMillis);
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ *       Copyright© (2019) WeBank Co., Ltd.
+ *
+ *       This file is part of weidentity-sample.
+ *
+ *       weidentity-sample is free software: you can redistribute it and/or modify
+ *       it under the terms of the GNU Lesser General Public License as published by
+ *       the Free Software Foundation, either version 3 of the License, or
+ *       (at your option) any later version.
+ *
+ *       weidentity-sample is distributed in the hope that it will be useful,
+ *       but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *       MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *       GNU Lesser General Public License for more details.
+ *
+ *       You should have received a copy of the GNU Lesser General Public License
+ *       along with weidentity-sample.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.webank.weid.demo.config;
+
+import java.util.List;
+
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.event.EventListener;
+
+import com.webank.weid.demo.common.util.CptSchemaCache;
+import com.webank.weid.demo.common.util.IssuerCache;
+import com.webank.weid.demo.common.util.PolicyCache;
+import com.webank.weid.demo.common.util.PropertiesUtils;
+import com.webank.weid.demo.common.util.VerificationCache;
+import com.webank.weid.demo.common.util.WeIdDocumentCache;
+
+/**
+ * cache configuration, shares the caches with the command mode.
+ * @author agent
+ *
+ */
+@Configuration
+public class CacheConfig {
+
+    /**
+     * the cache of weId documents, configured by weid.docCache.*.
+     * @return the weId document cache
+     */
+    @Bean
+    public WeIdDocumentCache weIdDocumentCache() {
+        return WeIdDocumentCache.getInstance();
+    }
+
+    /**
+     * the cache of compiled CPT schemas, configured by weid.cptCache.*.
+     * @return the cpt schema cache
+     */
+    @Bean
+    public CptSchemaCache cptSchemaCache() {
+        return CptSchemaCache.getInstance();
+    }
+
+    /**
+     * the cache of successful credential verifications, configured by weid.verifyCache.*.
+     * @return the verification cache
+     */
+    @Bean
+    public VerificationCache verificationCache() {
+        return VerificationCache.getInstance();
+    }
+
+    /**
+     * the map of issuer public keys and authority status, configured by weid.issuerCache.*.
+     * @return the issuer cache
+     */
+    @Bean
+    public IssuerCache issuerCache() {
+        return IssuerCache.getInstance();
+    }
+
+    /**
+     * the cache of parsed presentation policies, configured by weid.policyCache.*.
+     * @return the policy cache
+     */
+    @Bean
+    public PolicyCache policyCache() {
+        return PolicyCache.getInstance();
+    }
+
+    /**
+     * preload the schemas of weid.cptCache.warmupCptIds once the application is ready.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmupCptSchemaCache() {
+        List<Integer> cptIds = CptSchemaCache.getWarmupCptIds();
+        if (!cptIds.isEmpty()) {
+            CptSchemaCache.getInstance().warmup(cptIds);
+        }
+    }
+
+    /**
+     * preload the authority issuers and weid.issuerCache.preloadWeIds in the background once
+     * the application is ready.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void preloadIssuerCache() {
+        IssuerCache.getInstance().preload(
+            IssuerCache.getPreloadWeIds(),
+            Boolean.parseBoolean(
+                PropertiesUtils.getProperty("weid.issuerCache.preloadAuthorityIssuers", "true")));
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ *       Copyright© (2019) WeBank Co., Ltd.
+ *
+ *       This file is part of weidentity-sample.
+ *
+ *       weidentity-sample is free software: you can redistribute it and/or modify
+ *       it under the terms of the GNU Lesser General Public License as published by
+ *       the Free Software Foundation, either version 3 of the License, or
+ *       (at your option) any later version.
+ *
+ *       weidentity-sample is distributed in the hope that it will be useful,
+ *       but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *       MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *       GNU Lesser General Public License for more details.
+ *
+ *       You should have received a copy of the GNU Lesser General Public License
+ *       along with weidentity-sample.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.webank.weid.demo.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.webank.weid.demo.common.util.KeyPairPool;
+
+/**
+ * key pair pool configuration, the pool is shut down with the context.
+ * @author agent
+ *
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "weid.keyPairPool", name = "enable", havingValue = "true")
+public class KeyPairPoolConfig {
+
+    @Value("${weid.keyPairPool.lowWatermark:100}")
+    private int lowWatermark;
+
+    @Value("${weid.keyPairPool.highWatermark:1000}")
+    private int highWatermark;
+
+    @Value("${weid.keyPairPool.producerThreads:1}")
+    private int producerThreads;
+
+    /**
+     * the pool of pre-generated key pairs for weId creation.
+     * @return the key pair pool
+     */
+    @Bean
+    public KeyPairPool keyPairPool() {
+        return new KeyPairPool(lowWatermark, highWatermark, producerThreads);
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ *       Copyright© (2019) WeBank Co., Ltd.
+ *
+ *       This file is part of weidentity-sample.
+ *
+ *       weidentity-sample is free software: you can redistribute it and/or modify
+ *       it under the terms of the GNU Lesser General Public License as published by
+ *       the Free Software Foundation, either version 3 of the License, or
+ *       (at your option) any later version.
+ *
+ *       weidentity-sample is distributed in the hope that it will be useful,
+ *       but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *       MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *       GNU Lesser General Public License for more details.
+ *
+ *       You should have received a copy of the GNU Lesser General Public License
+ *       along with weidentity-sample.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.webank.weid.demo.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.webank.weid.demo.common.keystore.KeyStore;
+import com.webank.weid.demo.common.util.PrivateKeyUtil;
+
+/**
+ * keystore configuration, shares the keystore of weid.keys.dir with the command mode.
+ * @author agent
+ *
+ */
+@Configuration
+public class KeyStoreConfig {
+
+    /**
+     * the keystore of weId private keys, selected by weid.keys.store.
+     * @return the keystore
+     */
+    @Bean
+    public KeyStore keyStore() {
+        return PrivateKeyUtil.getKeyStore();
+    }
+}
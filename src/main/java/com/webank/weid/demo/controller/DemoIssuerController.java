@@ -20,24 +20,36 @@
 package com.webank.weid.demo.controller;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
+import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import com.webank.weid.constant.ErrorCode;
+import com.webank.weid.demo.common.dto.BatchItem;
+import com.webank.weid.demo.common.keystore.KeyStore;
 import com.webank.weid.demo.common.model.CptModel;
 import com.webank.weid.demo.common.model.CreateCredentialModel;
-import com.webank.weid.demo.common.util.PrivateKeyUtil;
+import com.webank.weid.demo.common.model.CreateCredentialsModel;
+import com.webank.weid.demo.common.util.Bulkhead;
+import com.webank.weid.demo.common.util.NdjsonUtil;
 import com.webank.weid.demo.service.DemoService;
+import com.webank.weid.demo.service.JobService;
 import com.webank.weid.protocol.base.CptBaseInfo;
 import com.webank.weid.protocol.base.CredentialWrapper;
 import com.webank.weid.protocol.response.CreateWeIdDataResult;
@@ -60,6 +72,20 @@ public class DemoIssuerController {
     @Autowired
     private DemoService demoService;
 
+    @Autowired
+    private KeyStore keyStore;
+
+    @Autowired
+    private JobService jobService;
+
+    @Autowired
+    @Qualifier("chainWriteBulkhead")
+    private Bulkhead chainWriteBulkhead;
+
+    @Autowired
+    @Qualifier("cpuBulkhead")
+    private Bulkhead cpuBulkhead;
+
     /**
     *  发行方 自己创建 WeId接口
      * create weId without parameters and call the settings property method.
@@ -72,6 +98,55 @@ public class DemoIssuerController {
         return demoService.createWeId();
     }
 
+    /**
+     * create weId asynchronously, the result is queried by the job id.
+     *
+     * @return returns the job id
+     */
+    @ApiOperation(value = "异步创建WeId")
+    @PostMapping("/step1/issuer/createWeIdAsync")
+    public ResponseData<String> createWeIdAsync() {
+        return jobService.submit("createWeId", demoService::createWeId);
+    }
+
+    /**
+     * institutional publication of CPT asynchronously, the result is queried by the job id.
+     *
+     * @return returns the job id
+     */
+    @ApiOperation(value = "异步注册CPT")
+    @PostMapping("/step2/registCptAsync")
+    public ResponseData<String> registCptAsync(
+        @ApiParam(name = "cptModel", value = "CPT模板")
+        @RequestBody CptModel cptModel) {
+        return jobService.submit("registCpt", () -> registCpt(cptModel));
+    }
+
+    /**
+     * create weIds in batch, the results are streamed back as newline delimited JSON,
+     * one ResponseData per line in completion order.
+     *
+     * @param count the number of weIds
+     * @return returns weIds and public keys
+     */
+    @ApiOperation(value = "批量创建WeId")
+    @PostMapping(
+        value = "/step1/issuer/createWeIds", produces = NdjsonUtil.APPLICATION_NDJSON_VALUE)
+    public StreamingResponseBody createWeIds(
+        @ApiParam(name = "count", value = "创建WeId的数量", example = "100")
+        @RequestParam int count) {
+
+        return outputStream -> {
+            try {
+                demoService.createWeIds(
+                    count, response -> NdjsonUtil.writeLine(outputStream, response));
+            } catch (UncheckedIOException e) {
+                logger.error("createWeIds write response error", e);
+                throw e.getCause();
+            }
+        };
+    }
+
     /**
     *  发行方在链上 注册 CPT 模板
      * institutional publication of CPT.
@@ -92,23 +167,13 @@ public class DemoIssuerController {
 
             // 获取外部入参的 CPT 发布者 todo (发布者的 WeId, did:weid:1:0x19607cf2bc4538b49847b43688acf3befc487a41)
             String publisher = cptModel.getPublisher();
-            // 获取外部入参的 CPT 的Claim信息 todo (一个 json字符串, 详细 看 cptModel 中的定义)
-            String claim = DataToolUtils.mapToCompactJson(cptModel.getClaim());
+            // 获取外部入参的 CPT 的Claim信息 todo (请求体中已绑定为 map, 详细 看 cptModel 中的定义)
+            Map<String, Object> claimMap = cptModel.getClaim();
 
             // get the private key from the file according to weId.
-            String privateKey
-                = PrivateKeyUtil.getPrivateKeyByWeId(PrivateKeyUtil.KEY_DIR, publisher);
-            logger.info("param,publisher:{},privateKey:{},claim:{}", publisher, privateKey, claim);
-
-            // converting claim in JSON format to map.
-            Map<String, Object> claimMap = new HashMap<String, Object>();
-
-            // 将 Claim 的json信息转换成 map
-            claimMap = 
-                (Map<String, Object>) DataToolUtils.deserialize(
-                    claim,
-                    claimMap.getClass()
-                );
+            String privateKey = keyStore.get(publisher);
+            logger.info("param,publisher:{},privateKey:{},claim:{}",
+                publisher, privateKey, claimMap);
 
             // call method to register CPT on the chain.
             //
@@ -122,6 +187,59 @@ public class DemoIssuerController {
         }
     }
 
+    /**
+     * institutional publication of CPTs in batch, the results are streamed back as newline
+     * delimited JSON in completion order. the schemas already registered are skipped.
+     *
+     * @param publisher the weId of the publisher
+     * @param schemas the JSON schemas, concatenated, newline delimited or in a JSON array
+     * @return returns the CptBaseInfo of every schema
+     */
+    @ApiOperation(value = "批量注册CPT，已注册过的相同Schema会被跳过。")
+    @PostMapping(value = "/step2/registCpts", produces = NdjsonUtil.APPLICATION_NDJSON_VALUE)
+    public StreamingResponseBody registCpts(
+        @ApiParam(name = "publisher", value = "CPT发布者的WeId")
+        @RequestParam String publisher,
+        @ApiParam(name = "schemas", value = "多个JSON Schema，可以逐行或以数组形式提交")
+        @RequestBody String schemas) {
+
+        String privateKey = keyStore.get(publisher);
+        return outputStream -> {
+            try {
+                demoService.registCpts(publisher, privateKey, schemas,
+                    item -> NdjsonUtil.writeLine(outputStream, item));
+            } catch (UncheckedIOException e) {
+                logger.error("registCpts write response error", e);
+                throw e.getCause();
+            }
+        };
+    }
+
+    /**
+     * institutional publication of Credentials in batch, for one issuer and CPT.
+     * the private key is loaded once and the credentials are signed in parallel.
+     *
+     * @return returns the credentials in the order of the claims
+     */
+    @ApiOperation(value = "批量创建电子凭证，按claim顺序返回，单个失败不影响其他凭证。")
+    @PostMapping("/step3/createCredentials")
+    public ResponseData<List<BatchItem<CredentialWrapper>>> createCredentials(
+        @ApiParam(name = "createCredentialsModel", value = "批量创建电子凭证模板")
+        @RequestBody CreateCredentialsModel createCredentialsModel) {
+
+        if (null == createCredentialsModel
+            || StringUtils.isBlank(createCredentialsModel.getIssuer())
+            || null == createCredentialsModel.getCptId()) {
+            return new ResponseData<>(null, ErrorCode.ILLEGAL_INPUT);
+        }
+        String privateKey = keyStore.get(createCredentialsModel.getIssuer());
+        return demoService.createCredentials(
+            createCredentialsModel.getCptId(),
+            createCredentialsModel.getIssuer(),
+            privateKey,
+            createCredentialsModel.getClaimDataList());
+    }
+
     /**
     *  TODO 现在 我这就是 发行方, 给某些人颁发 电子凭证哦
      * institutional publication of Credential.
@@ -157,7 +275,7 @@ public class DemoIssuerController {
             // get the private key from the file according to weId.
             //
             // 根据
-            String privateKey = PrivateKeyUtil.getPrivateKeyByWeId(PrivateKeyUtil.KEY_DIR, issuer);
+            String privateKey = keyStore.get(issuer);
             logger.info(
                 "param,cptId:{},issuer:{},privateKey:{},claimData:{}", 
                 cptId, 
@@ -189,5 +307,42 @@ public class DemoIssuerController {
         }
     }
 
+    /**
+     * non-blocking {@link #createWeId}, runs in the chain write bulkhead.
+     *
+     * @return returns the deferred response
+     */
+    @ApiOperation(value = "创建WeId(非阻塞)")
+    @PostMapping("/deferred/step1/issuer/createWeId")
+    public DeferredResult<ResponseData<CreateWeIdDataResult>> createWeIdDeferred() {
+        return chainWriteBulkhead.submit(this::createWeId);
+    }
 
+    /**
+     * non-blocking {@link #registCpt}, runs in the chain write bulkhead.
+     *
+     * @param cptModel CPT模板
+     * @return returns the deferred response
+     */
+    @ApiOperation(value = "注册CPT(非阻塞)")
+    @PostMapping("/deferred/step2/registCpt")
+    public DeferredResult<ResponseData<CptBaseInfo>> registCptDeferred(
+        @ApiParam(name = "cptModel", value = "CPT模板")
+        @RequestBody CptModel cptModel) {
+        return chainWriteBulkhead.submit(() -> registCpt(cptModel));
+    }
+
+    /**
+     * non-blocking {@link #createCredential}, runs in the CPU bulkhead.
+     *
+     * @param createCredentialModel 创建电子凭证模板
+     * @return returns the deferred response
+     */
+    @ApiOperation(value = "创建电子凭证(非阻塞)")
+    @PostMapping("/deferred/step3/createCredential")
+    public DeferredResult<ResponseData<CredentialWrapper>> createCredentialDeferred(
+        @ApiParam(name = "createCredentialModel", value = "创建电子凭证模板")
+        @RequestBody CreateCredentialModel createCredentialModel) {
+        return cpuBulkhead.submit(() -> createCredential(createCredentialModel));
+    }
 }
@@ -25,13 +25,17 @@ import io.swagger.annotations.ApiParam;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
 
 import com.webank.weid.constant.ErrorCode;
 import com.webank.weid.demo.common.model.AuthorityIssuerModel;
+import com.webank.weid.demo.common.util.Bulkhead;
 import com.webank.weid.demo.service.DemoService;
+import com.webank.weid.demo.service.JobService;
 import com.webank.weid.protocol.response.CreateWeIdDataResult;
 import com.webank.weid.protocol.response.ResponseData;
 
@@ -51,6 +55,13 @@ public class DemoMemberController {
     @Autowired
     private DemoService demoService;
 
+    @Autowired
+    private JobService jobService;
+
+    @Autowired
+    @Qualifier("chainWriteBulkhead")
+    private Bulkhead chainWriteBulkhead;
+
 
     /**
     *  委员会创建 WeId 接口
@@ -64,6 +75,17 @@ public class DemoMemberController {
         return demoService.createWeId();
     }
 
+    /**
+     * create weId asynchronously, the result is queried by the job id.
+     *
+     * @return returns the job id
+     */
+    @ApiOperation(value = "异步创建WeId")
+    @PostMapping("/step1/member/createWeIdAsync")
+    public ResponseData<String> createWeIdAsync() {
+        return jobService.submit("createWeId", demoService::createWeId);
+    }
+
 
     /**
      * registered on the chain of institutions as authoritative bodies.
@@ -89,4 +111,43 @@ public class DemoMemberController {
         return demoService.registerAuthorityIssuer(issuer, authorityName);
     }
 
+    /**
+     * registered on the chain of institutions as authoritative bodies asynchronously,
+     * the result is queried by the job id.
+     *
+     * @return returns the job id
+     */
+    @ApiOperation(value = "异步注册成为权威机构")
+    @PostMapping("/step2/registerAuthorityIssuerAsync")
+    public ResponseData<String> registerAuthorityIssuerAsync(
+        @ApiParam(name = "authorityIssuerModel", value = "注册权威机构模板")
+        @RequestBody AuthorityIssuerModel authorityIssuerModel) {
+        return jobService.submit(
+            "registerAuthorityIssuer", () -> registerAuthorityIssuer(authorityIssuerModel));
+    }
+
+    /**
+     * non-blocking {@link #createWeId}, runs in the chain write bulkhead.
+     *
+     * @return returns the deferred response
+     */
+    @ApiOperation(value = "创建WeId(非阻塞)")
+    @PostMapping("/deferred/step1/member/createWeId")
+    public DeferredResult<ResponseData<CreateWeIdDataResult>> createWeIdDeferred() {
+        return chainWriteBulkhead.submit(this::createWeId);
+    }
+
+    /**
+     * non-blocking {@link #registerAuthorityIssuer}, runs in the chain write bulkhead.
+     *
+     * @param authorityIssuerModel 注册权威机构模板
+     * @return returns the deferred response
+     */
+    @ApiOperation(value = "注册成为权威机构(非阻塞)")
+    @PostMapping("/deferred/step2/registerAuthorityIssuer")
+    public DeferredResult<ResponseData<Boolean>> registerAuthorityIssuerDeferred(
+        @ApiParam(name = "authorityIssuerModel", value = "注册权威机构模板")
+        @RequestBody AuthorityIssuerModel authorityIssuerModel) {
+        return chainWriteBulkhead.submit(() -> registerAuthorityIssuer(authorityIssuerModel));
+    }
 }
@@ -23,11 +23,14 @@ import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
 
 import com.webank.weid.demo.common.model.VerifyCredentialModel;
+import com.webank.weid.demo.common.util.Bulkhead;
 import com.webank.weid.demo.service.DemoOtherService;
 import com.webank.weid.protocol.response.ResponseData;
 
@@ -44,6 +47,10 @@ public class DemoOtherCredentialController {
     @Autowired
     private DemoOtherService demoOtherService;
 
+    @Autowired
+    @Qualifier("cpuBulkhead")
+    private Bulkhead cpuBulkhead;
+
     /**
     *  根据凭证信息(Credential 详情) 求得Hash 用于上链, 该Hash 就是 Evidence
      * create weId without parameters and call the settings property method.
@@ -59,4 +66,18 @@ public class DemoOtherCredentialController {
         // 来一波根据 Credential 的内容生产对应的 Hash
         return demoOtherService.getCredentialHash(verifyCredentialModel);
     }
+
+    /**
+     * non-blocking {@link #getCredentialHash}, runs in the CPU bulkhead.
+     *
+     * @param verifyCredentialModel 电子凭证模板
+     * @return returns the deferred response
+     */
+    @ApiOperation(value = "生成Credential整体的Hash值(非阻塞)")
+    @PostMapping("/deferred/step1/credential/getCredentialPoJoHash")
+    public DeferredResult<ResponseData<String>> getCredentialHashDeferred(
+        @ApiParam(name = "credentialModel", value = "电子凭证模板")
+        @RequestBody VerifyCredentialModel verifyCredentialModel) {
+        return cpuBulkhead.submit(() -> getCredentialHash(verifyCredentialModel));
+    }
 }
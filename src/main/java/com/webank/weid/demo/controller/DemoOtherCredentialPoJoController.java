@@ -19,21 +19,29 @@
 
 package com.webank.weid.demo.controller;
 
+import java.util.List;
+
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
 
+import com.webank.weid.demo.common.dto.BatchItem;
 import com.webank.weid.demo.common.model.CreateCredentialPojoModel;
+import com.webank.weid.demo.common.model.CreateCredentialsModel;
 import com.webank.weid.demo.common.model.CreatePresentationModel;
 import com.webank.weid.demo.common.model.CreatePresentationPolicyEModel;
 import com.webank.weid.demo.common.model.CreateSelectiveCredentialModel;
 import com.webank.weid.demo.common.model.CredentialPoJoAddSignature;
 import com.webank.weid.demo.common.model.GetCredentialHashModel;
 import com.webank.weid.demo.common.model.VerifyCredentialPoJoModel;
+import com.webank.weid.demo.common.util.Bulkhead;
 import com.webank.weid.demo.service.DemoOtherService;
 import com.webank.weid.protocol.base.CredentialPojo;
 import com.webank.weid.protocol.base.PresentationE;
@@ -53,6 +61,10 @@ public class DemoOtherCredentialPoJoController {
     @Autowired
     private DemoOtherService demoOtherService;
 
+    @Autowired
+    @Qualifier("cpuBulkhead")
+    private Bulkhead cpuBulkhead;
+
 
     // todo 这个暂时看不出来和 DemoIssuerController 中的 `/step3/createCredential` 差异是多大
 
@@ -70,6 +82,20 @@ public class DemoOtherCredentialPoJoController {
         return demoOtherService.createCredentialPoJo(createCredentialPojoModel);
     }
 
+    /**
+     * 批量生成 CredentialPojo, 发行方私钥只加载一次, 并行签名.
+     * @param createCredentialsModel 批量创建电子凭证模板
+     * @return returns the credentials in the order of the claims
+     */
+    @ApiOperation(value = "批量创建CredentialPojo，按claim顺序返回，单个失败不影响其他凭证。")
+    @PostMapping("/step1/createCredentialPoJos")
+    public ResponseData<List<BatchItem<CredentialPojo>>> createCredentialPoJos(
+        @ApiParam(name = "createCredentialsModel", value = "批量创建电子凭证模板")
+        @RequestBody CreateCredentialsModel createCredentialsModel) {
+
+        return demoOtherService.createCredentialPoJos(createCredentialsModel);
+    }
+
     @ApiOperation(value = "通过原始凭证和披漏策略，创建选择性披露的Credential。")
     @PostMapping("/step2/createSelectiveCredential")
     public ResponseData<CredentialPojo> createSelectiveCredential(
@@ -83,11 +109,13 @@ public class DemoOtherCredentialPoJoController {
     @PostMapping("/step3/verifyEvidence")
     public ResponseData<Boolean> verify(
         @ApiParam(name = "verifyCredentialPoJoModel", value = "验证电子凭证模板")
-        @RequestBody VerifyCredentialPoJoModel verifyCredentialPoJoModel) {
+        @RequestBody VerifyCredentialPoJoModel verifyCredentialPoJoModel,
+        @ApiParam(name = "bypassCache", value = "是否绕过验证结果缓存重新验证")
+        @RequestParam(defaultValue = "false") boolean bypassCache) {
 
 
         // TODO 用人单位验证 Credential
-        return demoOtherService.verify(verifyCredentialPoJoModel);
+        return demoOtherService.verify(verifyCredentialPoJoModel, bypassCache);
     }
 
     // 创建 Credential表现形式的策略 E
@@ -100,6 +128,15 @@ public class DemoOtherCredentialPoJoController {
         return demoOtherService.createPresentationPolicyE(createPresentationPolicyEModel);
     }
 
+    @ApiOperation(value = "注册PresentationPolicyE，之后创建Presentation时可只传policyId。")
+    @PostMapping("/step4/registerPresentationPolicyE")
+    public ResponseData<PresentationPolicyE> registerPresentationPolicyE(
+        @ApiParam(name = "createPresentationPolicyEModel", value = "创建PresentationPolicyE模板")
+        @RequestBody CreatePresentationPolicyEModel createPresentationPolicyEModel) {
+
+        return demoOtherService.registerPresentationPolicyE(createPresentationPolicyEModel);
+    }
+
     // todo  创建 凭证表现形式 <这个是对外的, 也包含了 对外的CrredentialPojo>
 
     /**
@@ -140,4 +177,105 @@ public class DemoOtherCredentialPoJoController {
 
         return demoOtherService.addSignatureCredentialPojo(credentialPoJoAddSignature);
     }
+
+    /**
+     * non-blocking {@link #createCredentialPoJo}, runs in the CPU bulkhead.
+     *
+     * @param createCredentialPojoModel 电子凭证模板
+     * @return returns the deferred response
+     */
+    @ApiOperation(value = "创建CredentialPojo(非阻塞)")
+    @PostMapping("/deferred/step1/createCredentialPoJo")
+    public DeferredResult<ResponseData<CredentialPojo>> createCredentialPoJoDeferred(
+        @ApiParam(name = "createCredentialModel", value = "电子凭证模板")
+        @RequestBody CreateCredentialPojoModel createCredentialPojoModel) {
+        return cpuBulkhead.submit(() -> createCredentialPoJo(createCredentialPojoModel));
+    }
+
+    /**
+     * non-blocking {@link #createSelectiveCredential}, runs in the CPU bulkhead.
+     *
+     * @param createSelectiveCredentialModel 选择性披露电子凭证模板
+     * @return returns the deferred response
+     */
+    @ApiOperation(value = "创建选择性披露的Credential(非阻塞)")
+    @PostMapping("/deferred/step2/createSelectiveCredential")
+    public DeferredResult<ResponseData<CredentialPojo>> createSelectiveCredentialDeferred(
+        @ApiParam(name = "createSelectiveCredentialModel", value = "选择性披露电子凭证模板")
+        @RequestBody CreateSelectiveCredentialModel createSelectiveCredentialModel) {
+        return cpuBulkhead.submit(() -> createSelectiveCredential(createSelectiveCredentialModel));
+    }
+
+    /**
+     * non-blocking {@link #verify}, runs in the CPU bulkhead.
+     *
+     * @param verifyCredentialPoJoModel 验证电子凭证模板
+     * @param bypassCache 是否绕过验证结果缓存重新验证
+     * @return returns the deferred response
+     */
+    @ApiOperation(value = "验证电子凭证(非阻塞)")
+    @PostMapping("/deferred/step3/verifyEvidence")
+    public DeferredResult<ResponseData<Boolean>> verifyDeferred(
+        @ApiParam(name = "verifyCredentialPoJoModel", value = "验证电子凭证模板")
+        @RequestBody VerifyCredentialPoJoModel verifyCredentialPoJoModel,
+        @ApiParam(name = "bypassCache", value = "是否绕过验证结果缓存重新验证")
+        @RequestParam(defaultValue = "false") boolean bypassCache) {
+        return cpuBulkhead.submit(() -> verify(verifyCredentialPoJoModel, bypassCache));
+    }
+
+    /**
+     * non-blocking {@link #createPresentationPolicyE}, runs in the CPU bulkhead.
+     *
+     * @param createPresentationPolicyEModel 创建Presentation模板
+     * @return returns the deferred response
+     */
+    @ApiOperation(value = "创建PresentationPolicyE(非阻塞)")
+    @PostMapping("/deferred/step4/createPresentationPolicyE")
+    public DeferredResult<ResponseData<PresentationPolicyE>> createPresentationPolicyEDeferred(
+        @ApiParam(name = "createPresentationModel", value = "创建Presentation模板")
+        @RequestBody CreatePresentationPolicyEModel createPresentationPolicyEModel) {
+        return cpuBulkhead.submit(() -> createPresentationPolicyE(createPresentationPolicyEModel));
+    }
+
+    /**
+     * non-blocking {@link #createPresentation}, runs in the CPU bulkhead.
+     *
+     * @param createPresentationModel 创建Presentation模板
+     * @return returns the deferred response
+     */
+    @ApiOperation(value = "创建Presentation(非阻塞)")
+    @PostMapping("/deferred/step5/createPresentation")
+    public DeferredResult<ResponseData<PresentationE>> createPresentationDeferred(
+        @ApiParam(name = "createPresentationModel", value = "创建Presentation模板")
+        @RequestBody CreatePresentationModel createPresentationModel) {
+        return cpuBulkhead.submit(() -> createPresentation(createPresentationModel));
+    }
+
+    /**
+     * non-blocking {@link #getCredentialPoJoHash}, runs in the CPU bulkhead.
+     *
+     * @param getCredentialHashModel CredentialPojo模板
+     * @return returns the deferred response
+     */
+    @ApiOperation(value = "生成CredentialPojo整体的Hash值(非阻塞)")
+    @PostMapping("/deferred/step6/getCredentialPoJoHash")
+    public DeferredResult<ResponseData<String>> getCredentialPoJoHashDeferred(
+        @ApiParam(name = "getCredentialHashModel", value = "CredentialPojo模板")
+        @RequestBody GetCredentialHashModel getCredentialHashModel) {
+        return cpuBulkhead.submit(() -> getCredentialPoJoHash(getCredentialHashModel));
+    }
+
+    /**
+     * non-blocking {@link #addSignatureCredentialPojo}, runs in the CPU bulkhead.
+     *
+     * @param credentialPoJoAddSignature CredentialPojo加签模板
+     * @return returns the deferred response
+     */
+    @ApiOperation(value = "多签CredentialPojo(非阻塞)")
+    @PostMapping("/deferred/step7/addSignatureCredentialPojo")
+    public DeferredResult<ResponseData<CredentialPojo>> addSignatureCredentialPojoDeferred(
+        @ApiParam(name = "credentialPoJoAddSignature", value = "CredentialPojo加签模板")
+        @RequestBody CredentialPoJoAddSignature credentialPoJoAddSignature) {
+        return cpuBulkhead.submit(() -> addSignatureCredentialPojo(credentialPoJoAddSignature));
+    }
 }
@@ -23,16 +23,20 @@ import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
 
 import com.webank.weid.demo.common.model.AddSignatureModel;
 import com.webank.weid.demo.common.model.CreateEvidenceModel;
 import com.webank.weid.demo.common.model.SetHashValueModel;
 import com.webank.weid.demo.common.model.VerifyEvidenceModel;
+import com.webank.weid.demo.common.util.Bulkhead;
 import com.webank.weid.demo.service.DemoOtherService;
+import com.webank.weid.demo.service.JobService;
 import com.webank.weid.protocol.base.EvidenceInfo;
 import com.webank.weid.protocol.response.ResponseData;
 
@@ -49,6 +53,17 @@ public class DemoOtherEvidenceController {
     @Autowired
     private DemoOtherService demoOtherService;
 
+    @Autowired
+    private JobService jobService;
+
+    @Autowired
+    @Qualifier("chainWriteBulkhead")
+    private Bulkhead chainWriteBulkhead;
+
+    @Autowired
+    @Qualifier("chainReadBulkhead")
+    private Bulkhead chainReadBulkhead;
+
     @ApiOperation(value = "将传入Object计算Hash值生成存证上链，返回存证地址。传入的私钥将会成为链上存证的签名方。此签名方和凭证的Issuer可以不是同一方。"
         + "当传入的object为null时，则会创建一个空的存证并返回其地址 【妈的, 啥地址, 明明就是Evidence Hash】，空存证中仅包含签名方，不含Hash值。"
         + "可以随后调用SetHashValue()方法，为空存证添加Hash值和签名。")
@@ -61,6 +76,16 @@ public class DemoOtherEvidenceController {
         return demoOtherService.createEvidence(createEvidenceModel);
     }
 
+    @ApiOperation(value = "异步创建存证，返回异步任务ID，通过异步任务接口查询存证Hash。")
+    @PostMapping("/step1/createEvidenceAsync")
+    public ResponseData<String> createEvidenceAsync(
+        @ApiParam(name = "credentialModel", value = "电子凭证模板")
+        @RequestBody CreateEvidenceModel createEvidenceModel) {
+
+        return jobService.submit(
+            "createEvidence", () -> demoOtherService.createEvidence(createEvidenceModel));
+    }
+
 
     @ApiOperation(value = "根据传入的凭证存证Hash，在链上查找凭证存证信息。")
     @PostMapping("/step2/getEvidence")
@@ -71,4 +96,32 @@ public class DemoOtherEvidenceController {
 
         return demoOtherService.getEvidence(evidenceAddress);
     }
+
+    /**
+     * non-blocking {@link #createEvidence}, runs in the chain write bulkhead.
+     *
+     * @param createEvidenceModel 电子凭证模板
+     * @return returns the deferred response
+     */
+    @ApiOperation(value = "创建存证(非阻塞)")
+    @PostMapping("/deferred/step1/createEvidence")
+    public DeferredResult<ResponseData<String>> createEvidenceDeferred(
+        @ApiParam(name = "credentialModel", value = "电子凭证模板")
+        @RequestBody CreateEvidenceModel createEvidenceModel) {
+        return chainWriteBulkhead.submit(() -> createEvidence(createEvidenceModel));
+    }
+
+    /**
+     * non-blocking {@link #getEvidence}, runs in the chain read bulkhead.
+     *
+     * @param evidenceAddress 凭证存证Hash
+     * @return returns the deferred response
+     */
+    @ApiOperation(value = "在链上查找凭证存证信息(非阻塞)")
+    @PostMapping("/deferred/step2/getEvidence")
+    public DeferredResult<ResponseData<EvidenceInfo>> getEvidenceDeferred(
+        @ApiParam(name = "evidenceAddress", value = "凭证存证Hash")
+        @RequestParam(value = "evidenceAddress") String evidenceAddress) {
+        return chainReadBulkhead.submit(() -> getEvidence(evidenceAddress));
+    }
 }
@@ -23,12 +23,15 @@ import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
 
 import com.webank.weid.demo.common.model.JsonTransportationSerializeModel;
 import com.webank.weid.demo.common.model.JsonTransportationSpecifyModel;
+import com.webank.weid.demo.common.util.Bulkhead;
 import com.webank.weid.demo.service.DemoOtherService;
 import com.webank.weid.protocol.response.ResponseData;
 
@@ -45,6 +48,10 @@ public class DemoOtherTransportationController {
     @Autowired
     private DemoOtherService demoOtherService;
 
+    @Autowired
+    @Qualifier("cpuBulkhead")
+    private Bulkhead cpuBulkhead;
+
     @ApiOperation(value = "指定transportation的认证者,用于权限控制。")
     @PostMapping("/step1/jsonTransportationSpecify")
     public ResponseData<String> specify(
@@ -61,4 +68,32 @@ public class DemoOtherTransportationController {
         @RequestBody JsonTransportationSerializeModel jsonTransportationSerializeModel) {
         return demoOtherService.serialize(jsonTransportationSerializeModel);
     }
+
+    /**
+     * non-blocking {@link #specify}, runs in the CPU bulkhead.
+     *
+     * @param jsonTransportationSpecifyModel 指定transportation的认证者模板
+     * @return returns the deferred response
+     */
+    @ApiOperation(value = "指定transportation的认证者(非阻塞)")
+    @PostMapping("/deferred/step1/jsonTransportationSpecify")
+    public DeferredResult<ResponseData<String>> specifyDeferred(
+        @ApiParam(name = "jsonTransportationSpecifyModel", value = "指定transportation的认证者模板")
+        @RequestBody JsonTransportationSpecifyModel jsonTransportationSpecifyModel) {
+        return cpuBulkhead.submit(() -> specify(jsonTransportationSpecifyModel));
+    }
+
+    /**
+     * non-blocking {@link #serialize}, runs in the CPU bulkhead.
+     *
+     * @param jsonTransportationSerializeModel 序列化对象模板
+     * @return returns the deferred response
+     */
+    @ApiOperation(value = "序列化对象(非阻塞)")
+    @PostMapping("/deferred/step2/jsonTransportationSerialize")
+    public DeferredResult<ResponseData<String>> serializeDeferred(
+        @ApiParam(name = "jsonTransportationSerializeModel", value = "序列化对象模板")
+        @RequestBody JsonTransportationSerializeModel jsonTransportationSerializeModel) {
+        return cpuBulkhead.submit(() -> serialize(jsonTransportationSerializeModel));
+    }
 }
@@ -19,18 +19,28 @@
 
 package com.webank.weid.demo.controller;
 
+import java.io.UncheckedIOException;
+import java.util.List;
+
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import com.webank.weid.constant.ErrorCode;
 import com.webank.weid.demo.common.model.CreateWeIdModel;
+import com.webank.weid.demo.common.util.Bulkhead;
+import com.webank.weid.demo.common.util.NdjsonUtil;
 import com.webank.weid.demo.service.DemoService;
+import com.webank.weid.protocol.base.WeIdDocument;
 import com.webank.weid.protocol.response.ResponseData;
 
 /**
@@ -46,6 +56,14 @@ public class DemoOtherWeIdController {
     @Autowired
     private DemoService demoService;
 
+    @Autowired
+    @Qualifier("chainWriteBulkhead")
+    private Bulkhead chainWriteBulkhead;
+
+    @Autowired
+    @Qualifier("chainReadBulkhead")
+    private Bulkhead chainReadBulkhead;
+
     /**
      * create weId without parameters and call the settings property method.
      *
@@ -68,4 +86,84 @@ public class DemoOtherWeIdController {
             createWeIdModel.getPublicKey(),
             createWeIdModel.getPrivateKey());
     }
+
+    /**
+     * get the weId document, from the weId document cache unless bypassed.
+     *
+     * @param weId the weId
+     * @param bypassCache resolve from the chain
+     * @return returns the weId document
+     */
+    @ApiOperation(value = "查询WeId Document，默认优先读取缓存。")
+    @PostMapping("/step2/getWeIdDocument")
+    public ResponseData<WeIdDocument> getWeIdDocument(
+        @ApiParam(name = "weId", value = "WeId",
+            example = "did:weid:1:0x19607cf2bc4538b49847b43688acf3befc487a41")
+        @RequestParam String weId,
+        @ApiParam(name = "bypassCache", value = "是否绕过缓存直接查链")
+        @RequestParam(defaultValue = "false") boolean bypassCache) {
+
+        if (StringUtils.isBlank(weId)) {
+            return new ResponseData<>(null, ErrorCode.ILLEGAL_INPUT);
+        }
+        return demoService.getWeIdDocument(weId, bypassCache);
+    }
+
+    /**
+     * resolve the weId documents in parallel, the results are streamed back as newline
+     * delimited JSON in completion order, each line carries the position of its weId.
+     *
+     * @param weIds the weIds
+     * @param bypassCache resolve from the chain
+     * @return returns the weId documents
+     */
+    @ApiOperation(value = "批量查询WeId Document，按完成顺序逐行返回。")
+    @PostMapping(
+        value = "/step2/getWeIdDocuments", produces = NdjsonUtil.APPLICATION_NDJSON_VALUE)
+    public StreamingResponseBody getWeIdDocuments(
+        @ApiParam(name = "weIds", value = "WeId列表")
+        @RequestBody List<String> weIds,
+        @ApiParam(name = "bypassCache", value = "是否绕过缓存直接查链")
+        @RequestParam(defaultValue = "false") boolean bypassCache) {
+
+        return outputStream -> {
+            try {
+                demoService.getWeIdDocuments(
+                    weIds, bypassCache, item -> NdjsonUtil.writeLine(outputStream, item));
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        };
+    }
+
+    /**
+     * non-blocking {@link #createWeId}, runs in the chain write bulkhead.
+     *
+     * @param createWeIdModel 公私钥对模板
+     * @return returns the deferred response
+     */
+    @ApiOperation(value = "通过公私钥对创建WeId(非阻塞)")
+    @PostMapping("/deferred/step1/createWeId")
+    public DeferredResult<ResponseData<String>> createWeIdDeferred(
+        @ApiParam(name = "credentialModel", value = "公私钥对模板")
+        @RequestBody CreateWeIdModel createWeIdModel) {
+        return chainWriteBulkhead.submit(() -> createWeId(createWeIdModel));
+    }
+
+    /**
+     * non-blocking {@link #getWeIdDocument}, runs in the chain read bulkhead.
+     *
+     * @param weId the weId
+     * @param bypassCache resolve from the chain
+     * @return returns the deferred response
+     */
+    @ApiOperation(value = "查询WeId Document(非阻塞)")
+    @PostMapping("/deferred/step2/getWeIdDocument")
+    public DeferredResult<ResponseData<WeIdDocument>> getWeIdDocumentDeferred(
+        @ApiParam(name = "weId", value = "WeId")
+        @RequestParam String weId,
+        @ApiParam(name = "bypassCache", value = "是否绕过缓存直接查链")
+        @RequestParam(defaultValue = "false") boolean bypassCache) {
+        return chainReadBulkhead.submit(() -> getWeIdDocument(weId, bypassCache));
+    }
 }
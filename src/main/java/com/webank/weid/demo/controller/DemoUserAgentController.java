@@ -22,10 +22,14 @@ package com.webank.weid.demo.controller;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
 
+import com.webank.weid.demo.common.util.Bulkhead;
 import com.webank.weid.demo.service.DemoService;
+import com.webank.weid.demo.service.JobService;
 import com.webank.weid.protocol.response.CreateWeIdDataResult;
 import com.webank.weid.protocol.response.ResponseData;
 
@@ -43,6 +47,13 @@ public class DemoUserAgentController {
     @Autowired
     private DemoService demoService;
 
+    @Autowired
+    private JobService jobService;
+
+    @Autowired
+    @Qualifier("chainWriteBulkhead")
+    private Bulkhead chainWriteBulkhead;
+
     /**
      * create weId without parameters and call the settings property method.
      *
@@ -54,4 +65,25 @@ public class DemoUserAgentController {
         return demoService.createWeId();
     }
 
+    /**
+     * create weId asynchronously, the result is queried by the job id.
+     *
+     * @return returns the job id
+     */
+    @ApiOperation(value = "异步创建weid")
+    @PostMapping("/step1/userAgent/createWeIdAsync")
+    public ResponseData<String> createWeIdAsync() {
+        return jobService.submit("createWeId", demoService::createWeId);
+    }
+
+    /**
+     * non-blocking {@link #createWeId}, runs in the chain write bulkhead.
+     *
+     * @return returns the deferred response
+     */
+    @ApiOperation(value = "创建weid(非阻塞)")
+    @PostMapping("/deferred/step1/userAgent/createWeId")
+    public DeferredResult<ResponseData<CreateWeIdDataResult>> createWeIdDeferred() {
+        return chainWriteBulkhead.submit(this::createWeId);
+    }
 }
@@ -19,21 +19,33 @@
 
 package com.webank.weid.demo.controller;
 
+import java.io.UncheckedIOException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.AsyncWebRequest;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import com.webank.weid.constant.ErrorCode;
 import com.webank.weid.demo.common.model.VerifyCredentialModel;
+import com.webank.weid.demo.common.util.Bulkhead;
+import com.webank.weid.demo.common.util.NdjsonUtil;
+import com.webank.weid.demo.common.util.PropertiesUtils;
 import com.webank.weid.demo.service.DemoService;
 import com.webank.weid.protocol.response.ResponseData;
-import com.webank.weid.util.DataToolUtils;
 
 /**
  * Demo Controller.
@@ -48,8 +60,18 @@ public class DemoVerifierController {
 
     private static final Logger logger = LoggerFactory.getLogger(DemoVerifierController.class);
 
+    /**
+     * the timeout of one stream verification in milliseconds, 0 means no timeout.
+     */
+    private static final long VERIFY_STREAM_TIMEOUT_MILLIS =
+        Long.parseLong(PropertiesUtils.getProperty("weid.verifyStream.timeoutMillis", "0"));
+
     @Autowired
     private DemoService demoService;
+
+    @Autowired
+    @Qualifier("chainReadBulkhead")
+    private Bulkhead chainReadBulkhead;
     
     /**
     *
@@ -58,26 +80,79 @@ public class DemoVerifierController {
      * verifyEvidence Credential.
      *
      * @param verifyCredentialModel credential in JSON format
+     * @param bypassCache verify on chain even if the credential was verified recently
      * @return true is success, false is failure
      */
     @ApiOperation(value = "验证凭证是否正确")
     @PostMapping("/step1/verifyCredential")
     public ResponseData<Boolean> verifyCredential(
         @ApiParam(name = "verifyCredentialModel", value = "验证电子凭证模板")
-        @RequestBody VerifyCredentialModel verifyCredentialModel) {
+        @RequestBody VerifyCredentialModel verifyCredentialModel,
+        @ApiParam(name = "bypassCache", value = "是否绕过验证结果缓存重新验证")
+        @RequestParam(defaultValue = "false") boolean bypassCache) {
 
         logger.info("verifyCredentialModel:{}", verifyCredentialModel);
 
-        if (null == verifyCredentialModel) {
+        if (null == verifyCredentialModel || null == verifyCredentialModel.getCredential()) {
             return new ResponseData<>(null, ErrorCode.ILLEGAL_INPUT);
         }
         // call method to verifyEvidence credential.
         try {
-            return demoService.verifyCredential(
-                DataToolUtils.mapToCompactJson(verifyCredentialModel.getCredential()));
+            return demoService.verifyCredential(verifyCredentialModel.getCredential(), bypassCache);
         } catch (Exception e) {
             logger.error("verifyCredential error", e);
             return new ResponseData<>(null, ErrorCode.TRANSACTION_EXECUTE_ERROR);
         }
     }
+
+    /**
+     * verify the credentials of a newline delimited JSON request body, one credential per
+     * line. the body is read incrementally and the credentials are verified in parallel
+     * with a bounded window, one result line is written per credential as it completes.
+     * the stream lasts as long as the client sends, so it has its own timeout
+     * weid.verifyStream.timeoutMillis instead of spring.mvc.async.request-timeout.
+     *
+     * @param request the request carrying the credentials
+     * @param response the response of the results
+     * @return returns the result of every credential
+     */
+    @ApiOperation(value = "批量验证凭证，请求体为逐行的Credential JSON，按完成顺序逐行返回结果。")
+    @PostMapping(
+        value = "/step1/verifyCredentials", produces = NdjsonUtil.APPLICATION_NDJSON_VALUE)
+    public StreamingResponseBody verifyCredentials(
+        HttpServletRequest request,
+        HttpServletResponse response) {
+
+        // replace the async request spring created with the default timeout.
+        AsyncWebRequest asyncWebRequest = WebAsyncUtils.createAsyncWebRequest(request, response);
+        asyncWebRequest.setTimeout(VERIFY_STREAM_TIMEOUT_MILLIS);
+        WebAsyncUtils.getAsyncManager(request).setAsyncWebRequest(asyncWebRequest);
+        return outputStream -> {
+            try {
+                demoService.verifyCredentials(
+                    request.getInputStream(), item -> NdjsonUtil.writeLine(outputStream, item));
+            } catch (UncheckedIOException e) {
+                logger.error("verifyCredentials write response error", e);
+                throw e.getCause();
+            }
+        };
+    }
+
+    /**
+     * non-blocking {@link #verifyCredential}, runs in the chain read bulkhead since the
+     * verification reads the issuer documents and the CPTs from the chain.
+     *
+     * @param verifyCredentialModel 验证电子凭证模板
+     * @param bypassCache 是否绕过验证结果缓存重新验证
+     * @return returns the deferred response
+     */
+    @ApiOperation(value = "验证凭证是否正确(非阻塞)")
+    @PostMapping("/deferred/step1/verifyCredential")
+    public DeferredResult<ResponseData<Boolean>> verifyCredentialDeferred(
+        @ApiParam(name = "verifyCredentialModel", value = "验证电子凭证模板")
+        @RequestBody VerifyCredentialModel verifyCredentialModel,
+        @ApiParam(name = "bypassCache", value = "是否绕过验证结果缓存重新验证")
+        @RequestParam(defaultValue = "false") boolean bypassCache) {
+        return chainReadBulkhead.submit(() -> verifyCredential(verifyCredentialModel, bypassCache));
+    }
 }
@@ -0,0 +1,107 @@
+/*
+ *       Copyright© (2019) WeBank Co., Ltd.
+ *
+ *       This file is part of weidentity-sample.
+ *
+ *       weidentity-sample is free software: you can redistribute it and/or modify
+ *       it under the terms of the GNU Lesser General Public License as published by
+ *       the Free Software Foundation, either version 3 of the License, or
+ *       (at your option) any later version.
+ *
+ *       weidentity-sample is distributed in the hope that it will be useful,
+ *       but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *       MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *       GNU Lesser General Public License for more details.
+ *
+ *       You should have received a copy of the GNU Lesser General Public License
+ *       along with weidentity-sample.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.webank.weid.demo.controller;
+
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import io.swagger.annotations.ApiParam;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import com.webank.weid.constant.ErrorCode;
+import com.webank.weid.demo.common.dto.Job;
+import com.webank.weid.demo.common.util.PropertiesUtils;
+import com.webank.weid.demo.service.JobService;
+import com.webank.weid.protocol.response.ResponseData;
+
+/**
+ * Job Controller, queries the asynchronous jobs of the chain-writing interfaces.
+ *
+ * @author agent
+ */
+@RestController
+@Api(description = "异步任务: 查询上链接口异步模式返回的任务。",
+    tags = {"异步任务相关接口"})
+public class JobController {
+
+    /**
+     * the maximum time of one long poll in milliseconds.
+     */
+    private static final long MAX_WAIT_MILLIS =
+        Long.parseLong(PropertiesUtils.getProperty("weid.job.maxWaitMillis", "30000"));
+
+    @Autowired
+    private JobService jobService;
+
+    /**
+     * get the status and the result of the job.
+     *
+     * @param jobId the id of job
+     * @return returns the job
+     */
+    @ApiOperation(value = "查询异步任务")
+    @PostMapping("/job/getJob")
+    public ResponseData<Job> getJob(
+        @ApiParam(name = "jobId", value = "异步任务ID")
+        @RequestParam String jobId) {
+
+        Job job = jobService.getJob(jobId);
+        if (null == job) {
+            return jobNotExists();
+        }
+        return new ResponseData<>(job, ErrorCode.SUCCESS);
+    }
+
+    /**
+     * wait for the job to finish, returns the current job when it is not finished before
+     * the timeout. the servlet thread is released while waiting.
+     *
+     * @param jobId the id of job
+     * @param timeoutMillis the time to wait in milliseconds, at most weid.job.maxWaitMillis
+     * @return returns the job
+     */
+    @ApiOperation(value = "等待异步任务完成")
+    @PostMapping("/job/waitJob")
+    public DeferredResult<ResponseData<Job>> waitJob(
+        @ApiParam(name = "jobId", value = "异步任务ID")
+        @RequestParam String jobId,
+        @ApiParam(name = "timeoutMillis", value = "最长等待时间(毫秒)", example = "10000")
+        @RequestParam(defaultValue = "10000") long timeoutMillis) {
+
+        long timeout = Math.min(Math.max(timeoutMillis, 1L), MAX_WAIT_MILLIS);
+        DeferredResult<ResponseData<Job>> deferredResult =
+            new DeferredResult<ResponseData<Job>>(timeout);
+        deferredResult.onTimeout(() -> deferredResult.setResult(getJob(jobId)));
+        boolean exists = jobService.onFinished(jobId,
+            job -> deferredResult.setResult(new ResponseData<>(job, ErrorCode.SUCCESS)));
+        if (!exists) {
+            deferredResult.setResult(jobNotExists());
+        }
+        return deferredResult;
+    }
+
+    private ResponseData<Job> jobNotExists() {
+        return new ResponseData<>(null, ErrorCode.ILLEGAL_INPUT.getCode(),
+            "the job does not exist or is evicted.");
+    }
+}
@@ -1,13 +1,26 @@
 package com.webank.weid.demo.controller;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import com.webank.weid.constant.ErrorCode;
+import com.webank.weid.demo.common.util.Bulkhead;
+import com.webank.weid.demo.common.util.CptSchemaCache;
+import com.webank.weid.demo.common.util.IssuerCache;
+import com.webank.weid.demo.common.util.KeyPairPool;
+import com.webank.weid.demo.common.util.PolicyCache;
+import com.webank.weid.demo.common.util.VerificationCache;
+import com.webank.weid.demo.common.util.VerificationPipeline;
+import com.webank.weid.demo.common.util.WeIdDocumentCache;
 import com.webank.weid.demo.service.ToolService;
 import com.webank.weid.protocol.response.ResponseData;
 
@@ -24,6 +37,36 @@ public class ToolController {
     @Autowired
     private ToolService toolService;
 
+    @Autowired(required = false)
+    private KeyPairPool keyPairPool;
+
+    @Autowired
+    @Qualifier("chainReadBulkhead")
+    private Bulkhead chainReadBulkhead;
+
+    @Autowired
+    @Qualifier("chainWriteBulkhead")
+    private Bulkhead chainWriteBulkhead;
+
+    @Autowired
+    @Qualifier("cpuBulkhead")
+    private Bulkhead cpuBulkhead;
+
+    @Autowired
+    private WeIdDocumentCache weIdDocumentCache;
+
+    @Autowired
+    private CptSchemaCache cptSchemaCache;
+
+    @Autowired
+    private VerificationCache verificationCache;
+
+    @Autowired
+    private IssuerCache issuerCache;
+
+    @Autowired
+    private PolicyCache policyCache;
+
     @ApiOperation(value = "通过私钥生成公钥")
     @PostMapping("/step1/getPublicKey")
     public ResponseData<String> getPublicKey(
@@ -34,4 +77,66 @@ public class ToolController {
 
         return toolService.getPublicKey(privateKey);
     }
+
+    @ApiOperation(value = "查询预生成公私钥池的深度和补充速率")
+    @PostMapping("/step1/getKeyPairPoolMetrics")
+    public ResponseData<Map<String, Object>> getKeyPairPoolMetrics() {
+
+        if (keyPairPool == null) {
+            return new ResponseData<Map<String, Object>>(null, ErrorCode.UNKNOW_ERROR.getCode(),
+                "the key pair pool is disabled.");
+        }
+        return new ResponseData<Map<String, Object>>(keyPairPool.getMetrics(), ErrorCode.SUCCESS);
+    }
+
+    @ApiOperation(value = "查询非阻塞接口各隔离线程池的使用情况")
+    @PostMapping("/step1/getBulkheadMetrics")
+    public ResponseData<Map<String, Object>> getBulkheadMetrics() {
+
+        Map<String, Object> metrics = new LinkedHashMap<String, Object>();
+        metrics.put("chainRead", chainReadBulkhead.getMetrics());
+        metrics.put("chainWrite", chainWriteBulkhead.getMetrics());
+        metrics.put("cpu", cpuBulkhead.getMetrics());
+        return new ResponseData<Map<String, Object>>(metrics, ErrorCode.SUCCESS);
+    }
+
+    @ApiOperation(value = "查询WeId Document缓存的命中率")
+    @PostMapping("/step1/getWeIdDocumentCacheMetrics")
+    public ResponseData<Map<String, Object>> getWeIdDocumentCacheMetrics() {
+        return new ResponseData<Map<String, Object>>(
+            weIdDocumentCache.getMetrics(), ErrorCode.SUCCESS);
+    }
+
+    @ApiOperation(value = "查询CPT Schema缓存的命中率和本地校验拒绝数")
+    @PostMapping("/step1/getCptSchemaCacheMetrics")
+    public ResponseData<Map<String, Object>> getCptSchemaCacheMetrics() {
+        return new ResponseData<Map<String, Object>>(
+            cptSchemaCache.getMetrics(), ErrorCode.SUCCESS);
+    }
+
+    @ApiOperation(value = "查询凭证验证结果缓存的命中率")
+    @PostMapping("/step1/getVerificationCacheMetrics")
+    public ResponseData<Map<String, Object>> getVerificationCacheMetrics() {
+        return new ResponseData<Map<String, Object>>(
+            verificationCache.getMetrics(), ErrorCode.SUCCESS);
+    }
+
+    @ApiOperation(value = "查询凭证分阶段验证各阶段的通过数、拒绝数和耗时")
+    @PostMapping("/step1/getVerificationPipelineMetrics")
+    public ResponseData<Map<String, Object>> getVerificationPipelineMetrics() {
+        return new ResponseData<Map<String, Object>>(
+            VerificationPipeline.getInstance().getMetrics(), ErrorCode.SUCCESS);
+    }
+
+    @ApiOperation(value = "查询签发者公钥和权威机构状态缓存的命中率")
+    @PostMapping("/step1/getIssuerCacheMetrics")
+    public ResponseData<Map<String, Object>> getIssuerCacheMetrics() {
+        return new ResponseData<Map<String, Object>>(issuerCache.getMetrics(), ErrorCode.SUCCESS);
+    }
+
+    @ApiOperation(value = "查询PresentationPolicyE缓存的注册数和解析次数")
+    @PostMapping("/step1/getPolicyCacheMetrics")
+    public ResponseData<Map<String, Object>> getPolicyCacheMetrics() {
+        return new ResponseData<Map<String, Object>>(policyCache.getMetrics(), ErrorCode.SUCCESS);
+    }
 }
@@ -19,8 +19,12 @@
 
 package com.webank.weid.demo.service;
 
+import java.util.List;
+
+import com.webank.weid.demo.common.dto.BatchItem;
 import com.webank.weid.demo.common.model.AddSignatureModel;
 import com.webank.weid.demo.common.model.CreateCredentialPojoModel;
+import com.webank.weid.demo.common.model.CreateCredentialsModel;
 import com.webank.weid.demo.common.model.CreateEvidenceModel;
 import com.webank.weid.demo.common.model.CreatePresentationModel;
 import com.webank.weid.demo.common.model.CreatePresentationPolicyEModel;
@@ -63,6 +67,15 @@ public interface DemoOtherService {
     ResponseData<CredentialPojo> createCredentialPoJo(
         CreateCredentialPojoModel createCredentialPojoModel);
 
+    /**
+     * create credentials of one issuer and CPT in batch, signed in parallel.
+     * a failed claim only fails its own item.
+     * @param createCredentialsModel 批量创建电子凭证模板
+     * @return returns the credentials in the order of the claims
+     */
+    ResponseData<List<BatchItem<CredentialPojo>>> createCredentialPoJos(
+        CreateCredentialsModel createCredentialsModel);
+
 
     /**
      * 通过原始凭证和披漏策略，创建选择性披露的Credential.
@@ -75,9 +88,12 @@ public interface DemoOtherService {
     /**
      * 验证credential.
      * @param verifyCredentialPoJoModel 验证电子凭证模板
+     * @param bypassCache 是否绕过验证结果缓存重新验证
      * @return
      */
-    ResponseData<Boolean> verify(VerifyCredentialPoJoModel verifyCredentialPoJoModel);
+    ResponseData<Boolean> verify(
+        VerifyCredentialPoJoModel verifyCredentialPoJoModel,
+        boolean bypassCache);
 
 
     /**
@@ -88,6 +104,14 @@ public interface DemoOtherService {
     ResponseData<PresentationPolicyE> createPresentationPolicyE(
         CreatePresentationPolicyEModel createPresentationPolicyEModel);
 
+    /**
+     * 注册PresentationPolicyE，解析后缓存，之后创建Presentation时可只传policyId.
+     * @param createPresentationPolicyEModel 创建PresentationPolicy模板
+     * @return
+     */
+    ResponseData<PresentationPolicyE> registerPresentationPolicyE(
+        CreatePresentationPolicyEModel createPresentationPolicyEModel);
+
 
     /**
      * 获取电子凭证hash.
@@ -19,10 +19,17 @@
 
 package com.webank.weid.demo.service;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
+import com.webank.weid.demo.common.dto.BatchItem;
 import com.webank.weid.protocol.base.CptBaseInfo;
+import com.webank.weid.protocol.base.Credential;
 import com.webank.weid.protocol.base.CredentialWrapper;
+import com.webank.weid.protocol.base.WeIdDocument;
 import com.webank.weid.protocol.response.CreateWeIdDataResult;
 import com.webank.weid.protocol.response.ResponseData;
 
@@ -50,6 +57,46 @@ public interface DemoService {
      */
     ResponseData<CreateWeIdDataResult> createWeId();
 
+    /**
+     * create weIds in batch and set related properties.
+     *
+     * @param count the number of weIds
+     * @return returns the create weIds and public keys, in completion order
+     */
+    List<ResponseData<CreateWeIdDataResult>> createWeIds(int count);
+
+    /**
+     * create weIds in batch and set related properties, the results are handed to the
+     * consumer as soon as their private keys are saved.
+     *
+     * @param count the number of weIds
+     * @param consumer receives the create weIds and public keys, in completion order
+     */
+    void createWeIds(int count, Consumer<ResponseData<CreateWeIdDataResult>> consumer);
+
+    /**
+     * get the weId document.
+     *
+     * @param weId the weId
+     * @param bypassCache resolve from the chain instead of the weId document cache
+     * @return returns the weId document
+     */
+    ResponseData<WeIdDocument> getWeIdDocument(String weId, boolean bypassCache);
+
+    /**
+     * resolve the weId documents in parallel, the results are handed to the consumer as
+     * they complete.
+     *
+     * @param weIds the weIds
+     * @param bypassCache resolve from the chain instead of the weId document cache
+     * @param consumer receives the documents with the position of their weIds
+     */
+    void getWeIdDocuments(
+        List<String> weIds,
+        boolean bypassCache,
+        Consumer<BatchItem<WeIdDocument>> consumer
+    );
+
     /**
      * register on the chain as an authoritative body.
      * 
@@ -72,6 +119,22 @@ public interface DemoService {
         Map<String, Object> claim
     );
 
+    /**
+     * register CPTs in batch, a schema already recorded in the manifest is skipped,
+     * the results are handed to the consumer as they complete.
+     *
+     * @param publisher the weId of the publisher
+     * @param privateKey the private key of the publisher
+     * @param schemas the JSON schemas, concatenated, newline delimited or in a JSON array
+     * @param consumer receives the CPTs with the position of their schemas
+     */
+    void registCpts(
+        String publisher,
+        String privateKey,
+        String schemas,
+        Consumer<BatchItem<CptBaseInfo>> consumer
+    );
+
     /**
      * create credential.
      *
@@ -88,11 +151,40 @@ public interface DemoService {
         Map<String, Object> claimDate
     );
 
+    /**
+     * create credentials of one issuer and CPT in batch, signed in parallel.
+     * a failed claim only fails its own item.
+     *
+     * @param cptId the cptId of CPT
+     * @param issuer the weId of issue
+     * @param privateKey the private key of issuer
+     * @param claimDataList the data of claims
+     * @return returns the credentials in the order of the claims
+     */
+    ResponseData<List<BatchItem<CredentialWrapper>>> createCredentials(
+        Integer cptId,
+        String issuer,
+        String privateKey,
+        List<Map<String, Object>> claimDataList
+    );
+
     /**
      * verifyEvidence credential.
      * 
-     * @param credentialJson credentials in JSON format
+     * @param credential the credential bound from the request
+     * @param bypassCache verify on chain even if the credential was verified recently
      * @return returns the result of verifyEvidence
      */
-    ResponseData<Boolean> verifyCredential(String credentialJson);
+    ResponseData<Boolean> verifyCredential(Credential credential, boolean bypassCache);
+
+    /**
+     * verify the credentials read incrementally from the stream, in parallel with a bounded
+     * window, the results are handed to the consumer as they complete.
+     *
+     * @param inputStream the credentials in JSON, newline delimited
+     * @param consumer receives the results with the position and id of their credentials
+     * @throws IOException if the stream can not be read
+     */
+    void verifyCredentials(InputStream inputStream, Consumer<BatchItem<Boolean>> consumer)
+        throws IOException;
 }
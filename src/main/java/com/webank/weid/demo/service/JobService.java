@@ -0,0 +1,61 @@
+/*
+ *       Copyright© (2019) WeBank Co., Ltd.
+ *
+ *       This file is part of weidentity-sample.
+ *
+ *       weidentity-sample is free software: you can redistribute it and/or modify
+ *       it under the terms of the GNU Lesser General Public License as published by
+ *       the Free Software Foundation, either version 3 of the License, or
+ *       (at your option) any later version.
+ *
+ *       weidentity-sample is distributed in the hope that it will be useful,
+ *       but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *       MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *       GNU Lesser General Public License for more details.
+ *
+ *       You should have received a copy of the GNU Lesser General Public License
+ *       along with weidentity-sample.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.webank.weid.demo.service;
+
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import com.webank.weid.demo.common.dto.Job;
+import com.webank.weid.protocol.response.ResponseData;
+
+/**
+ * asynchronous job service, runs chain-writing operations on a bounded executor.
+ *
+ * @author agent
+ *
+ */
+public interface JobService {
+
+    /**
+     * submit the operation as a job.
+     *
+     * @param type the type of job
+     * @param operation the operation
+     * @return returns the job id, or an error when the job queue is full
+     */
+    ResponseData<String> submit(String type, Supplier<ResponseData<?>> operation);
+
+    /**
+     * get the job.
+     *
+     * @param jobId the id of job
+     * @return returns the job, null if it does not exist or is evicted
+     */
+    Job getJob(String jobId);
+
+    /**
+     * call the listener once the job is finished, immediately if it is already finished.
+     *
+     * @param jobId the id of job
+     * @param listener the listener
+     * @return false if the job does not exist or is evicted
+     */
+    boolean onFinished(String jobId, Consumer<Job> listener);
+}
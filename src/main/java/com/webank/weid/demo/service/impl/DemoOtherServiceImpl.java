@@ -1,17 +1,20 @@
 package com.webank.weid.demo.service.impl;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import com.webank.weid.constant.ErrorCode;
+import com.webank.weid.demo.common.dto.BatchItem;
+import com.webank.weid.demo.common.keystore.KeyStore;
 import com.webank.weid.demo.common.model.AddSignatureModel;
 import com.webank.weid.demo.common.model.CreateCredentialPojoModel;
+import com.webank.weid.demo.common.model.CreateCredentialsModel;
 import com.webank.weid.demo.common.model.CreateEvidenceModel;
 import com.webank.weid.demo.common.model.CreatePresentationModel;
 import com.webank.weid.demo.common.model.CreatePresentationPolicyEModel;
@@ -24,7 +27,12 @@ import com.webank.weid.demo.common.model.SetHashValueModel;
 import com.webank.weid.demo.common.model.VerifyCredentialModel;
 import com.webank.weid.demo.common.model.VerifyCredentialPoJoModel;
 import com.webank.weid.demo.common.model.VerifyEvidenceModel;
-import com.webank.weid.demo.common.util.PrivateKeyUtil;
+import com.webank.weid.demo.common.util.CptSchemaCache;
+import com.webank.weid.demo.common.util.PolicyCache;
+import com.webank.weid.demo.common.util.PropertiesUtils;
+import com.webank.weid.demo.common.util.SignPool;
+import com.webank.weid.demo.common.util.VerificationCache;
+import com.webank.weid.demo.common.util.VerificationPipeline;
 import com.webank.weid.demo.service.DemoOtherService;
 import com.webank.weid.protocol.base.Challenge;
 import com.webank.weid.protocol.base.ClaimPolicy;
@@ -64,12 +72,32 @@ public class DemoOtherServiceImpl implements DemoOtherService {
 
     private static final Logger logger = LoggerFactory.getLogger(DemoOtherServiceImpl.class);
 
+    /**
+     * the maximum number of credentials of one batch issuance.
+     */
+    private static final int CREDENTIAL_BATCH_MAX_COUNT =
+        Integer.parseInt(PropertiesUtils.getProperty("weid.credentialBatch.maxCount", "1000"));
+
     private CredentialService credentialService = new CredentialServiceImpl();
 
     private CredentialPojoService credentialPojoService = new CredentialPojoServiceImpl();
 
     private EvidenceService evidenceService = new EvidenceServiceImpl();
 
+    private VerificationPipeline verificationPipeline = VerificationPipeline.getInstance();
+
+    @Autowired
+    private KeyStore keyStore;
+
+    @Autowired
+    private CptSchemaCache cptSchemaCache;
+
+    @Autowired
+    private VerificationCache verificationCache;
+
+    @Autowired
+    private PolicyCache policyCache;
+
     // 生成 Credential 的Hash
     @Override
     public ResponseData<String> getCredentialHash(VerifyCredentialModel verifyCredentialModel) {
@@ -83,9 +111,7 @@ public class DemoOtherServiceImpl implements DemoOtherService {
             }
 
             // 根据外部入参, 获取 Credential 详情
-            String credentialJson
-                = DataToolUtils.mapToCompactJson(verifyCredentialModel.getCredential());
-            Credential credential = DataToolUtils.deserialize(credentialJson, Credential.class);
+            Credential credential = verifyCredentialModel.getCredential();
 
             // 最终使用Sha3 算出Hash
             ResponseData<String> responseData = credentialService.getCredentialHash(credential);
@@ -115,33 +141,89 @@ public class DemoOtherServiceImpl implements DemoOtherService {
             return new ResponseData<>(null, ErrorCode.ILLEGAL_INPUT);
         }
 
+        // 获取 发行方的 认证方式
+        WeIdAuthentication weIdAuthentication =
+            getWeIdAuthentication(createCredentialPojoModel.getIssuer());
+
+        // 调用 SDK 成省对应的Credential信息
+        ResponseData<CredentialPojo> responseData = createCredentialPoJo(
+            createCredentialPojoModel.getCptId(),
+            weIdAuthentication,
+            createCredentialPojoModel.getClaimData());
+        logger.info("{} responseData:{}",
+            methodName, DataToolUtils.objToJsonStrWithNoPretty(responseData));
+        return responseData;
+    }
+
+    @Override
+    public ResponseData<List<BatchItem<CredentialPojo>>> createCredentialPoJos(
+        CreateCredentialsModel createCredentialsModel) {
+
+        if (null == createCredentialsModel
+            || StringUtils.isBlank(createCredentialsModel.getIssuer())
+            || null == createCredentialsModel.getCptId()
+            || null == createCredentialsModel.getClaimDataList()
+            || createCredentialsModel.getClaimDataList().isEmpty()
+            || createCredentialsModel.getClaimDataList().size() > CREDENTIAL_BATCH_MAX_COUNT
+        ) {
+            return new ResponseData<>(null, ErrorCode.ILLEGAL_INPUT);
+        }
+        logger.info("begin create credentialPojos in batch, cptId={}, issuer={}, count={}",
+            createCredentialsModel.getCptId(),
+            createCredentialsModel.getIssuer(),
+            createCredentialsModel.getClaimDataList().size());
+
+        // the key of the issuer is loaded once for the batch.
+        WeIdAuthentication weIdAuthentication =
+            getWeIdAuthentication(createCredentialsModel.getIssuer());
+        List<BatchItem<CredentialPojo>> items = SignPool.mapInOrder(
+            createCredentialsModel.getClaimDataList(),
+            (index, claimData) -> {
+                ResponseData<CredentialPojo> response;
+                try {
+                    response = createCredentialPoJo(
+                        createCredentialsModel.getCptId(), weIdAuthentication, claimData);
+                } catch (Exception e) {
+                    logger.error("createCredentialPoJos error, index={}", index, e);
+                    response = new ResponseData<>(null, ErrorCode.CREDENTIAL_ERROR);
+                }
+                return new BatchItem<CredentialPojo>(index, null, response);
+            });
+        return new ResponseData<>(items, ErrorCode.SUCCESS);
+    }
+
+    /**
+     * check the claim against the CPT locally and create the credential.
+     */
+    private ResponseData<CredentialPojo> createCredentialPoJo(
+        Integer cptId,
+        WeIdAuthentication weIdAuthentication,
+        Map<String, Object> claimData) {
+
+        // check the claim against the CPT locally before signing.
+        ErrorCode claimCheck = cptSchemaCache.validateClaim(cptId, claimData);
+        if (claimCheck != ErrorCode.SUCCESS) {
+            return new ResponseData<>(null, claimCheck);
+        }
+
         CreateCredentialPojoArgs<Map<String, Object>> createCredentialPojoArgs
             = new CreateCredentialPojoArgs<>();
 
         // 提取外部入参的 cptId
-        createCredentialPojoArgs.setCptId(createCredentialPojoModel.getCptId());
+        createCredentialPojoArgs.setCptId(cptId);
         // 提取外部入参的 发行者WeId
-        createCredentialPojoArgs.setIssuer(createCredentialPojoModel.getIssuer());
+        createCredentialPojoArgs.setIssuer(weIdAuthentication.getWeId());
 
         // 设置 Credential的过期时间
         createCredentialPojoArgs.setExpirationDate(
             System.currentTimeMillis() + 1000L * 60 * 60 * 24 * 365 * 100);
 
-        // 获取 发行方的 认证方式
-        WeIdAuthentication weIdAuthentication =
-            getWeIdAuthentication(createCredentialPojoModel.getIssuer());
         createCredentialPojoArgs.setWeIdAuthentication(weIdAuthentication);
 
         // 提取外部入参的 Claim信息
-        createCredentialPojoArgs.setClaim(createCredentialPojoModel.getClaimData());
-
+        createCredentialPojoArgs.setClaim(claimData);
 
-        // 调用 SDK 成省对应的Credential信息
-        ResponseData<CredentialPojo> responseData
-            = credentialPojoService.createCredential(createCredentialPojoArgs);
-        logger.info("{} responseData:{}",
-            methodName, DataToolUtils.objToJsonStrWithNoPretty(responseData));
-        return responseData;
+        return credentialPojoService.createCredential(createCredentialPojoArgs);
     }
 
     // todo 创建 选择性披露 Credential 详情
@@ -186,7 +268,9 @@ public class DemoOtherServiceImpl implements DemoOtherService {
 
     // todo 验证 Credential详情
     @Override
-    public ResponseData<Boolean> verify(VerifyCredentialPoJoModel verifyCredentialPoJoModel) {
+    public ResponseData<Boolean> verify(
+        VerifyCredentialPoJoModel verifyCredentialPoJoModel,
+        boolean bypassCache) {
 
         String methodName = Thread.currentThread().getStackTrace()[1].getMethodName();
         try {
@@ -204,9 +288,18 @@ public class DemoOtherServiceImpl implements DemoOtherService {
             CredentialPojo credentialPojo = DataToolUtils.mapToObj(
                 verifyCredentialPoJoModel.getCredential(), CredentialPojo.class);
 
-            // 开始验证
-            ResponseData<Boolean> responseVerify = credentialPojoService.verify(
-                verifyCredentialPoJoModel.getIssuerWeId(), credentialPojo);
+            // 开始验证，签发者 WeId Document 未变更时复用最近一次成功的验证结果
+            String issuerWeId = verifyCredentialPoJoModel.getIssuerWeId();
+            ResponseData<Boolean> responseVerify = verificationCache.verify(
+                VerificationCache.hash(
+                    DataToolUtils.mapToCompactJson(verifyCredentialPoJoModel.getCredential())),
+                issuerWeId,
+                credentialPojo.getExpirationDate(),
+                bypassCache,
+                () -> verificationPipeline.verify(
+                    issuerWeId,
+                    credentialPojo,
+                    () -> credentialPojoService.verify(issuerWeId, credentialPojo)));
             logger.info("{} responseVerify: {}", methodName,
                 DataToolUtils.objToJsonStrWithNoPretty(responseVerify));
             return responseVerify;
@@ -229,11 +322,9 @@ public class DemoOtherServiceImpl implements DemoOtherService {
                 return new ResponseData<>(null, ErrorCode.ILLEGAL_INPUT);
             }
 
-            //创建PresentationPolicyE
-            PresentationPolicyE presentationPolicyE
-                = PresentationPolicyE.fromJson(
-                DataToolUtils.mapToCompactJson(
-                    createPresentationPolicyEModel.getPresentationPolicyE()));
+            //创建PresentationPolicyE，相同内容的策略只解析一次
+            PresentationPolicyE presentationPolicyE = policyCache.resolve(
+                createPresentationPolicyEModel.getPresentationPolicyE()).getPresentationPolicyE();
             logger.info("{} presentationPolicyE: {}", methodName,
                 DataToolUtils.objToJsonStrWithNoPretty(presentationPolicyE));
             return new ResponseData<>(presentationPolicyE, ErrorCode.SUCCESS);
@@ -243,6 +334,27 @@ public class DemoOtherServiceImpl implements DemoOtherService {
         }
     }
 
+    @Override
+    public ResponseData<PresentationPolicyE> registerPresentationPolicyE(
+        CreatePresentationPolicyEModel createPresentationPolicyEModel) {
+
+        String methodName = Thread.currentThread().getStackTrace()[1].getMethodName();
+        try {
+            if (null == createPresentationPolicyEModel
+                || null == createPresentationPolicyEModel.getPresentationPolicyE()
+                || createPresentationPolicyEModel.getPresentationPolicyE().isEmpty()) {
+                return new ResponseData<>(null, ErrorCode.ILLEGAL_INPUT);
+            }
+            PolicyCache.Policy policy =
+                policyCache.register(createPresentationPolicyEModel.getPresentationPolicyE());
+            logger.info("{} policyId: {}, hash: {}", methodName, policy.getId(), policy.getHash());
+            return new ResponseData<>(policy.getPresentationPolicyE(), ErrorCode.SUCCESS);
+        } catch (Exception e) {
+            logger.error("{} error", methodName, e);
+            return new ResponseData<>(null, ErrorCode.PRESENTATION_POLICY_INVALID);
+        }
+    }
+
     @Override
     public ResponseData<String> getCredentialPoJoHash(
         GetCredentialHashModel getCredentialHashModel) {
@@ -284,28 +396,28 @@ public class DemoOtherServiceImpl implements DemoOtherService {
                 || null == createPresentationModel.getCredentialList()
                 || createPresentationModel.getCredentialList().isEmpty()
                 || StringUtils.isBlank(createPresentationModel.getChallengeUserWeId())
-                || null == createPresentationModel.getPresentationPolicyE()
-                || createPresentationModel.getPresentationPolicyE().isEmpty()
+                || (null == createPresentationModel.getPolicyId()
+                    && (null == createPresentationModel.getPresentationPolicyE()
+                    || createPresentationModel.getPresentationPolicyE().isEmpty()))
                 || StringUtils.isBlank(createPresentationModel.getWeId())) {
                 return new ResponseData<>(null, ErrorCode.ILLEGAL_INPUT);
             }
 
-            List<CredentialPojo> credentialList = new ArrayList<CredentialPojo>();
-            for (Map<String, Object> map : createPresentationModel.getCredentialList()) {
-                CredentialPojo credentialPojo = DataToolUtils.mapToObj(map, CredentialPojo.class);
-                credentialList.add(credentialPojo);
-            }
+            List<CredentialPojo> credentialList = createPresentationModel.getCredentialList();
 
             //创建Challenge  todo  创建 挑战
             Challenge challenge = Challenge.create(
                 createPresentationModel.getChallengeUserWeId(),
                 String.valueOf(System.currentTimeMillis()));
 
-            //创建PresentationPolicyE
-            PresentationPolicyE presentationPolicyE
-                = PresentationPolicyE.fromJson(
-                    DataToolUtils.mapToCompactJson(
-                        createPresentationModel.getPresentationPolicyE()));
+            //获取PresentationPolicyE，只传policyId时直接使用已注册的策略，不做任何JSON解析
+            PolicyCache.Policy policy = null == createPresentationModel.getPolicyId()
+                ? policyCache.resolve(createPresentationModel.getPresentationPolicyE())
+                : policyCache.get(createPresentationModel.getPolicyId());
+            if (null == policy) {
+                return new ResponseData<>(null, ErrorCode.PRESENTATION_POLICY_INVALID);
+            }
+            PresentationPolicyE presentationPolicyE = policy.getPresentationPolicyE();
 
             WeIdAuthentication weIdAuthentication
                 = getWeIdAuthentication(createPresentationModel.getWeId());
@@ -338,14 +450,8 @@ public class DemoOtherServiceImpl implements DemoOtherService {
                 return new ResponseData<>(null, ErrorCode.ILLEGAL_INPUT);
             }
 
-            List<CredentialPojo> credentialList = new ArrayList<CredentialPojo>();
-            for (Map<String, Object> map : credentialPoJoAddSignature.getCredentialList()) {
-                CredentialPojo credentialPojo = DataToolUtils.mapToObj(map, CredentialPojo.class);
-                credentialList.add(credentialPojo);
-            }
-
             ResponseData<CredentialPojo> responseData = credentialPojoService.addSignature(
-                credentialList,
+                credentialPoJoAddSignature.getCredentialList(),
                 getWeIdAuthentication(credentialPoJoAddSignature.getWeid()));
             logger.info("{} responseData: {}", methodName,
                 DataToolUtils.objToJsonStrWithNoPretty(responseData));
@@ -460,8 +566,7 @@ public class DemoOtherServiceImpl implements DemoOtherService {
     }
 
     private WeIdPrivateKey getWeIdPrivateKey(String weid) {
-        String privateKey = PrivateKeyUtil
-            .getPrivateKeyByWeId(PrivateKeyUtil.KEY_DIR, weid);
+        String privateKey = keyStore.get(weid);
         WeIdPrivateKey weIdPrivateKey = new WeIdPrivateKey();
         weIdPrivateKey.setPrivateKey(privateKey);
         return weIdPrivateKey;
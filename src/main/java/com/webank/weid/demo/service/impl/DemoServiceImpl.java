@@ -19,22 +19,54 @@
 
 package com.webank.weid.demo.service.impl;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import javax.annotation.PreDestroy;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import com.webank.weid.constant.ErrorCode;
+import com.webank.weid.demo.common.dto.BatchItem;
+import com.webank.weid.demo.common.dto.PasswordKey;
+import com.webank.weid.demo.common.keystore.KeyStore;
+import com.webank.weid.demo.common.util.CptBatchRegistrar;
+import com.webank.weid.demo.common.util.CptSchemaCache;
 import com.webank.weid.demo.common.util.FileUtil;
+import com.webank.weid.demo.common.util.IssuerCache;
+import com.webank.weid.demo.common.util.KeyPairPool;
+import com.webank.weid.demo.common.util.NamedThreadFactory;
+import com.webank.weid.demo.common.util.NdjsonUtil;
 import com.webank.weid.demo.common.util.PrivateKeyUtil;
+import com.webank.weid.demo.common.util.PropertiesUtils;
+import com.webank.weid.demo.common.util.SignPool;
+import com.webank.weid.demo.common.util.VerificationCache;
+import com.webank.weid.demo.common.util.VerificationPipeline;
+import com.webank.weid.demo.common.util.WeIdDocumentCache;
 import com.webank.weid.demo.service.DemoService;
 import com.webank.weid.protocol.base.AuthorityIssuer;
 import com.webank.weid.protocol.base.CptBaseInfo;
 import com.webank.weid.protocol.base.Credential;
 import com.webank.weid.protocol.base.CredentialWrapper;
 import com.webank.weid.protocol.base.WeIdAuthentication;
+import com.webank.weid.protocol.base.WeIdDocument;
 import com.webank.weid.protocol.base.WeIdPrivateKey;
+import com.webank.weid.protocol.base.WeIdPublicKey;
 import com.webank.weid.protocol.request.CptMapArgs;
 import com.webank.weid.protocol.request.CreateCredentialArgs;
 import com.webank.weid.protocol.request.CreateWeIdArgs;
@@ -51,7 +83,6 @@ import com.webank.weid.service.impl.AuthorityIssuerServiceImpl;
 import com.webank.weid.service.impl.CptServiceImpl;
 import com.webank.weid.service.impl.CredentialServiceImpl;
 import com.webank.weid.service.impl.WeIdServiceImpl;
-import com.webank.weid.util.DataToolUtils;
 
 /**
  * Demo service.
@@ -63,19 +94,130 @@ public class DemoServiceImpl implements DemoService {
 
     private static final Logger logger = LoggerFactory.getLogger(DemoServiceImpl.class);
 
+    /**
+     * the maximum number of weIds of one batch creation.
+     */
+    private static final int BATCH_MAX_COUNT =
+        Integer.parseInt(PropertiesUtils.getProperty("weid.batch.maxCount", "10000"));
+
+    /**
+     * the maximum number of credentials of one batch issuance.
+     */
+    private static final int CREDENTIAL_BATCH_MAX_COUNT =
+        Integer.parseInt(PropertiesUtils.getProperty("weid.credentialBatch.maxCount", "1000"));
+
+    /**
+     * the maximum number of weIds being created on the chain at the same time.
+     */
+    private static final int BATCH_MAX_IN_FLIGHT =
+        Integer.parseInt(PropertiesUtils.getProperty("weid.batch.maxInFlight", "32"));
+
+    /**
+     * the number of private keys written to the keystore at once.
+     */
+    private static final int BATCH_KEY_SIZE =
+        Integer.parseInt(PropertiesUtils.getProperty("weid.batch.keyBatchSize", "100"));
+
+    /**
+     * the executor of batch weId creation, shared by all batches.
+     */
+    private final ExecutorService batchExecutor = Executors.newFixedThreadPool(
+        BATCH_MAX_IN_FLIGHT, new NamedThreadFactory("weid-batch"));
+
+    /**
+     * the maximum number of weIds of one bulk document resolve.
+     */
+    private static final int RESOLVE_MAX_COUNT =
+        Integer.parseInt(PropertiesUtils.getProperty("weid.resolve.maxCount", "1000"));
+
+    /**
+     * the maximum number of documents one bulk resolve reads from the chain at the same time.
+     */
+    private static final int RESOLVE_MAX_IN_FLIGHT =
+        Integer.parseInt(PropertiesUtils.getProperty("weid.resolve.maxInFlight", "16"));
+
+    /**
+     * the executor of bulk document resolve, shared by all requests.
+     */
+    private final ExecutorService resolveExecutor = Executors.newFixedThreadPool(
+        Integer.parseInt(PropertiesUtils.getProperty("weid.resolve.threads", "64")),
+        new NamedThreadFactory("weid-resolve"));
+
+    /**
+     * the maximum number of credentials a stream verification holds at the same time.
+     */
+    private static final int VERIFY_WINDOW =
+        Integer.parseInt(PropertiesUtils.getProperty("weid.verifyStream.window", "64"));
+
+    /**
+     * the executor of stream verification, shared by all requests.
+     */
+    private final ExecutorService verifyExecutor = Executors.newFixedThreadPool(
+        Integer.parseInt(PropertiesUtils.getProperty("weid.verifyStream.threads", "32")),
+        new NamedThreadFactory("weid-verify"));
+
+    /**
+     * whether to set the public key and the authentication of a new weId concurrently.
+     */
+    private static final boolean CONCURRENT_SET_ATTR =
+        Boolean.parseBoolean(PropertiesUtils.getProperty("weid.create.concurrentSetAttr", "false"));
+
+    /**
+     * the executor of the set authentication transactions when set concurrently.
+     */
+    private final ExecutorService setAttrExecutor = Executors.newFixedThreadPool(
+        Integer.parseInt(PropertiesUtils.getProperty("weid.create.setAttrThreads", "32")),
+        new NamedThreadFactory("weid-set-attr"));
+
     private AuthorityIssuerService authorityIssuerService = new AuthorityIssuerServiceImpl();
 
     private CptService cptService = new CptServiceImpl();
 
+    private CptBatchRegistrar cptBatchRegistrar = CptBatchRegistrar.getInstance();
+
+    private VerificationPipeline verificationPipeline = VerificationPipeline.getInstance();
+
     private CredentialService credentialService = new CredentialServiceImpl();
 
     private WeIdService weIdService = new WeIdServiceImpl();
 
+    @Autowired
+    private KeyStore keyStore;
+
+    /**
+     * the pre-generated key pairs, absent when weid.keyPairPool.enable is false.
+     */
+    @Autowired(required = false)
+    private KeyPairPool keyPairPool;
+
+    @Autowired
+    private WeIdDocumentCache weIdDocumentCache;
+
+    @Autowired
+    private CptSchemaCache cptSchemaCache;
+
+    @Autowired
+    private VerificationCache verificationCache;
+
+    @Autowired
+    private IssuerCache issuerCache;
+
     /**
      * set validity period to 360 days by default.
      */
     private static final long EXPIRATION_DATE  = 1000L * 60 * 60 * 24 * 365 * 100;
 
+    /**
+     * stop the executors of the batch, resolve, verify and set attribute requests when the
+     * application context closes, the submitted tasks are still run.
+     */
+    @PreDestroy
+    public void shutdown() {
+        batchExecutor.shutdown();
+        resolveExecutor.shutdown();
+        verifyExecutor.shutdown();
+        setAttrExecutor.shutdown();
+    }
 
     /**
      * create weId with public and private keys and set related properties.
@@ -100,8 +242,7 @@ public class DemoServiceImpl implements DemoService {
         }
 
         // todo  将 私钥 和 注册DID的结果存储到本地指定文件中
-        PrivateKeyUtil.savePrivateKey(
-            PrivateKeyUtil.KEY_DIR,
+        this.savePrivateKey(
             createResult.getResult(), // 这里面是 weId
             privateKey
         );
@@ -152,8 +293,7 @@ public class DemoServiceImpl implements DemoService {
         if (response.getErrorCode().intValue() == ErrorCode.SUCCESS.getCode()) {
 
             // 在本地 文件 保存 priKey
-            PrivateKeyUtil.savePrivateKey(
-                PrivateKeyUtil.KEY_DIR,
+            this.savePrivateKey(
                 response.getResult().getWeId(),
                 response.getResult().getUserWeIdPrivateKey().getPrivateKey()
             );
@@ -168,6 +308,233 @@ public class DemoServiceImpl implements DemoService {
         return response;
     }
 
+    /**
+     * create weIds in batch, see {@link #createWeIds(int, Consumer)}.
+     *
+     * @param count the number of weIds
+     * @return returns the results in completion order
+     */
+    public List<ResponseData<CreateWeIdDataResult>> createWeIds(int count) {
+
+        List<ResponseData<CreateWeIdDataResult>> results =
+            new ArrayList<ResponseData<CreateWeIdDataResult>>();
+        createWeIds(count, results::add);
+        return results;
+    }
+
+    /**
+     * create weIds in batch. at most weid.batch.maxInFlight weIds are on the chain at the
+     * same time, each of them runs createWeId, setPublicKey and setAuthentication. the
+     * private keys are written to the keystore in batches of weid.batch.keyBatchSize, a
+     * result is handed to the consumer only after its private key is saved.
+     *
+     * <p>when the consumer throws, no more weIds are submitted, the ones in flight are
+     * completed and their private keys saved, then the exception is rethrown.
+     *
+     * @param count the number of weIds
+     * @param consumer receives the results in completion order, without private keys
+     */
+    public void createWeIds(int count, Consumer<ResponseData<CreateWeIdDataResult>> consumer) {
+
+        if (count <= 0 || count > BATCH_MAX_COUNT) {
+            logger.error("createWeIds count is illegal, count={}", count);
+            consumer.accept(new ResponseData<CreateWeIdDataResult>(null, ErrorCode.ILLEGAL_INPUT));
+            return;
+        }
+        logger.info("begin create weIds in batch, count={}", count);
+
+        CompletionService<ResponseData<CreateWeIdDataResult>> completionService =
+            new ExecutorCompletionService<ResponseData<CreateWeIdDataResult>>(batchExecutor);
+        Map<String, String> pendingKeys = new LinkedHashMap<String, String>();
+        List<ResponseData<CreateWeIdDataResult>> pendingResults =
+            new ArrayList<ResponseData<CreateWeIdDataResult>>();
+        RuntimeException consumerException = null;
+        boolean interrupted = false;
+        int submitted = 0;
+        int completed = 0;
+        while (completed < submitted || (consumerException == null && submitted < count)) {
+            while (consumerException == null
+                && submitted < count
+                && submitted - completed < BATCH_MAX_IN_FLIGHT) {
+                completionService.submit(this::createWeIdInBatch);
+                submitted++;
+            }
+
+            // the weIds in flight are already on the chain, wait for them to save their keys.
+            Future<ResponseData<CreateWeIdDataResult>> future;
+            try {
+                future = completionService.take();
+            } catch (InterruptedException e) {
+                interrupted = true;
+                continue;
+            }
+            completed++;
+            ResponseData<CreateWeIdDataResult> response = getBatchResult(future);
+            pendingResults.add(response);
+            if (response.getErrorCode().intValue() == ErrorCode.SUCCESS.getCode()) {
+                pendingKeys.put(
+                    response.getResult().getWeId(),
+                    response.getResult().getUserWeIdPrivateKey().getPrivateKey()
+                );
+            }
+            if (pendingResults.size() < BATCH_KEY_SIZE && completed < submitted) {
+                continue;
+            }
+
+            this.savePrivateKeys(pendingKeys);
+            pendingKeys.clear();
+            for (ResponseData<CreateWeIdDataResult> result : pendingResults) {
+                if (null != result.getResult()) {
+                    result.getResult().setUserWeIdPrivateKey(null);
+                }
+                if (consumerException == null) {
+                    try {
+                        consumer.accept(result);
+                    } catch (RuntimeException e) {
+                        logger.error("createWeIds consumer error, stop submitting", e);
+                        consumerException = e;
+                    }
+                }
+            }
+            pendingResults.clear();
+        }
+        logger.info("create weIds in batch finish, count={}, submitted={}", count, submitted);
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (consumerException != null) {
+            throw consumerException;
+        }
+    }
+
+    /**
+     * create one weId of a batch, the exception is converted to an error response.
+     */
+    private ResponseData<CreateWeIdDataResult> createWeIdInBatch() {
+        try {
+            return createWeIdWithSetAttr();
+        } catch (Exception e) {
+            logger.error("createWeIdInBatch error", e);
+            return new ResponseData<CreateWeIdDataResult>(null, ErrorCode.UNKNOW_ERROR);
+        }
+    }
+
+    private ResponseData<CreateWeIdDataResult> getBatchResult(
+        Future<ResponseData<CreateWeIdDataResult>> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException | ExecutionException e) {
+            logger.error("createWeIds get result error", e);
+            return new ResponseData<CreateWeIdDataResult>(null, ErrorCode.UNKNOW_ERROR);
+        }
+    }
+
+    /**
+     * save the private keys of weIds into the keystore at once, a failure is logged only
+     * because the weIds are already on the chain.
+     *
+     * @param privateKeys weId to private key
+     */
+    private void savePrivateKeys(Map<String, String> privateKeys) {
+        if (privateKeys.isEmpty()) {
+            return;
+        }
+        try {
+            keyStore.putAll(privateKeys);
+        } catch (Exception e) {
+            logger.error("savePrivateKeys error, weIds={}", privateKeys.keySet(), e);
+        }
+    }
+
+    /**
+     * get the weId document, from the weId document cache unless bypassed.
+     *
+     * @param weId the weId
+     * @param bypassCache resolve from the chain
+     * @return returns the weId document
+     */
+    public ResponseData<WeIdDocument> getWeIdDocument(String weId, boolean bypassCache) {
+        return weIdDocumentCache.getWeIdDocument(weId, bypassCache);
+    }
+
+    /**
+     * resolve the weId documents in parallel, at most weid.resolve.maxInFlight of them at
+     * the same time. the concurrent lookups of the same weId, in this batch or others,
+     * share one chain call through the weId document cache.
+     *
+     * @param weIds the weIds
+     * @param bypassCache resolve from the chain
+     * @param consumer receives the documents in completion order
+     */
+    public void getWeIdDocuments(
+        List<String> weIds,
+        boolean bypassCache,
+        Consumer<BatchItem<WeIdDocument>> consumer) {
+
+        if (null == weIds || weIds.isEmpty() || weIds.size() > RESOLVE_MAX_COUNT) {
+            logger.error("getWeIdDocuments weIds is illegal.");
+            consumer.accept(new BatchItem<WeIdDocument>(
+                -1, null, new ResponseData<WeIdDocument>(null, ErrorCode.ILLEGAL_INPUT)));
+            return;
+        }
+        CompletionService<BatchItem<WeIdDocument>> completionService =
+            new ExecutorCompletionService<BatchItem<WeIdDocument>>(resolveExecutor);
+        List<Future<BatchItem<WeIdDocument>>> futures =
+            new ArrayList<Future<BatchItem<WeIdDocument>>>();
+        int submitted = 0;
+        try {
+            for (int completed = 0; completed < weIds.size(); completed++) {
+                while (submitted < weIds.size() && submitted - completed < RESOLVE_MAX_IN_FLIGHT) {
+                    int index = submitted++;
+                    String weId = weIds.get(index);
+                    futures.add(completionService.submit(
+                        () -> resolveWeIdDocument(index, weId, bypassCache)));
+                }
+                consumer.accept(completionService.take().get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.error("getWeIdDocuments interrupted.");
+        } catch (ExecutionException e) {
+            // resolveWeIdDocument converts the exceptions to error responses.
+            logger.error("getWeIdDocuments error", e.getCause());
+        } finally {
+            for (Future<BatchItem<WeIdDocument>> future : futures) {
+                future.cancel(false);
+            }
+        }
+    }
+
+    private BatchItem<WeIdDocument> resolveWeIdDocument(
+        int index,
+        String weId,
+        boolean bypassCache) {
+
+        ResponseData<WeIdDocument> response;
+        try {
+            response = weIdDocumentCache.getWeIdDocument(weId, bypassCache);
+        } catch (Exception e) {
+            logger.error("resolveWeIdDocument error, weId={}", weId, e);
+            response = new ResponseData<WeIdDocument>(null, ErrorCode.UNKNOW_ERROR);
+        }
+        return new BatchItem<WeIdDocument>(index, weId, response);
+    }
+
+    /**
+     * save the private key of weId into the keystore, a failure is logged only
+     * because the weId is already on the chain.
+     *
+     * @param weId the weId
+     * @param privateKey the private key
+     */
+    private void savePrivateKey(String weId, String privateKey) {
+        try {
+            keyStore.put(weId, privateKey);
+        } catch (Exception e) {
+            logger.error("savePrivateKey error, weId={}", weId, e);
+        }
+    }
+
     /**
     * 注册 WeId 并 设置 Document 中某些关联字段
     *
@@ -182,7 +549,8 @@ public class DemoServiceImpl implements DemoService {
         // 1, create weId, this method automatically creates public and private keys
         //
         // 使用本地的公私钥对, 创建 weId 并存储在chain
-        ResponseData<CreateWeIdDataResult> createResult = weIdService.createWeId();
+        ResponseData<CreateWeIdDataResult> createResult =
+            keyPairPool == null ? weIdService.createWeId() : createWeIdByKeyPairPool();
         logger.info(
             "weIdService is result,errorCode:{},errorMessage:{}",
             createResult.getErrorCode(), createResult.getErrorMessage()
@@ -192,6 +560,10 @@ public class DemoServiceImpl implements DemoService {
             return createResult;
         }
 
+        if (CONCURRENT_SET_ATTR) {
+            return setAttrConcurrently(createResult);
+        }
+
         // 2, call set public key
         //
         // 将 pubKey 存到chain
@@ -216,6 +588,103 @@ public class DemoServiceImpl implements DemoService {
         return createResult;
     }
 
+    /**
+     * set the public key and the authentication of the created weId at the same time,
+     * the authentication is submitted to the set attribute executor and the public key is
+     * set on the current thread. the error code is the same as setting them one by one,
+     * the failure of the public key takes precedence over the one of the authentication.
+     *
+     * @param createResult the result of create weId
+     * @return returns the create weId and public private keys
+     */
+    private ResponseData<CreateWeIdDataResult> setAttrConcurrently(
+        ResponseData<CreateWeIdDataResult> createResult) {
+
+        Future<ResponseData<Boolean>> setAuthenticateFuture =
+            setAttrExecutor.submit(() -> this.setAuthentication(createResult.getResult()));
+        ResponseData<Boolean> setPublicKeyRes;
+        try {
+            setPublicKeyRes = this.setPublicKey(createResult.getResult());
+        } catch (RuntimeException e) {
+            getQuietly(setAuthenticateFuture);
+            throw e;
+        }
+        ResponseData<Boolean> setAuthenticateRes = getQuietly(setAuthenticateFuture);
+
+        if (!Boolean.TRUE.equals(setPublicKeyRes.getResult())) {
+            createResult.setErrorCode(
+                ErrorCode.getTypeByErrorCode(setPublicKeyRes.getErrorCode())
+            );
+            return createResult;
+        }
+        if (null == setAuthenticateRes) {
+            createResult.setErrorCode(ErrorCode.UNKNOW_ERROR);
+            return createResult;
+        }
+        if (!Boolean.TRUE.equals(setAuthenticateRes.getResult())) {
+            createResult.setErrorCode(
+                ErrorCode.getTypeByErrorCode(setAuthenticateRes.getErrorCode())
+            );
+            return createResult;
+        }
+        return createResult;
+    }
+
+    /**
+     * wait for the set attribute transaction, returns null if it failed with an exception.
+     */
+    private ResponseData<Boolean> getQuietly(Future<ResponseData<Boolean>> future) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return future.get();
+                } catch (InterruptedException e) {
+                    // the transaction is already sent, keep waiting for its receipt.
+                    interrupted = true;
+                }
+            }
+        } catch (ExecutionException e) {
+            logger.error("set attribute error", e.getCause());
+            return null;
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * create weId with a key pair taken from the key pair pool, so the key generation
+     * is not on the request path.
+     *
+     * @return returns the create weId and public private keys
+     */
+    private ResponseData<CreateWeIdDataResult> createWeIdByKeyPairPool() {
+
+        PasswordKey passwordKey = keyPairPool.take();
+        CreateWeIdArgs createWeIdArgs = new CreateWeIdArgs();
+        createWeIdArgs.setPublicKey(passwordKey.getPublicKey());
+        createWeIdArgs.setWeIdPrivateKey(new WeIdPrivateKey());
+        createWeIdArgs.getWeIdPrivateKey().setPrivateKey(passwordKey.getPrivateKey());
+        ResponseData<String> createResult = weIdService.createWeId(createWeIdArgs);
+
+        ResponseData<CreateWeIdDataResult> response = new ResponseData<CreateWeIdDataResult>();
+        response.setErrorCode(createResult.getErrorCode());
+        response.setErrorMessage(createResult.getErrorMessage());
+        if (createResult.getErrorCode().intValue() != ErrorCode.SUCCESS.getCode()) {
+            return response;
+        }
+        CreateWeIdDataResult weIdData = new CreateWeIdDataResult();
+        weIdData.setWeId(createResult.getResult());
+        weIdData.setUserWeIdPrivateKey(new WeIdPrivateKey());
+        weIdData.getUserWeIdPrivateKey().setPrivateKey(passwordKey.getPrivateKey());
+        weIdData.setUserWeIdPublicKey(new WeIdPublicKey());
+        weIdData.getUserWeIdPublicKey().setPublicKey(passwordKey.getPublicKey());
+        response.setResult(weIdData);
+        return response;
+    }
+
     /**
     *  TODO 注意这里操作 DID的 Document
      * Set Public Key For WeIdentity DID Document.
@@ -244,6 +713,9 @@ public class DemoServiceImpl implements DemoService {
             setResponse.getErrorCode(), 
             setResponse.getErrorMessage()
         );
+        if (Boolean.TRUE.equals(setResponse.getResult())) {
+            weIdDocumentCache.onDocumentChanged(createWeIdDataResult.getWeId());
+        }
         return setResponse;
     }
 
@@ -274,6 +746,9 @@ public class DemoServiceImpl implements DemoService {
             setResponse.getErrorCode(), 
             setResponse.getErrorMessage()
         );
+        if (Boolean.TRUE.equals(setResponse.getResult())) {
+            weIdDocumentCache.onDocumentChanged(createWeIdDataResult.getWeId());
+        }
         return setResponse;
     }
 
@@ -311,6 +786,9 @@ public class DemoServiceImpl implements DemoService {
             registResponse.getErrorCode(), 
             registResponse.getErrorMessage()
         );
+        if (registResponse.getErrorCode().intValue() == ErrorCode.SUCCESS.getCode()) {
+            issuerCache.invalidate(issuer);
+        }
         return registResponse;
     }
 
@@ -350,9 +828,46 @@ public class DemoServiceImpl implements DemoService {
             response.getErrorCode(),
             response.getErrorMessage()
         );
+        if (response.getErrorCode().intValue() == ErrorCode.SUCCESS.getCode()
+            && null != response.getResult()) {
+            // the SDK normalizes the schema before writing it, so the next lookup loads
+            // the one on the chain rather than caching the submitted claim.
+            cptSchemaCache.invalidate(response.getResult().getCptId());
+        }
         return response;
     }
 
+    /**
+     * register CPTs in batch.
+     *
+     * @param publisher the weId of the publisher
+     * @param privateKey the private key of the publisher
+     * @param schemas the JSON schemas
+     * @param consumer receives the CPTs with the position of their schemas
+     */
+    @Override
+    public void registCpts(
+        String publisher,
+        String privateKey,
+        String schemas,
+        Consumer<BatchItem<CptBaseInfo>> consumer) {
+
+        List<CptBatchRegistrar.SchemaDocument> documents;
+        try {
+            documents = CptBatchRegistrar.readStream("request", schemas);
+        } catch (IOException e) {
+            logger.error("registCpts schemas are not well-formed JSON.", e);
+            consumer.accept(new BatchItem<CptBaseInfo>(
+                -1, null, new ResponseData<CptBaseInfo>(null, ErrorCode.ILLEGAL_INPUT)));
+            return;
+        }
+        WeIdAuthentication weIdAuthentication = new WeIdAuthentication();
+        weIdAuthentication.setWeId(publisher);
+        weIdAuthentication.setWeIdPrivateKey(new WeIdPrivateKey());
+        weIdAuthentication.getWeIdPrivateKey().setPrivateKey(privateKey);
+        cptBatchRegistrar.register(weIdAuthentication, documents, consumer);
+    }
+
     /**
     * TODO 创建 一个 凭证详情
      * create credential.
@@ -370,6 +885,12 @@ public class DemoServiceImpl implements DemoService {
         String privateKey,
         Map<String, Object> claimDate) {
 
+        // check the claim against the CPT locally before signing.
+        ErrorCode claimCheck = cptSchemaCache.validateClaim(cptId, claimDate);
+        if (claimCheck != ErrorCode.SUCCESS) {
+            return new ResponseData<>(null, claimCheck);
+        }
+
         // build createCredential parameters.
         //
         // 构建 凭证入参
@@ -402,23 +923,62 @@ public class DemoServiceImpl implements DemoService {
         return response;
     }
 
+    /**
+     * create credentials in batch on the sign pool, the private key is loaded once
+     * by the caller.
+     *
+     * @param cptId the cptId of CPT
+     * @param issuer the weId of issue
+     * @param privateKey the private key of issuer
+     * @param claimDataList the data of claims
+     * @return returns the credentials in the order of the claims
+     */
+    @Override
+    public ResponseData<List<BatchItem<CredentialWrapper>>> createCredentials(
+        Integer cptId,
+        String issuer,
+        String privateKey,
+        List<Map<String, Object>> claimDataList) {
+
+        if (null == claimDataList
+            || claimDataList.isEmpty()
+            || claimDataList.size() > CREDENTIAL_BATCH_MAX_COUNT) {
+            logger.error("createCredentials claimDataList is illegal.");
+            return new ResponseData<>(null, ErrorCode.ILLEGAL_INPUT);
+        }
+        logger.info("begin create credentials in batch, cptId={}, issuer={}, count={}",
+            cptId, issuer, claimDataList.size());
+
+        List<BatchItem<CredentialWrapper>> items = SignPool.mapInOrder(
+            claimDataList,
+            (index, claimData) -> {
+                ResponseData<CredentialWrapper> response;
+                try {
+                    response = createCredential(cptId, issuer, privateKey, claimData);
+                } catch (Exception e) {
+                    logger.error("createCredentials error, index={}", index, e);
+                    response = new ResponseData<>(null, ErrorCode.CREDENTIAL_ERROR);
+                }
+                return new BatchItem<CredentialWrapper>(index, null, response);
+            });
+        return new ResponseData<>(items, ErrorCode.SUCCESS);
+    }
+
     /**
     *
     * todo 用人单位校验 Credential 的正确性
     *
      * verifyEvidence credential.
      * 
-     * @param credentialJson credentials in JSON format
+     * @param credential the credential bound from the request
+     * @param bypassCache verify on chain even if the credential was verified recently
      * @return returns the result of verifyEvidence
      */
     @Override
-    public ResponseData<Boolean> verifyCredential(String credentialJson) {
+    public ResponseData<Boolean> verifyCredential(Credential credential, boolean bypassCache) {
 
         ResponseData<Boolean> verifyResponse = null;
 
-        // 序列化成 class
-        Credential credential = DataToolUtils.deserialize(credentialJson, Credential.class);
-
         // verifyEvidence credential on chain.
         //
         // todo chain 上校验 Credential 的正确性
@@ -427,7 +987,14 @@ public class DemoServiceImpl implements DemoService {
         //      校验 Credential 的时效性
         //      校验 Signature 信息
         //      校验 ...
-        verifyResponse = credentialService.verify(credential);
+        //      同一凭证在签发者 WeId Document 未变更时复用最近一次成功的校验结果
+        verifyResponse = verificationCache.verify(
+            VerificationCache.hash(credential),
+            credential.getIssuer(),
+            credential.getExpirationDate(),
+            bypassCache,
+            () -> verificationPipeline.verify(
+                credential, () -> credentialService.verify(credential)));
         logger.info(
             "verifyCredential is result,errorCode:{},errorMessage:{}",
             verifyResponse.getErrorCode(), 
@@ -435,4 +1002,85 @@ public class DemoServiceImpl implements DemoService {
         );
         return verifyResponse;
     }
+
+    /**
+     * verify the credentials of the stream. the stream is read on the calling thread, one
+     * line at a time and only when the window has room, so the memory does not grow with
+     * the size of the stream. a line that is not a credential fails on its own and the
+     * lines after it are still verified.
+     *
+     * @param inputStream the credentials in JSON, newline delimited
+     * @param consumer receives the results with the position and id of their credentials
+     * @throws IOException if the stream can not be read
+     */
+    @Override
+    public void verifyCredentials(
+        InputStream inputStream,
+        Consumer<BatchItem<Boolean>> consumer) throws IOException {
+
+        CompletionService<BatchItem<Boolean>> completionService =
+            new ExecutorCompletionService<BatchItem<Boolean>>(verifyExecutor);
+        Map<Future<BatchItem<Boolean>>, Integer> inFlight =
+            new HashMap<Future<BatchItem<Boolean>>, Integer>();
+        int index = 0;
+        boolean end = false;
+        try (BufferedReader reader = NdjsonUtil.createReader(inputStream)) {
+            while (true) {
+                while (!end && inFlight.size() < VERIFY_WINDOW) {
+                    String line = reader.readLine();
+                    if (null == line) {
+                        end = true;
+                        break;
+                    }
+                    if (line.trim().isEmpty()) {
+                        continue;
+                    }
+                    int current = index++;
+                    inFlight.put(completionService.submit(
+                        () -> verifyCredentialInBatch(current, line)), current);
+                }
+                if (inFlight.isEmpty()) {
+                    break;
+                }
+                Future<BatchItem<Boolean>> future = completionService.take();
+                int current = inFlight.remove(future);
+                try {
+                    consumer.accept(future.get());
+                } catch (ExecutionException e) {
+                    // verifyCredentialInBatch converts the exceptions to error responses.
+                    logger.error("verifyCredentials error, index={}", current, e.getCause());
+                    consumer.accept(new BatchItem<Boolean>(
+                        current, null, new ResponseData<Boolean>(null, ErrorCode.UNKNOW_ERROR)));
+                }
+            }
+            logger.info("verify credentials in stream finish, count={}", index);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.error("verifyCredentials interrupted.");
+        } finally {
+            for (Future<BatchItem<Boolean>> future : inFlight.keySet()) {
+                future.cancel(false);
+            }
+        }
+    }
+
+    private BatchItem<Boolean> verifyCredentialInBatch(int index, String line) {
+        Credential credential;
+        try {
+            credential = NdjsonUtil.toValue(NdjsonUtil.readLine(line), Credential.class);
+        } catch (IOException e) {
+            logger.error("verifyCredentials not a credential, index={}", index, e);
+            return new BatchItem<Boolean>(
+                index, null, new ResponseData<Boolean>(null, ErrorCode.ILLEGAL_INPUT));
+        }
+        ResponseData<Boolean> response;
+        try {
+            response = verificationPipeline.verify(
+                credential, () -> credentialService.verify(credential));
+        } catch (Exception e) {
+            logger.error("verifyCredentials error, id={}", credential.getId(), e);
+            response = new ResponseData<Boolean>(null, ErrorCode.UNKNOW_ERROR);
+        }
+        return new BatchItem<Boolean>(index, credential.getId(), response);
+    }
 }
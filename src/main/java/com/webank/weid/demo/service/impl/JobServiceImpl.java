@@ -0,0 +1,184 @@
+/*
+ *       Copyright© (2019) WeBank Co., Ltd.
+ *
+ *       This file is part of weidentity-sample.
+ *
+ *       weidentity-sample is free software: you can redistribute it and/or modify
+ *       it under the terms of the GNU Lesser General Public License as published by
+ *       the Free Software Foundation, either version 3 of the License, or
+ *       (at your option) any later version.
+ *
+ *       weidentity-sample is distributed in the hope that it will be useful,
+ *       but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *       MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *       GNU Lesser General Public License for more details.
+ *
+ *       You should have received a copy of the GNU Lesser General Public License
+ *       along with weidentity-sample.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.webank.weid.demo.service.impl;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import com.webank.weid.constant.ErrorCode;
+import com.webank.weid.demo.common.dto.Job;
+import com.webank.weid.demo.common.util.NamedThreadFactory;
+import com.webank.weid.demo.common.util.PropertiesUtils;
+import com.webank.weid.demo.service.JobService;
+import com.webank.weid.protocol.response.ResponseData;
+
+/**
+ * asynchronous job service. the jobs run on a fixed size executor with a bounded queue,
+ * the job table keeps at most weid.job.maxJobs jobs and evicts the eldest finished ones.
+ *
+ * @author agent
+ */
+@Service
+public class JobServiceImpl implements JobService {
+
+    private static final Logger logger = LoggerFactory.getLogger(JobServiceImpl.class);
+
+    /**
+     * the number of threads running jobs.
+     */
+    private static final int JOB_THREADS =
+        Integer.parseInt(PropertiesUtils.getProperty("weid.job.threads", "16"));
+
+    /**
+     * the maximum number of jobs waiting for a thread.
+     */
+    private static final int JOB_QUEUE_CAPACITY =
+        Integer.parseInt(PropertiesUtils.getProperty("weid.job.queueCapacity", "1000"));
+
+    /**
+     * the maximum number of jobs in the job table, finished or not.
+     */
+    private static final int MAX_JOBS =
+        Integer.parseInt(PropertiesUtils.getProperty("weid.job.maxJobs", "10000"));
+
+    private final ThreadPoolExecutor executor = new ThreadPoolExecutor(
+        JOB_THREADS,
+        JOB_THREADS,
+        0L,
+        TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<Runnable>(JOB_QUEUE_CAPACITY),
+        new NamedThreadFactory("weid-job"));
+
+    /**
+     * the job table in submission order.
+     */
+    private final Map<String, JobEntry> jobs = new LinkedHashMap<String, JobEntry>();
+
+    @Override
+    public ResponseData<String> submit(String type, Supplier<ResponseData<?>> operation) {
+
+        Job job = new Job();
+        job.setJobId(UUID.randomUUID().toString());
+        job.setType(type);
+        job.setCreateTime(System.currentTimeMillis());
+        JobEntry entry = new JobEntry(job);
+        synchronized (jobs) {
+            if (!evictFinishedJobs()) {
+                logger.error("submit job failed, the job table is full, type={}", type);
+                return new ResponseData<>(null, ErrorCode.UNKNOW_ERROR.getCode(),
+                    "the job table is full.");
+            }
+            jobs.put(job.getJobId(), entry);
+        }
+        try {
+            executor.execute(() -> run(entry, operation));
+        } catch (RejectedExecutionException e) {
+            synchronized (jobs) {
+                jobs.remove(job.getJobId());
+            }
+            logger.error("submit job failed, the job queue is full, type={}", type);
+            return new ResponseData<>(null, ErrorCode.UNKNOW_ERROR.getCode(),
+                "the job queue is full.");
+        }
+        logger.info("submit job, jobId={}, type={}", job.getJobId(), type);
+        return new ResponseData<>(job.getJobId(), ErrorCode.SUCCESS);
+    }
+
+    @Override
+    public Job getJob(String jobId) {
+        JobEntry entry = getEntry(jobId);
+        return entry == null ? null : entry.job;
+    }
+
+    @Override
+    public boolean onFinished(String jobId, Consumer<Job> listener) {
+        JobEntry entry = getEntry(jobId);
+        if (entry == null) {
+            return false;
+        }
+        entry.finished.thenAccept(listener);
+        return true;
+    }
+
+    private JobEntry getEntry(String jobId) {
+        synchronized (jobs) {
+            return jobs.get(jobId);
+        }
+    }
+
+    private void run(JobEntry entry, Supplier<ResponseData<?>> operation) {
+        Job job = entry.job;
+        job.setStatus(Job.Status.RUNNING);
+        Job.Status status = Job.Status.DONE;
+        try {
+            job.setResult(operation.get());
+        } catch (Exception e) {
+            logger.error("run job error, jobId={}, type={}", job.getJobId(), job.getType(), e);
+            job.setResult(new ResponseData<>(null, ErrorCode.UNKNOW_ERROR));
+            status = Job.Status.FAILED;
+        }
+        job.setFinishTime(System.currentTimeMillis());
+        job.setStatus(status);
+        entry.finished.complete(job);
+    }
+
+    /**
+     * make room for a new job by evicting the eldest finished jobs, the caller holds the
+     * lock of the job table.
+     *
+     * @return false if the table is still full
+     */
+    private boolean evictFinishedJobs() {
+        Iterator<JobEntry> it = jobs.values().iterator();
+        while (jobs.size() >= MAX_JOBS && it.hasNext()) {
+            if (it.next().job.isFinished()) {
+                it.remove();
+            }
+        }
+        return jobs.size() < MAX_JOBS;
+    }
+
+    /**
+     * the job and the future completed when it is finished.
+     */
+    private static final class JobEntry {
+
+        private final Job job;
+
+        private final CompletableFuture<Job> finished = new CompletableFuture<Job>();
+
+        private JobEntry(Job job) {
+            this.job = job;
+        }
+    }
+}
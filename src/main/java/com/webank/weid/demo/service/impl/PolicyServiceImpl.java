@@ -1,6 +1,8 @@
 package com.webank.weid.demo.service.impl;
 
 import com.webank.weid.demo.command.DbUtils;
+import com.webank.weid.demo.common.util.PolicyView;
+import com.webank.weid.demo.exception.BusinessException;
 import com.webank.weid.protocol.base.Challenge;
 import com.webank.weid.protocol.base.PolicyAndChallenge;
 import com.webank.weid.protocol.base.PresentationPolicyE;
@@ -11,18 +13,22 @@ public class PolicyServiceImpl extends PresentationPolicyService {
     @Override
     public PolicyAndChallenge policyAndChallengeOnPush(String policyId, String targetWeId) {
         
-        //获取presentationPolicyE
-        PresentationPolicyE presentationPolicyE = DbUtils.getPolicy(policyId);
+        //获取presentationPolicyE, 所有请求共享同一个模板, 不能修改
+        PresentationPolicyE template = DbUtils.getPolicy(policyId);
+        if (template == null) {
+            throw new BusinessException("the policy does not exist: " + policyId);
+        }
         
         //policyPublisherWeId为policy的所有者，此处为了演示暂时使用targetWeId
-        presentationPolicyE.setPolicyPublisherWeId(targetWeId);
+        //每个请求绑定自己的发布者, 与模板共享policy, 不修改模板也不复制policy
+        PresentationPolicyE presentationPolicyE = PolicyView.bind(template, targetWeId);
         
         //获取Challenge
         Challenge challenge = 
             Challenge.create(targetWeId, String.valueOf(System.currentTimeMillis()));
         
-        //保存challenge到数据库
-        DbUtils.save(challenge.getNonce(), challenge);
+        //保存challenge, 验证使用一次或过期后失效
+        DbUtils.saveChallenge(challenge);
         
         PolicyAndChallenge policyAndChallenge = new PolicyAndChallenge();
         policyAndChallenge.setChallenge(challenge);